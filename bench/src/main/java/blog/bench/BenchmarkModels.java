@@ -0,0 +1,71 @@
+package blog.bench;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import blog.Main;
+import blog.common.Util;
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.model.ModelEvidenceQueries;
+import blog.model.Queries;
+
+/**
+ * Loads the example models that the benchmarks run against. The models are
+ * looked up in the <code>example</code> directory of the repository, which is
+ * found relative to the working directory of the benchmark JVM, or given by
+ * the <code>blog.examples</code> system property.
+ *
+ * <p>
+ * Types are registered globally when a model is loaded, so a JVM can only load
+ * one model. JMH runs each benchmark and parameter combination in its own
+ * forked JVM, so the benchmarks must not be run with forking disabled.
+ */
+public class BenchmarkModels {
+
+  /**
+   * Parses the given file of the example directory, and returns its model,
+   * evidence and queries. Also seeds the random generator with a fixed seed,
+   * so that repeated runs sample the same worlds. A file that was already
+   * loaded is not parsed again.
+   */
+  public static ModelEvidenceQueries load(String fileName) {
+    Util.initRandom(false);
+    ModelEvidenceQueries meq = loaded.get(fileName);
+    if (meq != null) {
+      return meq;
+    }
+    Model model = new Model();
+    Evidence evidence = new Evidence(model);
+    Queries queries = new Queries(model);
+    String path = find(fileName).getPath();
+    if (!Main.simpleSetupFromFiles(model, evidence, queries,
+        Collections.singletonList(path))) {
+      throw new IllegalArgumentException("Could not load model " + path);
+    }
+    meq = new ModelEvidenceQueries(model, evidence, queries);
+    loaded.put(fileName, meq);
+    return meq;
+  }
+
+  private static File find(String fileName) {
+    String dir = System.getProperty("blog.examples");
+    if (dir != null) {
+      return new File(dir, fileName);
+    }
+    String[] candidates = { "example", "../example" };
+    for (int i = 0; i < candidates.length; i++) {
+      File file = new File(candidates[i], fileName);
+      if (file.exists()) {
+        return file;
+      }
+    }
+    throw new IllegalArgumentException("Cannot find example " + fileName
+        + "; set the blog.examples property to the example directory");
+  }
+
+  private static Map<String, ModelEvidenceQueries> loaded =
+      new HashMap<String, ModelEvidenceQueries>();
+}
@@ -0,0 +1,95 @@
+package blog.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import blog.common.Util;
+import blog.common.numerical.MatrixFactory;
+import blog.common.numerical.MatrixLib;
+import blog.distrib.Bernoulli;
+import blog.distrib.Categorical;
+import blog.distrib.Dirichlet;
+import blog.distrib.Gamma;
+import blog.distrib.Gaussian;
+import blog.distrib.MultivarGaussian;
+import blog.distrib.Poisson;
+
+/**
+ * Time to draw one value from the blog.distrib distributions most used by the
+ * example models, with fixed parameters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DistribBenchmark {
+
+  @Setup
+  public void setUp() {
+    Util.initRandom(false);
+    bernoulli.setParams(new Object[] { 0.3 });
+    gaussian.setParams(0.0, 2.0);
+    gamma.setParams(2.0, 0.5);
+    poisson.setParams(6.0);
+    Map<String, Double> probs = new HashMap<String, Double>();
+    for (int i = 0; i < 10; i++) {
+      probs.put("v" + i, (i + 1) / 55.0);
+    }
+    categorical.setParams(probs);
+    dirichlet.setParams(MatrixFactory.ones(10, 1));
+    MatrixLib mean = MatrixFactory.zeros(10, 1);
+    MatrixLib covariance = MatrixFactory.eye(10).timesScale(2);
+    multivarGaussian.setParams(mean, covariance);
+  }
+
+  @Benchmark
+  public Object bernoulli() {
+    return bernoulli.sampleVal();
+  }
+
+  @Benchmark
+  public Object gaussian() {
+    return gaussian.sampleVal();
+  }
+
+  @Benchmark
+  public Object gamma() {
+    return gamma.sampleVal();
+  }
+
+  @Benchmark
+  public Object poisson() {
+    return poisson.sampleVal();
+  }
+
+  @Benchmark
+  public Object categorical() {
+    return categorical.sampleVal();
+  }
+
+  @Benchmark
+  public Object dirichlet() {
+    return dirichlet.sampleVal();
+  }
+
+  @Benchmark
+  public Object multivarGaussian() {
+    return multivarGaussian.sampleVal();
+  }
+
+  private final Bernoulli bernoulli = new Bernoulli();
+  private final Gaussian gaussian = new Gaussian();
+  private final Gamma gamma = new Gamma();
+  private final Poisson poisson = new Poisson();
+  private final Categorical categorical = new Categorical();
+  private final Dirichlet dirichlet = new Dirichlet();
+  private final MultivarGaussian multivarGaussian = new MultivarGaussian();
+}
@@ -0,0 +1,98 @@
+package blog.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import blog.common.DenseHistogram;
+import blog.common.Histogram;
+import blog.common.SummaryStats;
+
+/**
+ * Time to record one weighted query value: Boolean and small Integer values in
+ * a Histogram and in a DenseHistogram, and real values in a Histogram and in
+ * SummaryStats.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistogramBenchmark {
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    for (int i = 0; i < SIZE; i++) {
+      booleans[i] = Boolean.valueOf(random.nextBoolean());
+      integers[i] = Integer.valueOf(random.nextInt(20));
+      reals[i] = Double.valueOf(random.nextGaussian());
+      logWeights[i] = -5 * random.nextDouble();
+    }
+  }
+
+  @Benchmark
+  public Histogram histogramBoolean() {
+    int i = next();
+    histogram.increaseWeight(booleans[i], logWeights[i]);
+    return histogram;
+  }
+
+  @Benchmark
+  public Histogram histogramInteger() {
+    int i = next();
+    histogram.increaseWeight(integers[i], logWeights[i]);
+    return histogram;
+  }
+
+  @Benchmark
+  public Histogram histogramReal() {
+    int i = next();
+    histogram.increaseWeight(reals[i], logWeights[i]);
+    return histogram;
+  }
+
+  @Benchmark
+  public boolean denseBoolean() {
+    int i = next();
+    Boolean value = booleans[i];
+    return dense.increaseWeight(value.booleanValue() ? 1 : 0, value,
+        logWeights[i]);
+  }
+
+  @Benchmark
+  public boolean denseInteger() {
+    int i = next();
+    Integer value = integers[i];
+    return dense.increaseWeight(value.intValue(), value, logWeights[i]);
+  }
+
+  @Benchmark
+  public SummaryStats summaryReal() {
+    int i = next();
+    summary.add(reals[i], logWeights[i]);
+    return summary;
+  }
+
+  private int next() {
+    index = (index + 1) & (SIZE - 1);
+    return index;
+  }
+
+  private static final int SIZE = 1024;
+
+  private final Boolean[] booleans = new Boolean[SIZE];
+  private final Integer[] integers = new Integer[SIZE];
+  private final Double[] reals = new Double[SIZE];
+  private final double[] logWeights = new double[SIZE];
+  private int index = 0;
+
+  private final Histogram histogram = new Histogram();
+  private final DenseHistogram dense = new DenseHistogram(1 << 16);
+  private final SummaryStats summary = new SummaryStats();
+}
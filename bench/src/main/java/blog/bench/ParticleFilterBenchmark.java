@@ -0,0 +1,83 @@
+package blog.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import blog.engine.ParticleFilter;
+import blog.io.TableWriter;
+import blog.model.Model;
+import blog.model.ModelEvidenceQueries;
+
+/**
+ * Particle filtering on the dynamic example models: a whole run, in which the
+ * particles take the evidence of every timestep and are resampled after each,
+ * and a single resampling step of the particles left by such a run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParticleFilterBenchmark {
+
+  @Param({ "hmm.dblog", "kalman-filter.dblog" })
+  public String model;
+
+  @Param({ "1000" })
+  public int numParticles;
+
+  @Setup
+  public void setUp() {
+    ModelEvidenceQueries meq = BenchmarkModels.load(model);
+    Properties properties = new Properties();
+    properties.setProperty("numParticles", String.valueOf(numParticles));
+    filter = new ResamplingFilter(meq.model, properties);
+    filter.setEvidence(meq.evidence);
+    filter.setQueries(meq.queries);
+    TableWriter writer = new TableWriter();
+    writer.setOutput(new PrintStream(new OutputStream() {
+      public void write(int b) {
+      }
+    }));
+    filter.setResultWriter(writer);
+    // leave weighted particles to resample
+    filter.answerQueries();
+  }
+
+  /**
+   * Runs the filter over all the evidence of the model.
+   */
+  @Benchmark
+  public void take() {
+    filter.answerQueries();
+  }
+
+  @Benchmark
+  public void resample() {
+    filter.resampleParticles();
+  }
+
+  private ResamplingFilter filter;
+
+  /**
+   * Particle filter whose resampling step can be called directly.
+   */
+  private static class ResamplingFilter extends ParticleFilter {
+    ResamplingFilter(Model model, Properties properties) {
+      super(model, properties);
+    }
+
+    void resampleParticles() {
+      resample();
+    }
+  }
+}
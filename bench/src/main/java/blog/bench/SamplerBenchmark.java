@@ -0,0 +1,47 @@
+package blog.bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import blog.model.ModelEvidenceQueries;
+import blog.sample.Sampler;
+
+/**
+ * Time to generate one sample with the likelihood-weighting and
+ * Metropolis-Hastings samplers, on static example models.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SamplerBenchmark {
+
+  @Param({ "burglary.blog", "hurricane.blog", "poisson-ball.blog" })
+  public String model;
+
+  @Param({ "blog.sample.LWSampler", "blog.sample.MHSampler" })
+  public String samplerClass;
+
+  @Setup
+  public void setUp() {
+    ModelEvidenceQueries meq = BenchmarkModels.load(model);
+    sampler = Sampler.make(samplerClass, meq.model, new Properties());
+    sampler.initialize(meq.evidence, meq.queries);
+  }
+
+  @Benchmark
+  public double nextSample() {
+    sampler.nextSample();
+    return sampler.getLatestLogWeight();
+  }
+
+  private Sampler sampler;
+}
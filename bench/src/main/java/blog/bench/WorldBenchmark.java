@@ -0,0 +1,46 @@
+package blog.bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import blog.model.ModelEvidenceQueries;
+import blog.sample.LWSampler;
+import blog.world.DefaultPartialWorld;
+
+/**
+ * Time to clone a DefaultPartialWorld sampled by likelihood weighting from an
+ * example model, as done when particles are copied.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WorldBenchmark {
+
+  @Param({ "burglary.blog", "hurricane.blog", "poisson-ball.blog" })
+  public String model;
+
+  @Setup
+  public void setUp() {
+    ModelEvidenceQueries meq = BenchmarkModels.load(model);
+    LWSampler sampler = new LWSampler(meq.model, new Properties());
+    sampler.initialize(meq.evidence, meq.queries);
+    sampler.nextSample();
+    world = (DefaultPartialWorld) sampler.getLatestWorld();
+  }
+
+  @Benchmark
+  public Object cloneWorld() {
+    return world.clone();
+  }
+
+  private DefaultPartialWorld world;
+}
@@ -34,13 +34,20 @@ public class DBLOGUtil {
    */
   public static void removeVarsAtDiffTimestep(Timestep largest,
       PartialWorld world) {
-    LinkedList instantiatedVars = new LinkedList(world.getInstantiatedVars());
-    Iterator varIt = instantiatedVars.iterator();
-    while (varIt.hasNext()) {
-      BasicVar var = (BasicVar) varIt.next();
-      Timestep timestep = var.maxTimestep();
-      if (timestep != null && timestep.compareTo(largest) < 0) {
-        world.forceRemoveVar(var);
+    // Only the slices of the expiring timesteps are visited, through the
+    // world's index from timesteps to variables.
+    List<Timestep> expired = new LinkedList<Timestep>();
+    for (Timestep timestep : world.getInstantiatedTimesteps()) {
+      if (timestep.compareTo(largest) < 0) {
+        expired.add(timestep);
+      }
+    }
+    for (Timestep timestep : expired) {
+      List instantiatedVars = new LinkedList(
+          world.getInstantiatedVarsAt(timestep));
+      Iterator varIt = instantiatedVars.iterator();
+      while (varIt.hasNext()) {
+        world.forceRemoveVar((BasicVar) varIt.next());
       }
     }
   }
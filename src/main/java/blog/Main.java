@@ -37,6 +37,7 @@ package blog;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StringReader;
@@ -59,15 +60,20 @@ import blog.common.cmdline.PropertiesOption;
 import blog.common.cmdline.StringListOption;
 import blog.common.cmdline.StringOption;
 import blog.engine.InferenceEngine;
+import blog.io.CompiledModelFile;
+import blog.io.MetricsWriter;
 import blog.io.ResultWriter;
 import blog.model.Evidence;
+import blog.model.FixedFunction;
 import blog.model.Model;
+import blog.model.ModelEvidenceQueries;
 import blog.model.Queries;
 import blog.model.Query;
 import blog.msg.ErrorMsg;
 import blog.parse.Parse;
 import blog.sample.RejectionSampler;
 import blog.semant.Semant;
+import blog.server.InferenceServer;
 
 /**
  * Main program for the BLOG (Bayesian Logic) inference engine.
@@ -137,13 +143,34 @@ import blog.semant.Semant;
  * <dt>--interval=<i>num</i>
  * <dd>Report query results to stdout every num queries.
  * 
+ * <dt>--server=<i>port</i>
+ * <dd>Instead of running inference on the input files, serve inference
+ * requests over HTTP on the given port of the loopback interface, keeping
+ * compiled models in memory (see {@link blog.server.InferenceServer}).
+ * 
+ * <dt>--save-compiled=<i>file</i>
+ * <dd>Rather than running inference, save the parsed, checked and compiled
+ * model, evidence and queries to <i>file</i> (see
+ * {@link blog.io.CompiledModelFile}). Giving that file as the only input file
+ * of a later run loads it instead of the source files.
+ * 
+ * <dt>--memoize=<i>function</i>[:<i>size</i>]
+ * <dd>Cache up to <i>size</i> values of the fixed function named
+ * <i>function</i> by argument tuple, evicting the least recently used first
+ * (see {@link blog.model.FixedFunction#setMemoCapacity(int)}). Useful for
+ * costly functions, such as matrix inversions or file loads, that are called
+ * repeatedly with the same arguments. This option can be included several
+ * times. Default size: 1024.
+ * 
  * <dt>-P <i>key</i>=<i>value</i>
  * <dd>Include the entry <i>key</i>=<i>value</i> in the properties table that is
  * passed to the inference engine. This feature can be used to set configuration
  * parameters for various inference engines (and the components they use, such
  * as samplers). See the individual inference classes for documentation. Note:
  * The -P option cannot be used to specify values for properties for which there
- * exist special-purpose options, such as --engine or --num_samples.
+ * exist special-purpose options, such as --engine or --num_samples. The
+ * <code>metricsFile</code> and <code>metricsInterval</code> properties export
+ * inference metrics as JSON lines (see {@link blog.io.MetricsWriter}).
  * 
  * </dl>
  */
@@ -152,9 +179,23 @@ public class Main {
   public static void main(String[] args) {
     fromString = false;
     init(args);
+    if (serverPort > 0) {
+      serve();
+      return;
+    }
+    if (filenames.size() == 1
+        && CompiledModelFile.isCompiledModel(filenames.get(0))) {
+      loadCompiled(filenames.get(0));
+      run();
+      return;
+    }
     List<Object[]> readersAndOrigins = makeReaders(filenames);
     if (setup(model, evidence, queries, readersAndOrigins, Util.verbose(), true)) {
-      run();
+      if (saveCompiledPath != null) {
+        saveCompiled(saveCompiledPath);
+      } else {
+        run();
+      }
     } else {
       System.exit(1);
     }
@@ -185,6 +226,7 @@ public class Main {
     if (!ok) {
       return;
     }
+    memoize();
     System.out.println("............................................");
     if (generate) {
       generateWorlds();
@@ -215,7 +257,11 @@ public class Main {
         writer.setOutput(System.out);
       }
       engine.setResultWriter(writer);
+      MetricsWriter metricsWriter = MetricsWriter.open(inferenceProps);
       engine.answerQueries();
+      if (metricsWriter != null) {
+        metricsWriter.close();
+      }
       timer.stop();
       System.out.print("Total elapsed time: ");
       System.out.print(timer.elapsedTime());
@@ -225,6 +271,93 @@ public class Main {
 
   }
 
+  /**
+   * Runs an {@link InferenceServer} on the port given by the --server option,
+   * until the JVM is stopped.
+   */
+  private static void serve() {
+    try {
+      InferenceServer server = new InferenceServer(serverPort, inferenceProps,
+          packages);
+      server.start();
+    } catch (IOException e) {
+      Util.fatalError("Cannot start server on port " + serverPort, e);
+    } catch (IllegalArgumentException e) {
+      Util.fatalErrorWithoutStack(e.getMessage());
+    }
+    while (true) {
+      try {
+        Thread.sleep(Long.MAX_VALUE);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Writes the compiled model, evidence and queries to a snapshot at the given
+   * path, which later runs can load in place of the source files.
+   */
+  private static void saveCompiled(String path) {
+    try {
+      CompiledModelFile.save(new ModelEvidenceQueries(model, evidence,
+          queries), path);
+    } catch (IOException e) {
+      Util.fatalError("Cannot save compiled model to " + path, e);
+    }
+    System.out.println("Saved compiled model to " + path);
+  }
+
+  /**
+   * Replaces the model, evidence and queries by those of the snapshot at the
+   * given path.
+   */
+  private static void loadCompiled(String path) {
+    System.out.println("Loading compiled model from " + path);
+    try {
+      ModelEvidenceQueries meq = CompiledModelFile.load(path);
+      model = meq.model;
+      evidence = meq.evidence;
+      queries = meq.queries;
+    } catch (IOException e) {
+      Util.fatalErrorWithoutStack(e.getMessage());
+    }
+  }
+
+  /**
+   * Turns on caching for the fixed functions named by the --memoize options.
+   */
+  private static void memoize() {
+    for (String spec : memoized) {
+      String name = spec;
+      int capacity = DEFAULT_MEMO_CAPACITY;
+      int colon = spec.lastIndexOf(':');
+      if (colon >= 0) {
+        name = spec.substring(0, colon);
+        try {
+          capacity = Integer.parseInt(spec.substring(colon + 1));
+        } catch (NumberFormatException e) {
+          capacity = -1;
+        }
+        if (capacity < 0) {
+          Util.fatalErrorWithoutStack("Invalid cache size in --memoize="
+              + spec);
+        }
+      }
+      boolean found = false;
+      for (Object f : model.getFuncsWithName(name)) {
+        if (f instanceof FixedFunction) {
+          ((FixedFunction) f).setMemoCapacity(capacity);
+          found = true;
+        }
+      }
+      if (!found) {
+        Util.fatalErrorWithoutStack("No fixed function named " + name
+            + " to memoize");
+      }
+    }
+  }
+
   public static List<Object[]> makeReaders(Collection<String> filenames) {
     List<Object[]> readersAndOrigins = new LinkedList<Object[]>();
     for (String filename : filenames) {
@@ -319,6 +452,12 @@ public class Main {
         "blog.io.TableWriter", "Writer class for queries");
     StringOption optOutput = new StringOption("o", "output", null,
         "Output query results to file");
+    IntOption optServer = new IntOption(null, "server", 0,
+        "Serve inference requests over HTTP on port <n>");
+    StringOption optSaveCompiled = new StringOption(null, "save-compiled",
+        null, "Save the compiled model to file <s> and exit");
+    StringListOption optMemoize = new StringListOption(null, "memoize",
+        "Cache values of fixed function <s>, given as name[:size]");
     PropertiesOption optInferenceProps = new PropertiesOption("P", null, null,
         "Set inference configuration properties");
 
@@ -327,7 +466,8 @@ public class Main {
     // // through -P
 
     filenames = blog.common.cmdline.Parser.parse(args);
-    if ((!fromString) & filenames.isEmpty()) {
+    serverPort = optServer.getValue();
+    if ((!fromString) & filenames.isEmpty() & serverPort <= 0) {
       Util.fatalError("Error: no BLOG input files specified.");
       Parser.printUsage(System.err);
     }
@@ -340,6 +480,8 @@ public class Main {
     debug = optDebug.getValue();
     outputPath = optOutput.getValue();
     writerName = writerClsName.getValue();
+    saveCompiledPath = optSaveCompiled.getValue();
+    memoized = optMemoize.getValue();
 
     // Make sure properties that have special-purpose options weren't
     // specified with -P.
@@ -552,6 +694,7 @@ public class Main {
   private static boolean ok = true;
   private static List<String> filenames; // of String
   private static Properties inferenceProps;
+  private static int serverPort = 0;
   private static boolean randomize = false;
   private static int numSamples;
   private static Model model;
@@ -565,4 +708,8 @@ public class Main {
   private static boolean debug;
   private static boolean fromString;
   private static String outputPath;
+  private static String saveCompiledPath;
+  private static List<String> memoized = new LinkedList<String>();
+
+  private static final int DEFAULT_MEMO_CAPACITY = 1024;
 }
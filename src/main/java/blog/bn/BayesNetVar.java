@@ -35,6 +35,7 @@
 
 package blog.bn;
 
+import java.io.Serializable;
 import java.util.Set;
 
 import blog.sample.ClassicInstantiatingEvalContext;
@@ -46,7 +47,7 @@ import blog.world.PartialWorld;
  * A random variable that serves as a node in a Bayes net (directed graphical
  * model).
  */
-public interface BayesNetVar {
+public interface BayesNetVar extends Serializable {
   /**
    * Returns true if the given world is complete enough to determine the value
    * of this random variable.
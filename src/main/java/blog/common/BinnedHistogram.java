@@ -0,0 +1,211 @@
+package blog.common;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A histogram of weighted real values with a fixed number of bins of equal
+ * width. The bins are aligned on a global grid: their width is a power of two
+ * 2^k, and bin j covers [j 2^k, (j+1) 2^k). When a value falls outside the
+ * range of the bins, the width is doubled, merging pairs of adjacent bins,
+ * until the range covers the value. The bins of two histograms can thus always
+ * be merged exactly, after coarsening the finer one. Since the width only
+ * doubles when needed, the range of the bins stays within a small factor of
+ * the spread of the values added.
+ */
+public class BinnedHistogram implements Serializable {
+
+  /**
+   * Creates an empty histogram with the default number of bins (64).
+   */
+  public BinnedHistogram() {
+    this(DEFAULT_NUM_BINS);
+  }
+
+  /**
+   * Creates an empty histogram with the given number of bins, which must be
+   * even.
+   */
+  public BinnedHistogram(int numBins) {
+    weights = new double[numBins];
+  }
+
+  /**
+   * Adds the value <code>x</code>, which must be finite, with weight
+   * <code>w</code>.
+   */
+  public void add(double x, double w) {
+    if (w <= 0) {
+      return;
+    }
+    if (isEmpty()) {
+      // start with bins much narrower than x, so that the width is set by the
+      // spread of the values rather than by the first one
+      exponent = Math.max(Math.getExponent(x), MIN_INITIAL_EXPONENT) - 20;
+      firstBin = (long) Math.floor(Math.scalb(x, -exponent)) - weights.length
+          / 2;
+    }
+    weights[binFor(x)] += w;
+    totalWeight += w;
+  }
+
+  /**
+   * Adds the bins of <code>other</code>, with their weights multiplied by
+   * <code>factor</code>.
+   */
+  public void addAll(BinnedHistogram other, double factor) {
+    if (other.isEmpty()) {
+      return;
+    }
+    if (isEmpty()) {
+      exponent = other.exponent;
+      firstBin = other.firstBin;
+    }
+    while (exponent < other.exponent) {
+      coarsen(other.firstBin << (other.exponent - exponent) < firstBin);
+    }
+    for (int i = 0; i < other.weights.length; ++i) {
+      double w = other.weights[i] * factor;
+      if (w > 0) {
+        // bin of other, at the resolution of this histogram
+        long bin = (other.firstBin + i) >> (exponent - other.exponent);
+        weights[binFor(bin)] += w;
+        totalWeight += w;
+      }
+    }
+  }
+
+  /**
+   * Multiplies all weights by <code>factor</code>.
+   */
+  public void scale(double factor) {
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] *= factor;
+    }
+    totalWeight *= factor;
+  }
+
+  public int getNumBins() {
+    return weights.length;
+  }
+
+  /**
+   * Returns the lower bound of bin <code>i</code>.
+   */
+  public double getLowerBound(int i) {
+    return Math.scalb((double) (firstBin + i), exponent);
+  }
+
+  /**
+   * Returns the upper bound of bin <code>i</code>.
+   */
+  public double getUpperBound(int i) {
+    return getLowerBound(i + 1);
+  }
+
+  /**
+   * Returns the weight of the values in bin <code>i</code>.
+   */
+  public double getWeight(int i) {
+    return weights[i];
+  }
+
+  public double getTotalWeight() {
+    return totalWeight;
+  }
+
+  /**
+   * Returns the fraction of the total weight in bin <code>i</code>.
+   */
+  public double getProb(int i) {
+    return (totalWeight > 0) ? weights[i] / totalWeight : 0;
+  }
+
+  /**
+   * Returns the smallest index of a nonempty bin, or the number of bins if the
+   * histogram is empty.
+   */
+  public int firstNonEmptyBin() {
+    int i = 0;
+    while (i < weights.length && weights[i] == 0) {
+      ++i;
+    }
+    return i;
+  }
+
+  /**
+   * Returns the largest index of a nonempty bin, or -1 if the histogram is
+   * empty.
+   */
+  public int lastNonEmptyBin() {
+    int i = weights.length - 1;
+    while (i >= 0 && weights[i] == 0) {
+      --i;
+    }
+    return i;
+  }
+
+  public boolean isEmpty() {
+    return exponent == Integer.MIN_VALUE;
+  }
+
+  public void clear() {
+    Arrays.fill(weights, 0);
+    totalWeight = 0;
+    exponent = Integer.MIN_VALUE;
+  }
+
+  /**
+   * Returns the index of the bin containing <code>x</code>, coarsening the
+   * bins first if needed.
+   */
+  private int binFor(double x) {
+    double bin = Math.floor(Math.scalb(x, -exponent));
+    while (bin < firstBin || bin >= firstBin + weights.length) {
+      coarsen(bin < firstBin);
+      bin = Math.floor(Math.scalb(x, -exponent));
+    }
+    return (int) ((long) bin - firstBin);
+  }
+
+  /**
+   * Returns the index of the given bin of the global grid, coarsening the bins
+   * first if needed.
+   */
+  private int binFor(long bin) {
+    while (bin < firstBin || bin >= firstBin + weights.length) {
+      coarsen(bin < firstBin);
+      bin >>= 1;
+    }
+    return (int) (bin - firstBin);
+  }
+
+  /**
+   * Doubles the width of the bins, merging each bin with its neighbour in the
+   * coarser grid. The new bins cover the old range, and extend it to the left
+   * or to the right.
+   */
+  private void coarsen(boolean extendLeft) {
+    long newFirstBin = firstBin >> 1;
+    if (extendLeft) {
+      newFirstBin = ((firstBin + weights.length - 1) >> 1) - weights.length + 1;
+    }
+    double[] old = weights.clone();
+    Arrays.fill(weights, 0);
+    for (int i = 0; i < old.length; ++i) {
+      weights[(int) (((firstBin + i) >> 1) - newFirstBin)] += old[i];
+    }
+    firstBin = newFirstBin;
+    ++exponent;
+  }
+
+  public static final int DEFAULT_NUM_BINS = 64;
+
+  private static final int MIN_INITIAL_EXPONENT = -1000;
+
+  private final double[] weights;
+  private double totalWeight = 0;
+  // bin i of the array is bin firstBin + i of the grid of width 2^exponent
+  private long firstBin;
+  private int exponent = Integer.MIN_VALUE; // MIN_VALUE while empty
+}
@@ -0,0 +1,189 @@
+package blog.common;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A histogram over objects identified by integer keys from a small range,
+ * such as Booleans, small integers or the guaranteed objects of a type. The
+ * weights are stored in a primitive array indexed by key, in linear space
+ * relative to the largest log weight added so far; the array is rescaled when
+ * that maximum grows. Adding a weight thus takes one exponentiation and no
+ * allocation, except when the range of keys grows.
+ *
+ * <p>
+ * Along with each weight, the histogram stores the object the key stands for,
+ * as given the first time the key was added, so that its entries can be
+ * copied into a {@link Histogram}.
+ */
+public class DenseHistogram implements Serializable {
+
+  /**
+   * Creates an empty histogram that accepts keys from ranges of at most
+   * <code>maxRange</code> consecutive integers.
+   */
+  public DenseHistogram(int maxRange) {
+    this.maxRange = maxRange;
+  }
+
+  /**
+   * Increases the weight of the object <code>value</code>, identified by
+   * <code>key</code>, by the given log weight. Returns false, and leaves the
+   * histogram unchanged, if adding the key would make the range of keys
+   * exceed the maximum range.
+   */
+  public boolean increaseWeight(int key, Object value, double logWeight) {
+    int i = key - minKey;
+    if (i < 0 || i >= weights.length) {
+      if (!coverKey(key)) {
+        return false;
+      }
+      i = key - minKey;
+    }
+    if (logWeight == Double.NEGATIVE_INFINITY) {
+      return true;
+    }
+    if (logWeight > logScale) {
+      rescale(logWeight);
+    }
+    double w = (logWeight == logScale) ? 1 : Math.exp(logWeight - logScale);
+    if (values[i] == null) {
+      values[i] = value;
+    }
+    weights[i] += w;
+    totalWeight += w;
+    return true;
+  }
+
+  /**
+   * Adds the weights of <code>other</code> to the weights of this histogram.
+   * The objects whose keys fall outside the maximum range are added to
+   * <code>overflow</code> instead.
+   */
+  public void addAll(DenseHistogram other, Histogram overflow) {
+    for (int i = 0; i < other.weights.length; ++i) {
+      if (other.weights[i] > 0) {
+        double logWeight = other.getLogWeightAt(i);
+        if (!increaseWeight(other.minKey + i, other.values[i], logWeight)) {
+          overflow.increaseWeight(other.values[i], logWeight);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the log weight of the given key, which is -inf if the key was never
+   * added.
+   */
+  public double getLogWeight(int key) {
+    int i = key - minKey;
+    if (i < 0 || i >= weights.length) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    return getLogWeightAt(i);
+  }
+
+  /**
+   * Returns the log of the sum of all weights.
+   */
+  public double getTotalLogWeight() {
+    return Math.log(totalWeight) + logScale;
+  }
+
+  /**
+   * Increases the weight of each object of this histogram in
+   * <code>histogram</code> by its weight in this histogram.
+   */
+  public void addTo(Histogram histogram) {
+    for (int i = 0; i < weights.length; ++i) {
+      if (weights[i] > 0) {
+        histogram.increaseWeight(values[i], getLogWeightAt(i));
+      }
+    }
+  }
+
+  /**
+   * Resets the weights of all keys to zero.
+   */
+  public void clear() {
+    Arrays.fill(weights, 0);
+    Arrays.fill(values, null);
+    totalWeight = 0;
+    logScale = Double.NEGATIVE_INFINITY;
+  }
+
+  private double getLogWeightAt(int i) {
+    return Math.log(weights[i]) + logScale;
+  }
+
+  /**
+   * Moves or grows the arrays so that they cover <code>key</code> as well as
+   * the keys added so far, unless this would exceed the maximum range. Returns
+   * true if the key is covered.
+   */
+  private boolean coverKey(int key) {
+    int first = 0;
+    while (first < values.length && values[first] == null) {
+      ++first;
+    }
+    if (first == values.length) {
+      if (weights.length == 0) {
+        int length = Math.min(INITIAL_LENGTH, maxRange);
+        weights = new double[length];
+        values = new Object[length];
+      }
+      // start the range so that small nonnegative keys need no growth
+      minKey = (key >= 0 && key < weights.length) ? 0 : key;
+      return true;
+    }
+    int last = values.length - 1;
+    while (values[last] == null) {
+      --last;
+    }
+    long low = Math.min((long) minKey + first, key);
+    long high = Math.max((long) minKey + last, key);
+    if (high - low + 1 > maxRange) {
+      return false;
+    }
+    int length = weights.length;
+    while (length < high - low + 1) {
+      length *= 2;
+    }
+    length = Math.min(length, maxRange);
+    // leave room to grow further in the direction of the new key
+    long newMin = low;
+    if (key < minKey + first) {
+      newMin = Math.max(high - length + 1, Integer.MIN_VALUE);
+    }
+    double[] newWeights = new double[length];
+    Object[] newValues = new Object[length];
+    int offset = (int) (minKey + first - newMin);
+    System.arraycopy(weights, first, newWeights, offset, last - first + 1);
+    System.arraycopy(values, first, newValues, offset, last - first + 1);
+    weights = newWeights;
+    values = newValues;
+    minKey = (int) newMin;
+    return true;
+  }
+
+  /**
+   * Makes weights relative to exp(newLogScale) rather than exp(logScale).
+   */
+  private void rescale(double newLogScale) {
+    double factor = Math.exp(logScale - newLogScale);
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] *= factor;
+    }
+    totalWeight *= factor;
+    logScale = newLogScale;
+  }
+
+  private static final int INITIAL_LENGTH = 8;
+
+  private final int maxRange;
+  private int minKey = 0; // key of weights[0]
+  private double[] weights = new double[0];
+  private Object[] values = new Object[0];
+  private double totalWeight = 0;
+  private double logScale = Double.NEGATIVE_INFINITY; // weights are relative
+}
@@ -318,6 +318,6 @@ public class HashMultiMap extends AbstractMap implements MultiMap, Cloneable {
 		protected Set set = null;
 	}
 
-	protected HashMap map;
+	protected Map map;
 	protected boolean maintainOrder = false;
 }
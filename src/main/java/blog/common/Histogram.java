@@ -36,6 +36,7 @@
 package blog.common;
 
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -72,7 +73,7 @@ import java.util.TreeMap;
  * <p>
  * Note: This class does not allow null elements to be added.
  */
-public class Histogram implements SetWithDistrib {
+public class Histogram implements SetWithDistrib, Serializable {
   /**
    * Creates an empty histogram.
    */
@@ -160,6 +161,17 @@ public class Histogram implements SetWithDistrib {
       map.put(obj, Util.logSum(getLogWeight(obj), logWeight));
   }
 
+  /**
+   * Increases the weight of every object by its weight in the given histogram,
+   * so that this histogram reflects the samples of both.
+   */
+  public void addAll(Histogram other) {
+    for (Iterator iter = other.map.entrySet().iterator(); iter.hasNext();) {
+      Map.Entry entry = (Map.Entry) iter.next();
+      increaseWeight(entry.getKey(), ((Double) entry.getValue()).doubleValue());
+    }
+  }
+
   /**
    * Resets the weights of all objects to zero.
    */
@@ -299,7 +311,7 @@ public class Histogram implements SetWithDistrib {
   /**
    * Nested class for the entries in a histogram.
    */
-  public static class Entry {
+  public static class Entry implements Serializable {
     Entry(Object obj, double logWeight) {
       this.obj = obj;
       this.logWeight = logWeight;
@@ -339,7 +351,7 @@ public class Histogram implements SetWithDistrib {
     private double logWeight;
   }
 
-  private class EntrySet extends AbstractSet {
+  private class EntrySet extends AbstractSet implements Serializable {
     public int size() {
       return map.size();
     }
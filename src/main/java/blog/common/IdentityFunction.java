@@ -1,7 +1,9 @@
 package blog.common;
 
+import java.io.Serializable;
+
 /** The identity function. */
-public class IdentityFunction implements UnaryFunction {
+public class IdentityFunction implements UnaryFunction, Serializable {
 	public Object evaluate(Object o) {
 		return o;
 	}
@@ -13,5 +15,9 @@ public class IdentityFunction implements UnaryFunction {
 		return instance;
 	}
 
+	private Object readResolve() {
+		return getInstance();
+	}
+
 	private static IdentityFunction instance;
 }
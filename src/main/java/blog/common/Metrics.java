@@ -0,0 +1,222 @@
+package blog.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Global registry of named inference metrics: {@link Counter}s of events, and
+ * {@link Recorder}s of the distribution of a quantity such as a latency in
+ * nanoseconds. Metrics are created once, typically in static fields of the
+ * classes that update them, and are safe to update from several threads.
+ *
+ * <p>
+ * Metrics are disabled by default, in which case updating them costs a single
+ * test and {@link #startTime()} does not read the clock. They are enabled by
+ * {@link blog.io.MetricsWriter}, which exports them periodically.
+ */
+public class Metrics {
+
+  /**
+   * Returns the counter with the given name, creating it if needed.
+   */
+  public static Counter counter(String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      counters.putIfAbsent(name, new Counter());
+      counter = counters.get(name);
+    }
+    return counter;
+  }
+
+  /**
+   * Returns the recorder with the given name, creating it if needed.
+   */
+  public static Recorder recorder(String name) {
+    Recorder recorder = recorders.get(name);
+    if (recorder == null) {
+      recorders.putIfAbsent(name, new Recorder());
+      recorder = recorders.get(name);
+    }
+    return recorder;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    Metrics.enabled = enabled;
+  }
+
+  /**
+   * Returns the current time in nanoseconds, to be passed to
+   * {@link Recorder#recordSince(long)}, or 0 if metrics are disabled.
+   */
+  public static long startTime() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Returns the counters, sorted by name.
+   */
+  public static Map<String, Counter> getCounters() {
+    return new TreeMap<String, Counter>(counters);
+  }
+
+  /**
+   * Returns the recorders, sorted by name.
+   */
+  public static Map<String, Recorder> getRecorders() {
+    return new TreeMap<String, Recorder>(recorders);
+  }
+
+  /**
+   * Resets all metrics to zero.
+   */
+  public static void reset() {
+    for (Counter counter : counters.values()) {
+      counter.reset();
+    }
+    for (Recorder recorder : recorders.values()) {
+      recorder.reset();
+    }
+  }
+
+  /**
+   * A count of events.
+   */
+  public static class Counter {
+    public void increment() {
+      if (enabled) {
+        count.incrementAndGet();
+      }
+    }
+
+    public void add(long n) {
+      if (enabled) {
+        count.addAndGet(n);
+      }
+    }
+
+    public long get() {
+      return count.get();
+    }
+
+    void reset() {
+      count.set(0);
+    }
+
+    private final AtomicLong count = new AtomicLong();
+  }
+
+  /**
+   * The distribution of a nonnegative quantity, kept as its count, sum,
+   * minimum and maximum, and a histogram with one bucket per power of two,
+   * from which quantiles are estimated within a factor of two.
+   */
+  public static class Recorder {
+    /**
+     * Records the given value; negative values are recorded as 0.
+     */
+    public void record(long value) {
+      if (!enabled) {
+        return;
+      }
+      if (value < 0) {
+        value = 0;
+      }
+      count.incrementAndGet();
+      sum.addAndGet(value);
+      buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+      long m = min.get();
+      while (value < m && !min.compareAndSet(m, value)) {
+        m = min.get();
+      }
+      m = max.get();
+      while (value > m && !max.compareAndSet(m, value)) {
+        m = max.get();
+      }
+    }
+
+    /**
+     * Records the nanoseconds elapsed since <code>startTime</code>, as
+     * returned by {@link Metrics#startTime()}.
+     */
+    public void recordSince(long startTime) {
+      if (enabled && startTime != 0) {
+        record(System.nanoTime() - startTime);
+      }
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getSum() {
+      return sum.get();
+    }
+
+    public double getMean() {
+      long n = count.get();
+      return (n == 0) ? 0 : sum.get() / (double) n;
+    }
+
+    public long getMin() {
+      return (count.get() == 0) ? 0 : min.get();
+    }
+
+    public long getMax() {
+      return max.get();
+    }
+
+    /**
+     * Returns an estimate of the <code>q</code>-quantile of the recorded
+     * values: the upper bound of the bucket where it falls, capped by the
+     * maximum.
+     */
+    public long quantile(double q) {
+      long n = count.get();
+      if (n == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(q * n);
+      long seen = 0;
+      for (int i = 0; i < buckets.length(); ++i) {
+        seen += buckets.get(i);
+        if (seen >= rank && seen > 0) {
+          long upper = (i == 0) ? 0 : (i >= 63) ? Long.MAX_VALUE
+              : (1L << i) - 1;
+          return Math.min(upper, max.get());
+        }
+      }
+      return max.get();
+    }
+
+    void reset() {
+      count.set(0);
+      sum.set(0);
+      min.set(Long.MAX_VALUE);
+      max.set(0);
+      for (int i = 0; i < buckets.length(); ++i) {
+        buckets.set(i, 0);
+      }
+    }
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+    // bucket i holds the values of bit length i, in [2^(i-1), 2^i)
+    private final AtomicLongArray buckets = new AtomicLongArray(65);
+  }
+
+  private static volatile boolean enabled = false;
+  private static final ConcurrentMap<String, Counter> counters =
+      new ConcurrentHashMap<String, Counter>();
+  private static final ConcurrentMap<String, Recorder> recorders =
+      new ConcurrentHashMap<String, Recorder>();
+}
@@ -96,13 +96,15 @@ public class ParentUpdateDGraph extends AbstractDGraph implements Cloneable {
 		if (curParents == null) {
 			return false; // node is not in graph
 		}
-		for (Iterator iter = curParents.iterator(); iter.hasNext();) {
+		// Iterate over copies, since removing edges changes these sets
+		for (Iterator iter = new ArrayList(curParents).iterator(); iter.hasNext();) {
 			Object parent = iter.next();
 			removeEdge(parent, v);
 		}
 
 		// Remove from parent sets of all children
-		for (Iterator iter = getChildren(v).iterator(); iter.hasNext();) {
+		for (Iterator iter = new ArrayList(getChildren(v)).iterator(); iter
+				.hasNext();) {
 			Object child = iter.next();
 			removeEdge(v, child);
 		}
@@ -0,0 +1,536 @@
+package blog.common;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map that can be cloned in constant time. It is implemented as a hash
+ * array mapped trie (Bagwell, "Ideal Hash Trees", 2001) whose nodes are shared
+ * between a map and its clones. Each node belongs to the map that created it,
+ * which may update it in place; any other map copies the nodes on the path to
+ * an entry before changing it. Cloning a map thus costs O(1), and later updates
+ * to either map only copy the O(log n) nodes they touch.
+ *
+ * <p>
+ * This implementation does not support null keys. Entries returned by the
+ * iterators do not support <code>setValue</code>. Like HashMap, it is not
+ * thread-safe, but maps that share nodes may be used by different threads,
+ * since shared nodes are never modified.
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V> implements
+    Cloneable {
+
+  /**
+   * Creates an empty map.
+   */
+  public PersistentHashMap() {
+  }
+
+  /**
+   * Creates a map with the same mappings as the given map.
+   */
+  public PersistentHashMap(Map<? extends K, ? extends V> orig) {
+    putAll(orig);
+  }
+
+  private PersistentHashMap(Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * Returns a copy of this map that shares all of its nodes with this map.
+   */
+  public PersistentHashMap<K, V> clone() {
+    PersistentHashMap<K, V> copy = new PersistentHashMap<K, V>(root, size);
+    // the nodes are now shared, so this map may not update them in place
+    owner = new Object();
+    return copy;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean containsKey(Object key) {
+    return find(key) != NOT_FOUND;
+  }
+
+  public V get(Object key) {
+    Object value = find(key);
+    return (value == NOT_FOUND) ? null : (V) value;
+  }
+
+  public V put(K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("PersistentHashMap has no null keys");
+    }
+    oldValue = null;
+    added = false;
+    root = (root == null) ? new BitmapNode(owner, 0, EMPTY_ARRAY) : root;
+    root = root.put(owner, 0, hash(key), key, value, this);
+    if (added) {
+      ++size;
+    }
+    Object result = oldValue;
+    oldValue = null;
+    return (V) result;
+  }
+
+  public V remove(Object key) {
+    if (root == null || key == null) {
+      return null;
+    }
+    oldValue = NOT_FOUND;
+    root = root.remove(owner, 0, hash(key), key, this);
+    Object result = oldValue;
+    oldValue = null;
+    if (result == NOT_FOUND) {
+      return null;
+    }
+    --size;
+    return (V) result;
+  }
+
+  public void clear() {
+    root = null;
+    size = 0;
+  }
+
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      public int size() {
+        return size;
+      }
+
+      public boolean contains(Object o) {
+        if (!(o instanceof Map.Entry)) {
+          return false;
+        }
+        Map.Entry entry = (Map.Entry) o;
+        Object value = find(entry.getKey());
+        return (value != NOT_FOUND)
+            && ((value == null) ? entry.getValue() == null : value
+                .equals(entry.getValue()));
+      }
+
+      public boolean remove(Object o) {
+        if (contains(o)) {
+          PersistentHashMap.this.remove(((Map.Entry) o).getKey());
+          return true;
+        }
+        return false;
+      }
+
+      public void clear() {
+        PersistentHashMap.this.clear();
+      }
+
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator();
+      }
+    };
+  }
+
+  private Object find(Object key) {
+    if (key == null) {
+      return NOT_FOUND;
+    }
+    int hash = hash(key);
+    Node node = root;
+    int shift = 0;
+    while (node instanceof BitmapNode) {
+      BitmapNode bitmapNode = (BitmapNode) node;
+      int bit = bit(hash, shift);
+      if ((bitmapNode.bitmap & bit) == 0) {
+        return NOT_FOUND;
+      }
+      int i = 2 * index(bitmapNode.bitmap, bit);
+      Object k = node.array[i];
+      if (k != null) {
+        return key.equals(k) ? node.array[i + 1] : NOT_FOUND;
+      }
+      node = (Node) node.array[i + 1];
+      shift += BITS;
+    }
+    if (node != null) {
+      Object[] array = node.array;
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return array[i + 1];
+        }
+      }
+    }
+    return NOT_FOUND;
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  private static int index(int bitmap, int bit) {
+    return Integer.bitCount(bitmap & (bit - 1));
+  }
+
+  /**
+   * Returns a new node, owned by <code>owner</code>, holding two entries with
+   * distinct keys that fall in the same slot of the node at the level above.
+   */
+  private static Node createNode(Object owner, int shift, Object key1,
+      Object value1, int hash2, Object key2, Object value2,
+      PersistentHashMap map) {
+    int hash1 = hash(key1);
+    if (hash1 == hash2) {
+      return new CollisionNode(owner, hash1, new Object[] { key1, value1, key2,
+          value2 });
+    }
+    Node node = new BitmapNode(owner, 0, EMPTY_ARRAY);
+    node = node.put(owner, shift, hash1, key1, value1, map);
+    return node.put(owner, shift, hash2, key2, value2, map);
+  }
+
+  /**
+   * A node of the trie. Its array holds key-value pairs; a null key marks a
+   * pair whose value is a child node.
+   */
+  private static abstract class Node {
+    Node(Object owner, Object[] array) {
+      this.owner = owner;
+      this.array = array;
+    }
+
+    /**
+     * Returns this node or a replacement for it, with the given mapping added.
+     * Sets <code>map.added</code> if the key was not present, and
+     * <code>map.oldValue</code> to its previous value otherwise.
+     */
+    abstract Node put(Object owner, int shift, int hash, Object key,
+        Object value, PersistentHashMap map);
+
+    /**
+     * Returns this node or a replacement for it (null if empty) without the
+     * given key. Sets <code>map.oldValue</code> to the removed value, if any.
+     */
+    abstract Node remove(Object owner, int shift, int hash, Object key,
+        PersistentHashMap map);
+
+    final Object owner;
+    Object[] array;
+  }
+
+  private static final class BitmapNode extends Node {
+    BitmapNode(Object owner, int bitmap, Object[] array) {
+      super(owner, array);
+      this.bitmap = bitmap;
+    }
+
+    private BitmapNode editable(Object owner) {
+      if (this.owner == owner) {
+        return this;
+      }
+      return new BitmapNode(owner, bitmap, array.clone());
+    }
+
+    Node put(Object owner, int shift, int hash, Object key, Object value,
+        PersistentHashMap map) {
+      int bit = bit(hash, shift);
+      int i = 2 * index(bitmap, bit);
+      if ((bitmap & bit) == 0) {
+        map.added = true;
+        Object[] newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, i);
+        newArray[i] = key;
+        newArray[i + 1] = value;
+        System.arraycopy(array, i, newArray, i + 2, array.length - i);
+        if (this.owner == owner) {
+          array = newArray;
+          bitmap |= bit;
+          return this;
+        }
+        return new BitmapNode(owner, bitmap | bit, newArray);
+      }
+
+      Object k = array[i];
+      Object v = array[i + 1];
+      if (k == null) {
+        Node child = (Node) v;
+        Node newChild = child.put(owner, shift + BITS, hash, key, value, map);
+        if (newChild == child) {
+          return this;
+        }
+        BitmapNode node = editable(owner);
+        node.array[i + 1] = newChild;
+        return node;
+      }
+      if (key.equals(k)) {
+        map.oldValue = v;
+        if (v == value) {
+          return this;
+        }
+        BitmapNode node = editable(owner);
+        node.array[i + 1] = value;
+        return node;
+      }
+      map.added = true;
+      Node child = createNode(owner, shift + BITS, k, v, hash, key, value, map);
+      BitmapNode node = editable(owner);
+      node.array[i] = null;
+      node.array[i + 1] = child;
+      return node;
+    }
+
+    Node remove(Object owner, int shift, int hash, Object key,
+        PersistentHashMap map) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int i = 2 * index(bitmap, bit);
+      Object k = array[i];
+      if (k == null) {
+        Node child = (Node) array[i + 1];
+        Node newChild = child.remove(owner, shift + BITS, hash, key, map);
+        if (newChild == child) {
+          return this;
+        }
+        if (newChild != null) {
+          BitmapNode node = editable(owner);
+          node.array[i + 1] = newChild;
+          return node;
+        }
+      } else if (key.equals(k)) {
+        map.oldValue = array[i + 1];
+      } else {
+        return this;
+      }
+
+      // the slot is now empty
+      if (bitmap == bit) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, i);
+      System.arraycopy(array, i + 2, newArray, i, newArray.length - i);
+      if (this.owner == owner) {
+        array = newArray;
+        bitmap ^= bit;
+        return this;
+      }
+      return new BitmapNode(owner, bitmap ^ bit, newArray);
+    }
+
+    int bitmap;
+  }
+
+  /**
+   * A node holding entries whose keys have the same hash code.
+   */
+  private static final class CollisionNode extends Node {
+    CollisionNode(Object owner, int hash, Object[] array) {
+      super(owner, array);
+      this.hash = hash;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    Node put(Object owner, int shift, int hash, Object key, Object value,
+        PersistentHashMap map) {
+      if (hash != this.hash) {
+        // nest this node in a bitmap node, which separates the two hashes
+        Node node = new BitmapNode(owner, bit(this.hash, shift), new Object[] {
+            null, this });
+        return node.put(owner, shift, hash, key, value, map);
+      }
+      int i = indexOf(key);
+      Object[] newArray;
+      if (i >= 0) {
+        map.oldValue = array[i + 1];
+        if (array[i + 1] == value) {
+          return this;
+        }
+        newArray = array.clone();
+      } else {
+        map.added = true;
+        i = array.length;
+        newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        newArray[i] = key;
+      }
+      newArray[i + 1] = value;
+      if (this.owner == owner) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(owner, hash, newArray);
+    }
+
+    Node remove(Object owner, int shift, int hash, Object key,
+        PersistentHashMap map) {
+      int i = indexOf(key);
+      if (i < 0) {
+        return this;
+      }
+      map.oldValue = array[i + 1];
+      if (array.length == 2) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, i);
+      System.arraycopy(array, i + 2, newArray, i, newArray.length - i);
+      if (this.owner == owner) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(owner, hash, newArray);
+    }
+
+    final int hash;
+  }
+
+  private static final class Entry<K, V> implements Map.Entry<K, V> {
+    Entry(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public K getKey() {
+      return key;
+    }
+
+    public V getValue() {
+      return value;
+    }
+
+    public V setValue(V value) {
+      throw new UnsupportedOperationException();
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry other = (Map.Entry) o;
+      return key.equals(other.getKey())
+          && ((value == null) ? other.getValue() == null : value.equals(other
+              .getValue()));
+    }
+
+    public int hashCode() {
+      return key.hashCode() ^ ((value == null) ? 0 : value.hashCode());
+    }
+
+    public String toString() {
+      return key + "=" + value;
+    }
+
+    private final K key;
+    private final V value;
+  }
+
+  /**
+   * Depth-first iterator over the entries of the trie. It keeps references to
+   * the arrays of the nodes it is visiting, which removals through the
+   * iterator do not modify (see {@link #remove()}).
+   */
+  private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+    EntryIterator() {
+      if (root != null) {
+        push(root);
+      }
+      advance();
+    }
+
+    private void push(Node node) {
+      ++depth;
+      arrays[depth] = node.array;
+      positions[depth] = 0;
+    }
+
+    private void advance() {
+      next = null;
+      while (depth >= 0) {
+        Object[] array = arrays[depth];
+        int pos = positions[depth];
+        if (pos >= array.length) {
+          arrays[depth] = null;
+          --depth;
+          continue;
+        }
+        positions[depth] = pos + 2;
+        if (array[pos] == null) {
+          push((Node) array[pos + 1]);
+        } else {
+          next = new Entry<K, V>((K) array[pos], (V) array[pos + 1]);
+          return;
+        }
+      }
+    }
+
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    public Map.Entry<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      advance();
+      return last;
+    }
+
+    /**
+     * Removes the last entry returned. The nodes are first marked as shared, so
+     * that the removal copies the nodes it changes instead of modifying the
+     * arrays this iterator is traversing.
+     */
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException("Nothing to remove.");
+      }
+      owner = new Object();
+      PersistentHashMap.this.remove(last.getKey());
+      last = null;
+    }
+
+    // a path in the trie has at most 7 bitmap nodes and one collision node
+    private final Object[][] arrays = new Object[8][];
+    private final int[] positions = new int[8];
+    private int depth = -1;
+    private Entry<K, V> next;
+    private Entry<K, V> last;
+  }
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  private static final Object[] EMPTY_ARRAY = new Object[0];
+  private static final Object NOT_FOUND = new Object();
+
+  private Node root = null;
+  private int size = 0;
+
+  /**
+   * Token identifying the nodes that this map may update in place.
+   */
+  private Object owner = new Object();
+
+  // results of the latest put or remove, set by the nodes
+  private Object oldValue;
+  private boolean added;
+}
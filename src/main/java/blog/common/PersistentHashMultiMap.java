@@ -0,0 +1,185 @@
+package blog.common;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * HashMultiMap that can be cloned in constant time. The map from keys to sets
+ * is a {@link PersistentHashMap}, and the value sets are shared with the
+ * clones until they are modified: a value set is copied the first time an
+ * element is added to or removed from it after the map was cloned.
+ *
+ * <p>
+ * The sets returned by <code>get</code> may be modified, but the sets in the
+ * entries of <code>entrySet()</code> must not be.
+ */
+public class PersistentHashMultiMap extends HashMultiMap {
+  /**
+   * Creates a new, empty PersistentHashMultiMap.
+   */
+  public PersistentHashMultiMap() {
+    map = new PersistentHashMap();
+  }
+
+  public Object get(Object key) {
+    return new PersistentValueSet(key);
+  }
+
+  public Object put(Object key, Object value) {
+    Object oldValue = super.put(key, value);
+    ownedSets.remove(oldValue);
+    ownedSets.put(map.get(key), Boolean.TRUE);
+    return oldValue;
+  }
+
+  public boolean add(Object key, Object value) {
+    Set s = (Set) map.get(key);
+    if (s != null && s.contains(value)) {
+      return false;
+    }
+    return ownedSet(key).add(value);
+  }
+
+  public boolean addAll(Object key, Set values) {
+    Set s = (Set) map.get(key);
+    if (values.isEmpty() || (s != null && s.containsAll(values))) {
+      return false;
+    }
+    return ownedSet(key).addAll(values);
+  }
+
+  public Object remove(Object key) {
+    Object oldValue = super.remove(key);
+    ownedSets.remove(oldValue);
+    return oldValue;
+  }
+
+  public boolean remove(Object key, Object value) {
+    Set s = (Set) map.get(key);
+    if (s == null || !s.contains(value)) {
+      return false;
+    }
+    s = ownedSet(key);
+    s.remove(value);
+    if (s.isEmpty()) {
+      map.remove(key);
+      ownedSets.remove(s);
+    }
+    return true;
+  }
+
+  public boolean removeAll(Object key, Set values) {
+    Set s = (Set) map.get(key);
+    if (s == null) {
+      return false;
+    }
+    boolean changed = false;
+    for (Iterator iter = values.iterator(); iter.hasNext();) {
+      changed |= remove(key, iter.next());
+    }
+    return changed;
+  }
+
+  public void clear() {
+    map.clear();
+    ownedSets.clear();
+  }
+
+  /**
+   * Returns a copy of this multi-map that shares its map and its value sets
+   * with this one.
+   */
+  public Object clone() {
+    PersistentHashMultiMap clone = newInstance();
+    clone.map = ((PersistentHashMap) map).clone();
+    // the value sets are now shared
+    ownedSets.clear();
+    return clone;
+  }
+
+  /**
+   * Returns a new, empty instance of this class, used by {@link #clone()}.
+   */
+  protected PersistentHashMultiMap newInstance() {
+    return new PersistentHashMultiMap();
+  }
+
+  /**
+   * Returns the set stored for the given key, creating it if there is none and
+   * copying it if it is shared with another map.
+   */
+  private Set ownedSet(Object key) {
+    Set s = (Set) map.get(key);
+    if (s == null) {
+      s = newSet();
+    } else if (ownedSets.containsKey(s)) {
+      return s;
+    } else {
+      s = copySet(s);
+    }
+    map.put(key, s);
+    ownedSets.put(s, Boolean.TRUE);
+    return s;
+  }
+
+  /**
+   * Value set that routes modifications through the enclosing map, so that
+   * shared sets are copied before they are modified.
+   */
+  protected class PersistentValueSet extends ValueSet {
+    protected PersistentValueSet(Object key) {
+      super(key);
+    }
+
+    public Iterator iterator() {
+      final Set iterated = (Set) map.get(key);
+      if (iterated == null) {
+        return emptySet().iterator();
+      }
+      final Iterator iter = iterated.iterator();
+      return new Iterator() {
+        public boolean hasNext() {
+          return iter.hasNext();
+        }
+
+        public Object next() {
+          last = iter.next();
+          return last;
+        }
+
+        public void remove() {
+          if (map.get(key) == iterated && ownedSets.containsKey(iterated)) {
+            iter.remove();
+            if (iterated.isEmpty()) {
+              map.remove(key);
+              ownedSets.remove(iterated);
+            }
+          } else {
+            // leaves the set being iterated over unchanged
+            PersistentHashMultiMap.this.remove(key, last);
+          }
+        }
+
+        private Object last;
+      };
+    }
+
+    public boolean add(Object o) {
+      set = null;
+      return PersistentHashMultiMap.this.add(key, o);
+    }
+
+    public boolean remove(Object o) {
+      set = null;
+      return PersistentHashMultiMap.this.remove(key, o);
+    }
+  }
+
+  /**
+   * The value sets that this map created or copied since it was last cloned,
+   * and can therefore modify in place.
+   */
+  private Map ownedSets = new IdentityHashMap();
+}
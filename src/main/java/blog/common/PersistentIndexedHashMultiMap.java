@@ -0,0 +1,58 @@
+package blog.common;
+
+import java.util.Set;
+
+/**
+ * IndexedMultiMap that can be cloned in constant time (see
+ * {@link PersistentHashMultiMap}).
+ */
+public class PersistentIndexedHashMultiMap extends PersistentHashMultiMap
+    implements IndexedMultiMap {
+  /**
+   * Creates a new, empty PersistentIndexedHashMultiMap.
+   */
+  public PersistentIndexedHashMultiMap() {
+    super();
+  }
+
+  public Object get(Object key) {
+    return new PersistentIndexedValueSet(key);
+  }
+
+  protected PersistentHashMultiMap newInstance() {
+    return new PersistentIndexedHashMultiMap();
+  }
+
+  protected Set emptySet() {
+    return IndexedSet.EMPTY_INDEXED_SET;
+  }
+
+  protected Set newSet() {
+    return new IndexedHashSet();
+  }
+
+  protected Set copySet(Set orig) {
+    return new IndexedHashSet(orig);
+  }
+
+  protected class PersistentIndexedValueSet extends PersistentValueSet
+      implements IndexedSet {
+    protected PersistentIndexedValueSet(Object key) {
+      super(key);
+    }
+
+    public int indexOf(Object o) {
+      IndexedSet s = (IndexedSet) map.get(key);
+      return (s == null) ? -1 : s.indexOf(o);
+    }
+
+    public Object get(int i) {
+      IndexedSet s = (IndexedSet) map.get(key);
+      if (s == null) {
+        // throw exception
+        return IndexedSet.EMPTY_INDEXED_SET.get(i);
+      }
+      return s.get(i);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package blog.common;
+
+/**
+ * MapWithPreimages that can be cloned in constant time, built on a
+ * {@link PersistentHashMap} and a {@link PersistentHashMultiMap}. This
+ * implementation does not support null keys or values.
+ */
+public class PersistentMapWithPreimages extends AbstractMapWithPreimages
+    implements Cloneable {
+
+  /**
+   * Creates an empty map.
+   */
+  public PersistentMapWithPreimages() {
+    map = new PersistentHashMap();
+    preimages = new PersistentHashMultiMap();
+  }
+
+  private PersistentMapWithPreimages(PersistentMapWithPreimages orig) {
+    map = ((PersistentHashMap) orig.map).clone();
+    preimages = (MultiMap) ((PersistentHashMultiMap) orig.preimages).clone();
+  }
+
+  /**
+   * Returns a copy of this map that shares its structure with this one.
+   */
+  public Object clone() {
+    return new PersistentMapWithPreimages(this);
+  }
+}
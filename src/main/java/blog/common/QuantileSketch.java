@@ -0,0 +1,284 @@
+package blog.common;
+
+import java.io.Serializable;
+
+/**
+ * A mergeable sketch of a weighted distribution over the reals, from which
+ * approximate quantiles can be read. This is a merging t-digest: the
+ * distribution is summarized by a bounded number of centroids (mean and
+ * weight), sorted by mean. Incoming values are buffered, and the buffer is
+ * merged into the centroids when it fills up; the merge combines neighbouring
+ * centroids as long as the resulting centroid spans at most one unit of the
+ * scale function k(q) = compression / (2 pi) * asin(2q - 1), which keeps
+ * centroids small near the tails. The sketch thus uses memory proportional to
+ * the compression, independently of the number of values added.
+ */
+public class QuantileSketch implements Serializable {
+
+  /**
+   * Creates an empty sketch with the default compression of 100.
+   */
+  public QuantileSketch() {
+    this(DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Creates an empty sketch with the given compression. Higher compressions
+   * give more accurate quantiles, and use proportionally more memory.
+   */
+  public QuantileSketch(int compression) {
+    this.compression = compression;
+    means = new double[2 * compression + 10];
+    weights = new double[means.length];
+    bufferMeans = new double[2 * compression];
+    bufferWeights = new double[bufferMeans.length];
+    mergedMeans = new double[means.length];
+    mergedWeights = new double[means.length];
+  }
+
+  /**
+   * Adds the value <code>x</code> with weight <code>w</code>, which must be
+   * nonnegative.
+   */
+  public void add(double x, double w) {
+    if (w <= 0) {
+      return;
+    }
+    if (bufferSize == bufferMeans.length) {
+      compress();
+    }
+    bufferMeans[bufferSize] = x;
+    bufferWeights[bufferSize] = w;
+    ++bufferSize;
+    if (x < min) {
+      min = x;
+    }
+    if (x > max) {
+      max = x;
+    }
+  }
+
+  /**
+   * Adds the distribution summarized by <code>other</code>, with its weights
+   * multiplied by <code>factor</code>.
+   */
+  public void addAll(QuantileSketch other, double factor) {
+    other.compress();
+    for (int i = 0; i < other.numCentroids; ++i) {
+      add(other.means[i], other.weights[i] * factor);
+    }
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Multiplies all weights by <code>factor</code>.
+   */
+  public void scale(double factor) {
+    for (int i = 0; i < numCentroids; ++i) {
+      weights[i] *= factor;
+    }
+    for (int i = 0; i < bufferSize; ++i) {
+      bufferWeights[i] *= factor;
+    }
+    totalWeight *= factor;
+  }
+
+  /**
+   * Returns the approximate <code>q</code>-quantile of the distribution, for q
+   * in [0, 1], or NaN if the sketch is empty.
+   */
+  public double quantile(double q) {
+    compress();
+    if (numCentroids == 0 || totalWeight <= 0) {
+      return Double.NaN;
+    }
+    if (numCentroids == 1) {
+      return means[0];
+    }
+    double target = q * totalWeight;
+    // cumulative weight up to the center of the current centroid
+    double center = weights[0] / 2;
+    if (target <= center) {
+      return interpolate(min, means[0], target / center);
+    }
+    for (int i = 0; i + 1 < numCentroids; ++i) {
+      double nextCenter = center + (weights[i] + weights[i + 1]) / 2;
+      if (target <= nextCenter) {
+        return interpolate(means[i], means[i + 1], (target - center)
+            / (nextCenter - center));
+      }
+      center = nextCenter;
+    }
+    double last = means[numCentroids - 1];
+    double rest = totalWeight - center;
+    if (rest <= 0) {
+      return last;
+    }
+    return interpolate(last, max, Math.min((target - center) / rest, 1));
+  }
+
+  /**
+   * Returns the total weight of the values added.
+   */
+  public double getTotalWeight() {
+    compress();
+    return totalWeight;
+  }
+
+  /**
+   * Returns the number of centroids currently kept.
+   */
+  public int getNumCentroids() {
+    compress();
+    return numCentroids;
+  }
+
+  public void clear() {
+    numCentroids = 0;
+    bufferSize = 0;
+    totalWeight = 0;
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+  }
+
+  private static double interpolate(double a, double b, double t) {
+    return a + (b - a) * t;
+  }
+
+  /**
+   * Merges the buffered values into the centroids.
+   */
+  private void compress() {
+    if (bufferSize == 0) {
+      return;
+    }
+    sortByMean(bufferMeans, bufferWeights, 0, bufferSize - 1);
+    for (int i = 0; i < bufferSize; ++i) {
+      totalWeight += bufferWeights[i];
+    }
+
+    int numMerged = 0;
+    double curMean = 0;
+    double curWeight = 0;
+    double weightSoFar = 0;
+    double weightLimit = totalWeight * nextQuantileLimit(0);
+    int i = 0;
+    int j = 0;
+    while (i < numCentroids || j < bufferSize) {
+      double mean;
+      double weight;
+      if (j == bufferSize || (i < numCentroids && means[i] <= bufferMeans[j])) {
+        mean = means[i];
+        weight = weights[i];
+        ++i;
+      } else {
+        mean = bufferMeans[j];
+        weight = bufferWeights[j];
+        ++j;
+      }
+      if (curWeight == 0) {
+        curMean = mean;
+        curWeight = weight;
+      } else if (weightSoFar + curWeight + weight <= weightLimit) {
+        curWeight += weight;
+        curMean += (mean - curMean) * (weight / curWeight);
+      } else {
+        mergedMeans[numMerged] = curMean;
+        mergedWeights[numMerged] = curWeight;
+        ++numMerged;
+        weightSoFar += curWeight;
+        weightLimit = totalWeight * nextQuantileLimit(weightSoFar / totalWeight);
+        curMean = mean;
+        curWeight = weight;
+      }
+    }
+    mergedMeans[numMerged] = curMean;
+    mergedWeights[numMerged] = curWeight;
+    ++numMerged;
+
+    double[] tmp = means;
+    means = mergedMeans;
+    mergedMeans = tmp;
+    tmp = weights;
+    weights = mergedWeights;
+    mergedWeights = tmp;
+    numCentroids = numMerged;
+    bufferSize = 0;
+  }
+
+  /**
+   * Returns the largest quantile that a centroid starting at quantile
+   * <code>q</code> may reach, that is, k^-1(k(q) + 1).
+   */
+  private double nextQuantileLimit(double q) {
+    double angle = Math.asin(Math.min(Math.max(2 * q - 1, -1), 1)) + 2
+        * Math.PI / compression;
+    if (angle >= Math.PI / 2) {
+      return 1;
+    }
+    return (Math.sin(angle) + 1) / 2;
+  }
+
+  /**
+   * Sorts <code>keys[lo..hi]</code> in place, permuting <code>values</code>
+   * along.
+   */
+  private static void sortByMean(double[] keys, double[] values, int lo, int hi) {
+    while (hi - lo > 16) {
+      double pivot = keys[(lo + hi) >>> 1];
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (keys[i] < pivot) {
+          ++i;
+        }
+        while (keys[j] > pivot) {
+          --j;
+        }
+        if (i <= j) {
+          swap(keys, values, i, j);
+          ++i;
+          --j;
+        }
+      }
+      // recurse into the smaller part to bound the stack depth
+      if (j - lo < hi - i) {
+        sortByMean(keys, values, lo, j);
+        lo = i;
+      } else {
+        sortByMean(keys, values, i, hi);
+        hi = j;
+      }
+    }
+    for (int i = lo + 1; i <= hi; ++i) {
+      for (int j = i; j > lo && keys[j - 1] > keys[j]; --j) {
+        swap(keys, values, j - 1, j);
+      }
+    }
+  }
+
+  private static void swap(double[] keys, double[] values, int i, int j) {
+    double tmp = keys[i];
+    keys[i] = keys[j];
+    keys[j] = tmp;
+    tmp = values[i];
+    values[i] = values[j];
+    values[j] = tmp;
+  }
+
+  public static final int DEFAULT_COMPRESSION = 100;
+
+  private final int compression;
+  private double[] means; // centroids, sorted by mean
+  private double[] weights;
+  private int numCentroids = 0;
+  private final double[] bufferMeans; // values not yet merged
+  private final double[] bufferWeights;
+  private int bufferSize = 0;
+  private double[] mergedMeans; // scratch space for compress()
+  private double[] mergedWeights;
+  private double totalWeight = 0; // of the centroids
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+}
@@ -0,0 +1,82 @@
+package blog.common;
+
+/**
+ * Gives each thread access to the {@link RandomStream} it should draw its
+ * pseudorandom numbers from. By default, all threads share the default stream
+ * created by {@link Util#initRandom(boolean)}; code that runs samplers
+ * concurrently (on particles, chains, or workers) splits a stream off for each
+ * unit of work and makes it current with {@link #enter(RandomStream)} while
+ * that work runs.
+ *
+ * <p>
+ * All the random choices of the engine, including those of
+ * {@link Util#random()}, {@link Util#sampleWithProbs(double[])} and the
+ * distributions in blog.distrib, go through {@link #current()}.
+ */
+public class RandomContext {
+
+  private RandomContext() {
+  }
+
+  /**
+   * Replaces the default stream with a new one created from the given seed.
+   */
+  public static void init(long seed) {
+    defaultStream = new RandomStream(seed);
+  }
+
+  /**
+   * Returns the stream of the calling thread: the one it entered last, or the
+   * default stream if it has not entered any.
+   */
+  public static RandomStream current() {
+    RandomStream stream = threadStream.get();
+    // null pointer exception later on if not initialized
+    return (stream == null) ? defaultStream : stream;
+  }
+
+  /**
+   * Makes the given stream current for the calling thread, returning the
+   * stream that was entered before (null if none). Must be paired with a call
+   * to {@link #exit(RandomStream)} receiving the returned value.
+   */
+  public static RandomStream enter(RandomStream stream) {
+    RandomStream previous = threadStream.get();
+    threadStream.set(stream);
+    return previous;
+  }
+
+  /**
+   * Restores the stream that was current before the matching call to
+   * {@link #enter(RandomStream)}.
+   */
+  public static void exit(RandomStream previous) {
+    if (previous == null) {
+      threadStream.remove();
+    } else {
+      threadStream.set(previous);
+    }
+  }
+
+  /**
+   * Splits a new stream off the current one.
+   */
+  public static RandomStream split() {
+    return current().split();
+  }
+
+  /**
+   * Splits <code>n</code> new streams off the current one, in order.
+   */
+  public static RandomStream[] split(int n) {
+    RandomStream[] streams = new RandomStream[n];
+    RandomStream stream = current();
+    for (int i = 0; i < n; i++) {
+      streams[i] = stream.split();
+    }
+    return streams;
+  }
+
+  private static RandomStream defaultStream;
+  private static final ThreadLocal<RandomStream> threadStream = new ThreadLocal<RandomStream>();
+}
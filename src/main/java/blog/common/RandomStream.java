@@ -0,0 +1,135 @@
+package blog.common;
+
+/**
+ * A splittable stream of pseudorandom numbers, based on the SplitMix64
+ * generator (Steele, Lea and Flood, "Fast Splittable Pseudorandom Number
+ * Generators", OOPSLA 2014).
+ *
+ * <p>
+ * A stream can be split into a new stream that is statistically independent of
+ * the remaining values of the original one. Splitting is deterministic, so a
+ * program that splits one stream per particle, chain or worker thread in a
+ * fixed order produces the same numbers on every run with the same seed.
+ *
+ * <p>
+ * RandomStream objects are not thread-safe: each thread should draw from a
+ * stream of its own (see {@link RandomContext}).
+ */
+public class RandomStream {
+
+  /**
+   * Creates a new stream from the given seed.
+   */
+  public RandomStream(long seed) {
+    this(seed, GOLDEN_GAMMA);
+  }
+
+  private RandomStream(long seed, long gamma) {
+    this.seed = seed;
+    this.gamma = gamma;
+  }
+
+  /**
+   * Returns a new stream whose values are independent of the values
+   * subsequently drawn from this one. Advances this stream.
+   */
+  public RandomStream split() {
+    return new RandomStream(nextLong(), mixGamma(nextSeed()));
+  }
+
+  /**
+   * Returns a pseudorandom long.
+   */
+  public long nextLong() {
+    return mix64(nextSeed());
+  }
+
+  /**
+   * Returns a pseudorandom int.
+   */
+  public int nextInt() {
+    return mix32(nextSeed());
+  }
+
+  /**
+   * Returns a pseudorandom integer uniformly distributed in {0, ..., n-1}.
+   * Assumes n > 0.
+   */
+  public int nextInt(int n) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("bound must be positive: " + n);
+    }
+    int r = mix32(nextSeed());
+    int m = n - 1;
+    if ((n & m) == 0) {
+      // power of two
+      return r & m;
+    }
+    // reject values in the last, incomplete copy of the range
+    for (int u = r >>> 1; u + m - (r = u % n) < 0; u = mix32(nextSeed()) >>> 1)
+      ;
+    return r;
+  }
+
+  /**
+   * Returns a pseudorandom number uniformly distributed in [0, 1).
+   */
+  public double nextDouble() {
+    return (nextLong() >>> 11) * DOUBLE_UNIT;
+  }
+
+  /**
+   * Returns a pseudorandom number sampled from a standard Gaussian, using the
+   * polar method (as java.util.Random does).
+   */
+  public double nextGaussian() {
+    if (haveNextGaussian) {
+      haveNextGaussian = false;
+      return nextGaussian;
+    }
+    double v1, v2, s;
+    do {
+      v1 = 2 * nextDouble() - 1;
+      v2 = 2 * nextDouble() - 1;
+      s = v1 * v1 + v2 * v2;
+    } while (s >= 1 || s == 0);
+    double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+    nextGaussian = v2 * multiplier;
+    haveNextGaussian = true;
+    return v1 * multiplier;
+  }
+
+  private long nextSeed() {
+    return (seed += gamma);
+  }
+
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private static int mix32(long z) {
+    z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+    return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+  }
+
+  /**
+   * Returns an odd gamma with enough bit transitions to be a good increment.
+   */
+  private static long mixGamma(long z) {
+    z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+    z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    z = (z ^ (z >>> 33)) | 1L;
+    int n = Long.bitCount(z ^ (z >>> 1));
+    return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+  }
+
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+  private long seed;
+  private final long gamma;
+  private double nextGaussian;
+  private boolean haveNextGaussian = false;
+}
@@ -0,0 +1,236 @@
+package blog.common;
+
+import java.io.Serializable;
+
+import blog.common.numerical.MatrixLib;
+
+/**
+ * Summary statistics of a stream of weighted real or vector values, kept in
+ * memory independent of the number of values. For each component of the
+ * values (a single one for real values, one per entry for matrices), it keeps
+ * a {@link WeightedMoments}, a {@link QuantileSketch} and a
+ * {@link BinnedHistogram}. Values are added with log weights, like in
+ * {@link Histogram}; the components store linear weights relative to the
+ * largest log weight seen so far, and are rescaled when it grows.
+ *
+ * <p>
+ * Values that are not numbers or matrices (such as Model.NULL), numbers that
+ * are not finite, and matrices whose shape differs from the first one added
+ * are not summarized; only their total weight is recorded.
+ */
+public class SummaryStats implements Serializable {
+
+  /**
+   * Adds the given value with the given log weight.
+   */
+  public void add(Object value, double logWeight) {
+    if (logWeight == Double.NEGATIVE_INFINITY) {
+      return;
+    }
+    if (logWeight > logScale) {
+      rescale(logWeight);
+    }
+    double w = Math.exp(logWeight - logScale);
+    totalWeight += w;
+    sumSquaredWeights += w * w;
+    if (value instanceof Number) {
+      double x = ((Number) value).doubleValue();
+      if (!Double.isInfinite(x) && !Double.isNaN(x) && initShape(false, 1, 1)) {
+        addComponent(0, x, w);
+        return;
+      }
+    } else if (value instanceof MatrixLib) {
+      MatrixLib m = (MatrixLib) value;
+      if (initShape(true, m.numRows(), m.numCols()) && isFinite(m)) {
+        for (int i = 0; i < numRows; ++i) {
+          for (int j = 0; j < numCols; ++j) {
+            addComponent(i * numCols + j, m.elementAt(i, j), w);
+          }
+        }
+        return;
+      }
+    }
+    undefinedWeight += w;
+  }
+
+  /**
+   * Adds the values summarized by <code>other</code>, so that these statistics
+   * reflect the values of both.
+   */
+  public void addAll(SummaryStats other) {
+    if (other.logScale == Double.NEGATIVE_INFINITY) {
+      return;
+    }
+    if (other.logScale > logScale) {
+      rescale(other.logScale);
+    }
+    double factor = Math.exp(other.logScale - logScale);
+    totalWeight += other.totalWeight * factor;
+    sumSquaredWeights += other.sumSquaredWeights * factor * factor;
+    undefinedWeight += other.undefinedWeight * factor;
+    if (other.moments != null) {
+      if (!initShape(other.isMatrix, other.numRows, other.numCols)) {
+        undefinedWeight += other.moments[0].getTotalWeight() * factor;
+        return;
+      }
+      for (int i = 0; i < moments.length; ++i) {
+        moments[i].addAll(other.moments[i], factor);
+        quantiles[i].addAll(other.quantiles[i], factor);
+        histograms[i].addAll(other.histograms[i], factor);
+      }
+    }
+  }
+
+  /**
+   * Returns the log of the sum of the weights of all values added.
+   */
+  public double getTotalLogWeight() {
+    return Math.log(totalWeight) + logScale;
+  }
+
+  /**
+   * Returns the effective sample size of the weights of all values added.
+   */
+  public double getEffectiveSampleSize() {
+    if (sumSquaredWeights == 0) {
+      return 0;
+    }
+    return totalWeight * totalWeight / sumSquaredWeights;
+  }
+
+  /**
+   * Returns the fraction of the total weight that is carried by values that
+   * are not summarized.
+   */
+  public double getUndefinedProb() {
+    return (totalWeight > 0) ? undefinedWeight / totalWeight : 0;
+  }
+
+  /**
+   * Returns true if the summarized values are matrices.
+   */
+  public boolean isMatrix() {
+    return isMatrix;
+  }
+
+  /**
+   * Returns the number of rows of the summarized matrices, or 1 for real
+   * values.
+   */
+  public int getNumRows() {
+    return numRows;
+  }
+
+  /**
+   * Returns the number of columns of the summarized matrices, or 1 for real
+   * values.
+   */
+  public int getNumCols() {
+    return numCols;
+  }
+
+  /**
+   * Returns the number of components summarized, which is 0 if no value has
+   * been summarized yet. Component <code>i * numCols + j</code> corresponds to
+   * the entry (i, j) of matrices.
+   */
+  public int getNumComponents() {
+    return (moments == null) ? 0 : moments.length;
+  }
+
+  public WeightedMoments getMoments(int component) {
+    return moments[component];
+  }
+
+  public QuantileSketch getQuantiles(int component) {
+    return quantiles[component];
+  }
+
+  public BinnedHistogram getHistogram(int component) {
+    return histograms[component];
+  }
+
+  public void clear() {
+    logScale = Double.NEGATIVE_INFINITY;
+    totalWeight = 0;
+    sumSquaredWeights = 0;
+    undefinedWeight = 0;
+    moments = null;
+    quantiles = null;
+    histograms = null;
+    isMatrix = false;
+    numRows = 0;
+    numCols = 0;
+  }
+
+  private void addComponent(int i, double x, double w) {
+    moments[i].add(x, w);
+    quantiles[i].add(x, w);
+    histograms[i].add(x, w);
+  }
+
+  /**
+   * Makes the given shape the shape of the summarized values if there is none
+   * yet. Returns false if the summarized values have another shape.
+   */
+  private boolean initShape(boolean matrix, int rows, int cols) {
+    if (moments != null) {
+      return isMatrix == matrix && numRows == rows && numCols == cols;
+    }
+    isMatrix = matrix;
+    numRows = rows;
+    numCols = cols;
+    int n = rows * cols;
+    moments = new WeightedMoments[n];
+    quantiles = new QuantileSketch[n];
+    histograms = new BinnedHistogram[n];
+    for (int i = 0; i < n; ++i) {
+      moments[i] = new WeightedMoments();
+      quantiles[i] = new QuantileSketch();
+      histograms[i] = new BinnedHistogram();
+    }
+    return true;
+  }
+
+  private static boolean isFinite(MatrixLib m) {
+    for (int i = 0; i < m.numRows(); ++i) {
+      for (int j = 0; j < m.numCols(); ++j) {
+        double x = m.elementAt(i, j);
+        if (Double.isInfinite(x) || Double.isNaN(x)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Makes weights relative to exp(newLogScale) rather than exp(logScale).
+   */
+  private void rescale(double newLogScale) {
+    double factor = Math.exp(logScale - newLogScale);
+    totalWeight *= factor;
+    sumSquaredWeights *= factor * factor;
+    undefinedWeight *= factor;
+    if (moments != null) {
+      for (int i = 0; i < moments.length; ++i) {
+        moments[i].scale(factor);
+        quantiles[i].scale(factor);
+        histograms[i].scale(factor);
+      }
+    }
+    logScale = newLogScale;
+  }
+
+  private double logScale = Double.NEGATIVE_INFINITY; // weights are relative
+  private double totalWeight = 0;
+  private double sumSquaredWeights = 0;
+  private double undefinedWeight = 0;
+
+  private boolean isMatrix = false;
+  private int numRows = 0;
+  private int numCols = 0;
+  private WeightedMoments[] moments = null; // one per component
+  private QuantileSketch[] quantiles = null;
+  private BinnedHistogram[] histograms = null;
+}
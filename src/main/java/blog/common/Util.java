@@ -49,7 +49,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
-import java.util.Random;
 import java.util.Set;
 
 import org.apache.commons.math3.util.ArithmeticUtils;
@@ -65,9 +64,9 @@ import org.apache.commons.math3.util.ArithmeticUtils;
  */
 public class Util {
   /**
-   * Initializes random number generator in the default random context (see
-   * {@link #pushRandomContext(String)}) using either the clock time or a fixed
-   * seed. If the fixed seed is used, the behavior of the default random context
+   * Initializes the default random stream (see {@link RandomContext}) using
+   * either the clock time or a fixed seed. If the fixed seed is used, the
+   * behavior of the default random stream, and of every stream split from it,
    * will be repeatable across runs.
    * 
    * @param randomize
@@ -77,10 +76,10 @@ public class Util {
     if (randomize) {
       long seed = System.currentTimeMillis();
       System.out.println("Using clock time " + seed + " as random seed.");
-      rand = new Random(seed);
+      RandomContext.init(seed);
     } else {
       System.out.println("Using fixed random seed for repeatability.");
-      rand = new Random(0xad527c2b74e10cb3L);
+      RandomContext.init(0xad527c2b74e10cb3L);
     }
   }
 
@@ -92,7 +91,7 @@ public class Util {
       return null;
     }
 
-    int index = randInt(set.size());
+    int index = RandomContext.current().nextInt(set.size());
     Iterator setIterator = set.iterator();
 
     for (int counter = 0; counter < index; ++counter, setIterator.next())
@@ -105,7 +104,7 @@ public class Util {
    * This method must not be called before initRandom() is called.
    */
   public static double random() {
-    return rand.nextDouble(); // null pointer exception if not initialized
+    return RandomContext.current().nextDouble();
   }
 
   /**
@@ -113,7 +112,7 @@ public class Util {
    * n > 0
    */
   public static int randInt(int n) {
-    return rand.nextInt(n);
+    return RandomContext.current().nextInt(n);
   }
 
   /**
@@ -121,7 +120,7 @@ public class Util {
    * This method must not be called before initRandom() is called.
    */
   public static double randGaussian() {
-    return rand.nextGaussian();
+    return RandomContext.current().nextGaussian();
   }
 
   /** Returns the sum of an array of doubles. */
@@ -149,7 +148,7 @@ public class Util {
    * the distribution specified by probs. If probs has length 0, returns -1.
    */
   public static int sampleWithProbs(double[] probs) {
-    double u = random();
+    double u = RandomContext.current().nextDouble();
     double cumProb = 0;
 
     for (int i = 0; i < probs.length - 1; ++i) {
@@ -377,7 +376,7 @@ public class Util {
       }
     }
 
-    throw new Error(topLevelMessage);
+    throw new Error(topLevelMessage, e);
   }
 
   /**
@@ -1103,7 +1102,6 @@ public class Util {
     return newAry;
   }
 
-  private static Random rand;
   private static boolean verbose = false;
   private static boolean print = false;
 
@@ -0,0 +1,122 @@
+package blog.common;
+
+import java.io.Serializable;
+
+/**
+ * Streaming weighted mean and variance of a sequence of real numbers, computed
+ * with West's incremental update, together with the minimum, the maximum and
+ * the sums of the weights and of their squares. Two instances can be merged,
+ * and all weights can be multiplied by a common factor, so that weights can be
+ * kept relative to a running scale.
+ */
+public class WeightedMoments implements Serializable {
+
+  /**
+   * Adds the value <code>x</code> with weight <code>w</code>, which must be
+   * nonnegative.
+   */
+  public void add(double x, double w) {
+    if (w <= 0) {
+      return;
+    }
+    totalWeight += w;
+    sumSquaredWeights += w * w;
+    double delta = x - mean;
+    mean += delta * (w / totalWeight);
+    m2 += w * delta * (x - mean);
+    if (x < min) {
+      min = x;
+    }
+    if (x > max) {
+      max = x;
+    }
+  }
+
+  /**
+   * Adds the values summarized by <code>other</code>, with their weights
+   * multiplied by <code>factor</code>.
+   */
+  public void addAll(WeightedMoments other, double factor) {
+    double w = other.totalWeight * factor;
+    if (w <= 0) {
+      return;
+    }
+    double newTotal = totalWeight + w;
+    double delta = other.mean - mean;
+    m2 += other.m2 * factor + delta * delta * totalWeight * (w / newTotal);
+    mean += delta * (w / newTotal);
+    totalWeight = newTotal;
+    sumSquaredWeights += other.sumSquaredWeights * factor * factor;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Multiplies all weights by <code>factor</code>.
+   */
+  public void scale(double factor) {
+    totalWeight *= factor;
+    sumSquaredWeights *= factor * factor;
+    m2 *= factor;
+  }
+
+  public double getTotalWeight() {
+    return totalWeight;
+  }
+
+  /**
+   * Returns the effective sample size (sum of weights)^2 / (sum of squared
+   * weights), or 0 if no value has been added.
+   */
+  public double getEffectiveSampleSize() {
+    if (sumSquaredWeights == 0) {
+      return 0;
+    }
+    return totalWeight * totalWeight / sumSquaredWeights;
+  }
+
+  /**
+   * Returns the weighted mean, or NaN if no value has been added.
+   */
+  public double getMean() {
+    return (totalWeight > 0) ? mean : Double.NaN;
+  }
+
+  /**
+   * Returns the weighted (population) variance, or NaN if no value has been
+   * added.
+   */
+  public double getVariance() {
+    return (totalWeight > 0) ? Math.max(m2 / totalWeight, 0) : Double.NaN;
+  }
+
+  /**
+   * Returns the smallest value added, or +inf if no value has been added.
+   */
+  public double getMin() {
+    return min;
+  }
+
+  /**
+   * Returns the largest value added, or -inf if no value has been added.
+   */
+  public double getMax() {
+    return max;
+  }
+
+  public void clear() {
+    totalWeight = 0;
+    sumSquaredWeights = 0;
+    mean = 0;
+    m2 = 0;
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+  }
+
+  private double totalWeight = 0;
+  private double sumSquaredWeights = 0;
+  private double mean = 0;
+  private double m2 = 0; // weighted sum of squared deviations from the mean
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+}
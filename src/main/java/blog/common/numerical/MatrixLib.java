@@ -1,5 +1,7 @@
 package blog.common.numerical;
 
+import java.io.Serializable;
+
 /**
  * Exposes different matrix libraries to BLOG using a consistent set of
  * methods. Different libraries may be used with BLOG without significant
@@ -8,7 +10,7 @@ package blog.common.numerical;
  * @author awong
  * @date November 5, 2012
  */
-public interface MatrixLib {
+public interface MatrixLib extends Serializable {
   /**
    * Gives the value of an element of this matrix
    * 
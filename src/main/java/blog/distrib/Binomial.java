@@ -37,6 +37,7 @@ package blog.distrib;
 
 import org.apache.commons.math3.distribution.BinomialDistribution;
 
+import blog.common.RandomContext;
 import blog.common.Util;
 
 /**
@@ -165,15 +166,25 @@ public class Binomial implements CondProbDistrib {
 
   public int sample_value() {
     checkHasParams();
-    return sample_value(n, p);
+    return sample_value(binom);
   }
 
   /**
-   * Samples the current binomial distribution.
+   * Samples a binomial distribution with the given parameters.
    */
   public static int sample_value(int n, double p) {
+    return sample_value(new BinomialDistribution(n, p));
+  }
+
+  /**
+   * Samples by inversion, as BinomialDistribution.sample() does, but drawing
+   * from the current random stream rather than from the distribution's own
+   * generator.
+   */
+  private static int sample_value(BinomialDistribution binom) {
     // Modified by yiwu on Oct.8.2014
-    return binom.sample();
+    return binom.inverseCumulativeProbability(RandomContext.current()
+        .nextDouble());
   }
 
   @Override
@@ -185,10 +196,11 @@ public class Binomial implements CondProbDistrib {
   public Object[] getFiniteSupport() {
     if (finiteSupport == null) {
       checkHasParams();
-      finiteSupport = new Object[n + 1];
+      Object[] support = new Object[n + 1];
       for (int i = 0; i <= n; i++) {
-        finiteSupport[i] = i;
+        support[i] = i;
       }
+      finiteSupport = support;
     }
     return finiteSupport;
   }
@@ -197,6 +209,6 @@ public class Binomial implements CondProbDistrib {
   private boolean hasN;
   private double p;
   private boolean hasP;
-  private Object[] finiteSupport = null;
-  static private BinomialDistribution binom;
+  private volatile Object[] finiteSupport = null;
+  private BinomialDistribution binom;
 }
@@ -0,0 +1,200 @@
+package blog.distrib;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates unparameterized instances of a CPD class, as its constructor with no
+ * arguments does. The built-in distributions have factories that call their
+ * constructors directly; other classes get a factory that calls their
+ * constructor by reflection, looked up once per class.
+ */
+public abstract class CPDFactory {
+
+  /**
+   * Returns a new instance of the CPD class of this factory.
+   */
+  public abstract CondProbDistrib create();
+
+  /**
+   * Returns the factory for the given CPD class.
+   * 
+   * @throws IllegalArgumentException
+   *           if the class does not have a public constructor with no
+   *           arguments
+   */
+  public static CPDFactory forClass(Class<? extends CondProbDistrib> cpdClass) {
+    CPDFactory factory = factories.get(cpdClass);
+    if (factory == null) {
+      factory = new ReflectiveFactory(cpdClass);
+      CPDFactory existing = factories.putIfAbsent(cpdClass, factory);
+      if (existing != null) {
+        factory = existing;
+      }
+    }
+    return factory;
+  }
+
+  private static class ReflectiveFactory extends CPDFactory {
+    ReflectiveFactory(Class<? extends CondProbDistrib> cpdClass) {
+      try {
+        constructor = cpdClass.getConstructor();
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException(cpdClass
+            + " does not have a constructor with no arguments");
+      }
+    }
+
+    public CondProbDistrib create() {
+      try {
+        return constructor.newInstance();
+      } catch (Exception e) {
+        throw new IllegalStateException("Couldn't instantiate "
+            + constructor.getDeclaringClass(), e);
+      }
+    }
+
+    private final Constructor<? extends CondProbDistrib> constructor;
+  }
+
+  private static void register(Class<? extends CondProbDistrib> cpdClass,
+      CPDFactory factory) {
+    factories.put(cpdClass, factory);
+  }
+
+  private static final ConcurrentMap<Class<?>, CPDFactory> factories = new ConcurrentHashMap<Class<?>, CPDFactory>();
+
+  static {
+    register(Bernoulli.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Bernoulli();
+      }
+    });
+    register(Beta.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Beta();
+      }
+    });
+    register(Binomial.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Binomial();
+      }
+    });
+    register(BooleanDistrib.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new BooleanDistrib();
+      }
+    });
+    register(Categorical.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Categorical();
+      }
+    });
+    register(Dirichlet.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Dirichlet();
+      }
+    });
+    register(Discrete.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Discrete();
+      }
+    });
+    register(DontCare.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new DontCare();
+      }
+    });
+    register(EqualsCPD.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new EqualsCPD();
+      }
+    });
+    register(Exponential.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Exponential();
+      }
+    });
+    register(GEM.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new GEM();
+      }
+    });
+    register(Gamma.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Gamma();
+      }
+    });
+    register(Gaussian.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Gaussian();
+      }
+    });
+    register(Geometric.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Geometric();
+      }
+    });
+    register(InverseWishart.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new InverseWishart();
+      }
+    });
+    register(IsotropicMultivarGaussian.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new IsotropicMultivarGaussian();
+      }
+    });
+    register(Laplace.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Laplace();
+      }
+    });
+    register(Multinomial.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Multinomial();
+      }
+    });
+    register(MultivarGaussian.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new MultivarGaussian();
+      }
+    });
+    register(NegativeBinomial.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new NegativeBinomial();
+      }
+    });
+    register(Poisson.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new Poisson();
+      }
+    });
+    register(UniformChoice.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new UniformChoice();
+      }
+    });
+    register(UniformInt.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new UniformInt();
+      }
+    });
+    register(UniformReal.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new UniformReal();
+      }
+    });
+    register(UniformVector.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new UniformVector();
+      }
+    });
+    register(UnivarGaussian.class, new CPDFactory() {
+      public CondProbDistrib create() {
+        return new UnivarGaussian();
+      }
+    });
+  }
+}
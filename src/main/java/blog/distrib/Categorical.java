@@ -35,7 +35,11 @@
 
 package blog.distrib;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import blog.common.Util;
@@ -44,6 +48,12 @@ import blog.common.Util;
  * Categorical Distribution takes a distribution parameter <code>map</code>,
  * which is a map from objects to numbers. The number corresponding to each
  * object represents the probability of that object occurring.
+ *
+ * <p>
+ * Values are sampled in constant time using an alias table (Vose's method).
+ * The table and the normalized probabilities are prepared once for each
+ * distinct parameter map, and cached: setting parameters equal to ones used
+ * before, by this or any other Categorical, reuses the prepared table.
  */
 public class Categorical implements CondProbDistrib {
 
@@ -70,49 +80,25 @@ public class Categorical implements CondProbDistrib {
    */
   public void setParams(Map<?, ?> map) {
     if (map != null) {
-      if (map.size() == 0) {
-        throw new IllegalArgumentException(
-            "no elements within map for categorical distribution");
-      }
-      double sum = 0.0;
-      for (Map.Entry<?, ?> entry : map.entrySet()) {
-        Number probNum = (Number) entry.getValue();
-        double prob = probNum.doubleValue();
-        if (prob < 0) {
-          throw new IllegalArgumentException("Probability " + prob
-              + " for key " + entry.getKey().toString() + " is negative");
-        }
-        sum += prob;
+      if (table != null && map.equals(table.params)) {
+        return;
       }
-      if (sum < 1e-9) {
-        throw new IllegalArgumentException(
-            "probabilities sum to approximately zero");
+      Table newTable;
+      synchronized (tableCache) {
+        newTable = tableCache.get(map);
       }
-      this.map = new HashMap<Object, Double>();
-      this.logMap = new HashMap<Object, Double>();
-      this.objects = new Object[map.size()];
-      this.cdfObjects = new double[map.size()];
-      int count = 0;
-      double cdf = 0.0;
-      for (Map.Entry<?, ?> entry : map.entrySet()) {
-        Object key = entry.getKey();
-        Number num = (Number) entry.getValue();
-        double value = num.doubleValue();
-        this.objects[count] = key;
-        double prob = value / sum;
-        cdf += prob;
-        this.cdfObjects[count] = cdf;
-        this.map.put(key, prob);
-        this.logMap.put(key, Math.log(prob));
-        count += 1;
+      if (newTable == null) {
+        newTable = new Table(map);
+        synchronized (tableCache) {
+          tableCache.put(newTable.params, newTable);
+        }
       }
-      this.hasMap = true;
-      this.finiteSupport = null;
+      this.table = newTable;
     }
   }
 
   private void checkHasParams() {
-    if (!this.hasMap) {
+    if (this.table == null) {
       throw new IllegalArgumentException("parameter map not provided");
     }
   }
@@ -125,7 +111,7 @@ public class Categorical implements CondProbDistrib {
   @Override
   public double getProb(Object value) {
     checkHasParams();
-    Double prob = map.get(value);
+    Double prob = table.map.get(value);
     return prob != null ? prob : 0;
   }
 
@@ -137,7 +123,7 @@ public class Categorical implements CondProbDistrib {
   @Override
   public double getLogProb(Object value) {
     checkHasParams();
-    Double logProb = logMap.get(value);
+    Double logProb = table.logMap.get(value);
     return logProb != null ? logProb : Double.NEGATIVE_INFINITY;
   }
 
@@ -149,13 +135,7 @@ public class Categorical implements CondProbDistrib {
   @Override
   public Object sampleVal() {
     checkHasParams();
-    double val = Util.random();
-    for (int i = 0; i < cdfObjects.length; i++) {
-      if (val <= cdfObjects[i]) {
-        return objects[i];
-      }
-    }
-    return objects[objects.length - 1];
+    return table.sample();
   }
 
   @Override
@@ -165,34 +145,122 @@ public class Categorical implements CondProbDistrib {
 
   @Override
   public Object[] getFiniteSupport() {
-    if (finiteSupport == null) {
-      checkHasParams();
-      int supportSize = 0;
-      for (Map.Entry<?, ?> entry : map.entrySet()) {
-        Number num = (Number) entry.getValue();
-        double prob = num.doubleValue();
-        if (!Util.closeToZero(prob))
-          supportSize++;
+    checkHasParams();
+    return table.finiteSupport;
+  }
+
+  /**
+   * The normalized probabilities for a parameter map, with the alias table
+   * used to sample from them. Tables are immutable, so they can be shared.
+   */
+  private static class Table implements Serializable {
+    Table(Map<?, ?> params) {
+      // copied, so that later changes to the given map are noticed
+      this.params = new HashMap<Object, Object>(params);
+      if (params.size() == 0) {
+        throw new IllegalArgumentException(
+            "no elements within map for categorical distribution");
       }
-      int curSupportIndex = 0;
-      finiteSupport = new Object[supportSize];
-      for (Map.Entry<?, ?> entry : map.entrySet()) {
+      double sum = 0.0;
+      for (Map.Entry<?, ?> entry : params.entrySet()) {
+        Number probNum = (Number) entry.getValue();
+        double prob = probNum.doubleValue();
+        if (prob < 0) {
+          throw new IllegalArgumentException("Probability " + prob
+              + " for key " + entry.getKey().toString() + " is negative");
+        }
+        sum += prob;
+      }
+      if (sum < 1e-9) {
+        throw new IllegalArgumentException(
+            "probabilities sum to approximately zero");
+      }
+
+      int n = params.size();
+      objects = new Object[n];
+      probs = new double[n];
+      alias = new int[n];
+      List<Object> support = new ArrayList<Object>();
+      int count = 0;
+      for (Map.Entry<?, ?> entry : params.entrySet()) {
         Object key = entry.getKey();
-        Number num = (Number) entry.getValue();
-        double prob = num.doubleValue();
-        if (!Util.closeToZero(prob)) {
-          finiteSupport[curSupportIndex] = key;
-          curSupportIndex++;
+        double value = ((Number) entry.getValue()).doubleValue();
+        double prob = value / sum;
+        objects[count] = key;
+        probs[count] = prob * n;
+        map.put(key, prob);
+        logMap.put(key, Math.log(prob));
+        if (!Util.closeToZero(value)) {
+          support.add(key);
+        }
+        count += 1;
+      }
+      finiteSupport = support.toArray();
+
+      // Vose's method: pair each column with less than average mass with a
+      // column with more, which fills it up.
+      int[] small = new int[n];
+      int[] large = new int[n];
+      int numSmall = 0;
+      int numLarge = 0;
+      for (int i = 0; i < n; i++) {
+        alias[i] = i;
+        if (probs[i] < 1.0) {
+          small[numSmall++] = i;
+        } else {
+          large[numLarge++] = i;
+        }
+      }
+      while (numSmall > 0 && numLarge > 0) {
+        int less = small[--numSmall];
+        int more = large[--numLarge];
+        alias[less] = more;
+        probs[more] -= 1.0 - probs[less];
+        if (probs[more] < 1.0) {
+          small[numSmall++] = more;
+        } else {
+          large[numLarge++] = more;
         }
       }
+      // whatever remains is full, up to rounding errors
+      while (numLarge > 0) {
+        probs[large[--numLarge]] = 1.0;
+      }
+      while (numSmall > 0) {
+        probs[small[--numSmall]] = 1.0;
+      }
     }
-    return finiteSupport;
+
+    Object sample() {
+      double u = Util.random() * objects.length;
+      int column = Math.min((int) u, objects.length - 1);
+      if (u - column < probs[column]) {
+        return objects[column];
+      }
+      return objects[alias[column]];
+    }
+
+    final Map<?, ?> params;
+    final HashMap<Object, Double> map = new HashMap<Object, Double>();
+    final HashMap<Object, Double> logMap = new HashMap<Object, Double>();
+    final Object[] objects;
+    final double[] probs; // probability of keeping each column
+    final int[] alias; // column to use instead
+    final Object[] finiteSupport;
   }
 
-  private HashMap<Object, Double> map;
-  private HashMap<Object, Double> logMap;
-  private Object[] objects; // Ordered collection of objects
-  private double[] cdfObjects; // CDF corresponding to objects
-  private boolean hasMap;
-  private Object[] finiteSupport = null;
+  private static final int TABLE_CACHE_SIZE = 1024;
+
+  /**
+   * Prepared tables, by parameter map, shared by all instances. Least recently
+   * used tables are evicted first.
+   */
+  private static final Map<Map<?, ?>, Table> tableCache = new LinkedHashMap<Map<?, ?>, Table>(
+      16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<Map<?, ?>, Table> eldest) {
+      return size() > TABLE_CACHE_SIZE;
+    }
+  };
+
+  private Table table;
 }
@@ -1,5 +1,7 @@
 package blog.distrib;
 
+import java.io.Serializable;
+
 /**
  * Common interface for all probability distributions.
  * 
@@ -10,7 +12,7 @@ package blog.distrib;
  * @author cberzan
  * @since Jun 3, 2014
  */
-public interface CondProbDistrib {
+public interface CondProbDistrib extends Serializable {
 
   /**
    * Set the parameters of this distribution.
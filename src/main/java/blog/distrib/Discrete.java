@@ -181,14 +181,15 @@ public class Discrete implements CondProbDistrib {
           supportSize++;
         }
       }
-      finiteSupport = new Object[supportSize];
+      Object[] support = new Object[supportSize];
       int curSupportIndex = 0;
       for (int i = 0; i < k; i++) {
         if (!Util.closeToZero(this.p[i])) {
-          finiteSupport[curSupportIndex] = i;
+          support[curSupportIndex] = i;
           curSupportIndex++;
         }
       }
+      finiteSupport = support;
     }
     return finiteSupport;
   }
@@ -198,5 +199,5 @@ public class Discrete implements CondProbDistrib {
   private double[] pCDF;
   private boolean hasP;
   private int k; // the number of categories; dimension of p
-  private Object[] finiteSupport = null;
+  private volatile Object[] finiteSupport = null;
 }
@@ -43,9 +43,17 @@ package blog.distrib;
  */
 public class EqualsCPD implements CondProbDistrib {
   /**
-   * An instance of EqualsCPD.
+   * Creates an EqualsCPD whose value has not been set yet.
    */
-  public static final EqualsCPD CPD = new EqualsCPD();
+  public EqualsCPD() {
+  }
+
+  /**
+   * Creates an EqualsCPD that takes on the given value.
+   */
+  public EqualsCPD(Object value) {
+    setParams(value);
+  }
 
   /**
    * @param params
@@ -120,13 +128,14 @@ public class EqualsCPD implements CondProbDistrib {
   public Object[] getFiniteSupport() {
     if (finiteSupport == null) {
       checkHasParams();
-      finiteSupport = new Object[1];
-      finiteSupport[0] = value;
+      Object[] support = new Object[1];
+      support[0] = value;
+      finiteSupport = support;
     }
     return finiteSupport;
   }
 
   private Object value;
   private boolean hasValue;
-  private Object[] finiteSupport = null;
+  private volatile Object[] finiteSupport = null;
 }
@@ -35,7 +35,8 @@
 
 package blog.distrib;
 
-import blog.common.Util;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
 
 /**
  * A Gamma distribution with shape parameter <code>k</code> and scale parameter
@@ -164,6 +165,7 @@ public class Gamma implements CondProbDistrib {
   }
 
   public static double sample_value(double k, double lambda) {
+    RandomStream rng = RandomContext.current();
     boolean accept = false;
     if (k >= 1) {
       // Cheng's algorithm
@@ -173,8 +175,8 @@ public class Gamma implements CondProbDistrib {
       double cheng = (1 + Math.log(4.5));
       double u, v, x, y, z, r;
       do {
-        u = Util.random();
-        v = Util.random();
+        u = rng.nextDouble();
+        v = rng.nextDouble();
         y = ((1 / lam) * Math.log(v / (1 - v)));
         x = (k * Math.exp(y));
         z = (u * v * v);
@@ -190,8 +192,8 @@ public class Gamma implements CondProbDistrib {
       double d = ((1 - k) * Math.pow(k, (k / (1 - k))));
       double u, v, z, e, x;
       do {
-        u = Util.random();
-        v = Util.random();
+        u = rng.nextDouble();
+        v = rng.nextDouble();
         z = -Math.log(u); // generating random exponential variates
         e = -Math.log(v);
         x = Math.pow(z, c);
@@ -187,9 +187,10 @@ public class Geometric implements CondProbDistrib {
       int supportSize = 0;
       while (!Util.closeToZero(getProb(supportSize)))
         supportSize++;
-      finiteSupport = new Object[supportSize];
+      Object[] support = new Object[supportSize];
       for (int i = 0; i < supportSize; i++)
-        finiteSupport[i] = i;
+        support[i] = i;
+      finiteSupport = support;
     }
     return finiteSupport;
   }
@@ -198,5 +199,5 @@ public class Geometric implements CondProbDistrib {
   private boolean hasAlpha;
   private double logAlpha;
   private double logOneMinusAlpha;
-  private Object[] finiteSupport = null;
+  private volatile Object[] finiteSupport = null;
 }
@@ -35,6 +35,7 @@
 
 package blog.distrib;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -91,7 +92,7 @@ public class ListInterp extends AbstractFunctionInterp {
     }
 
     for (int i = 1; i < params.size(); i += arity) {
-      List args = params.subList(i, i + arity);
+      List args = new ArrayList(params.subList(i, i + arity));
       // System.out.println(args);
       tuples.add(args);
     }
@@ -40,6 +40,8 @@ import java.util.Arrays;
 
 import org.apache.commons.math3.distribution.BinomialDistribution;
 
+import blog.common.RandomContext;
+import blog.common.RandomStream;
 import blog.common.Util;
 import blog.common.numerical.MatrixLib;
 
@@ -269,8 +271,9 @@ public class Multinomial implements CondProbDistrib {
       result.add(0);
     }
 
+    RandomStream rng = RandomContext.current();
     for (int trial = 0; trial < n; trial++) {
-      double val = Util.random();
+      double val = rng.nextDouble();
       int bucket = Arrays.binarySearch(pCDF, val);
       if (bucket < 0)
         bucket = -bucket - 1;
@@ -291,13 +294,15 @@ public class Multinomial implements CondProbDistrib {
     int cur = 0;
     double cdf = 0;
     ArrayList<Integer> result = new ArrayList<Integer>(k);
+    RandomStream rng = RandomContext.current();
     for (int i = 0; i < k - 1; i++) {
       if (n == cur) {
         result.add(0);
         continue;
       }
       binom = new BinomialDistribution(n - cur, p[i] / (1.0 - cdf));
-      int x = binom.sample();
+      // sample by inversion, as binom.sample() would, but with our own stream
+      int x = binom.inverseCumulativeProbability(rng.nextDouble());
       cur += x;
       cdf += p[i];
       result.add(x);
@@ -307,7 +312,7 @@ public class Multinomial implements CondProbDistrib {
   }
 
   @Override
-  public Object[] getFiniteSupport() {
+  public synchronized Object[] getFiniteSupport() {
     if (finiteSupport == null) {
       checkHasParams();
       int kPos = 0;
@@ -35,6 +35,10 @@
 
 package blog.distrib;
 
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import blog.common.numerical.MatrixFactory;
 import blog.common.numerical.MatrixLib;
 
@@ -44,6 +48,12 @@ import blog.common.numerical.MatrixLib;
  * <code>covariance</code>. Mean is a column vector of dimension <code>d</code>
  * by 1.
  * 
+ * <p>
+ * The Cholesky factorization of the covariance, which sampling and density
+ * evaluation rely on, is computed once for each distinct covariance matrix and
+ * cached, so that a covariance that is constant in the model is only factored
+ * once.
+ * 
  * @since June 17, 2014
  */
 public class MultivarGaussian implements CondProbDistrib {
@@ -123,10 +133,49 @@ public class MultivarGaussian implements CondProbDistrib {
     this.dimFactor = Math.pow(2 * Math.PI, d / 2.0);
     this.logDimFactor = Math.log(2 * Math.PI) * d / 2.0;
 
-    this.normConst = Math.sqrt(covariance.det()) * dimFactor;
-    this.logNormConst = 0.5 * covariance.logDet() + logDimFactor;
-    this.inverseCovariance = covariance.inverse();
-    this.sqrtCovariance = covariance.choleskyFactor();
+    if (factorization == null || !covariance.equals(factorization.covariance)) {
+      factorization = getFactorization(covariance);
+    }
+    this.normConst = Math.exp(0.5 * factorization.logDet) * dimFactor;
+    this.logNormConst = 0.5 * factorization.logDet + logDimFactor;
+    this.sqrtCovariance = factorization.sqrtCovariance;
+  }
+
+  /**
+   * Returns the factorization of the given covariance matrix, from the cache
+   * if it is there.
+   */
+  private static Factorization getFactorization(MatrixLib covariance) {
+    Factorization result;
+    synchronized (factorizationCache) {
+      result = factorizationCache.get(covariance);
+    }
+    if (result == null) {
+      result = new Factorization(covariance);
+      synchronized (factorizationCache) {
+        factorizationCache.put(result.covariance, result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns (x - mean)' * inverse(covariance) * (x - mean), computed by solving
+   * L z = x - mean, where L is the Cholesky factor of the covariance.
+   */
+  private double mahalanobis(MatrixLib x) {
+    double[][] lower = factorization.lower;
+    double[] z = new double[d];
+    double result = 0;
+    for (int i = 0; i < d; i++) {
+      double sum = x.elementAt(i, 0) - mean.elementAt(i, 0);
+      for (int j = 0; j < i; j++) {
+        sum -= lower[i][j] * z[j];
+      }
+      z[i] = sum / lower[i][i];
+      result += z[i] * z[i];
+    }
+    return result;
   }
 
   private void checkHasParams() {
@@ -164,10 +213,7 @@ public class MultivarGaussian implements CondProbDistrib {
   public double getProb(MatrixLib x) {
     checkHasParams();
     if (x.numRows() == d && x.numCols() == 1) {
-      return Math.exp(-0.5
-          * x.minus(mean).transpose().timesMat(inverseCovariance)
-              .timesMat(x.minus(mean)).elementAt(0, 0))
-          / normConst;
+      return Math.exp(-0.5 * mahalanobis(x)) / normConst;
     }
     throw new IllegalArgumentException("The matrix given is " + x.numRows()
         + " by " + x.numCols() + " but should be a " + d + " by 1 vector.");
@@ -192,8 +238,7 @@ public class MultivarGaussian implements CondProbDistrib {
   public double getLogProb(MatrixLib x) {
     checkHasParams();
     if (x.numRows() == d && x.numCols() == 1) {
-      return ((-0.5 * x.minus(mean).transpose().timesMat(inverseCovariance)
-          .timesMat(x.minus(mean)).elementAt(0, 0)) - logNormConst);
+      return -0.5 * mahalanobis(x) - logNormConst;
     }
     throw new IllegalArgumentException("The matrix given is " + x.numRows()
         + " by " + x.numCols() + " but should be a " + d + " by 1 vector.");
@@ -233,6 +278,58 @@ public class MultivarGaussian implements CondProbDistrib {
     return null;
   }
 
+  /**
+   * Cholesky factorization of a covariance matrix. Factorizations are
+   * immutable, so they can be shared.
+   */
+  private static class Factorization implements Serializable {
+    Factorization(MatrixLib covariance) {
+      int n = covariance.numRows();
+      double[][] copy = new double[n][n];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          copy[i][j] = covariance.elementAt(i, j);
+        }
+      }
+      // copied, so that later changes to the given matrix are noticed
+      this.covariance = MatrixFactory.fromArray(copy);
+      this.sqrtCovariance = this.covariance.choleskyFactor();
+      this.lower = new double[n][];
+      double sumLogDiag = 0;
+      for (int i = 0; i < n; i++) {
+        lower[i] = new double[i + 1];
+        for (int j = 0; j <= i; j++) {
+          lower[i][j] = sqrtCovariance.elementAt(i, j);
+        }
+        if (!(lower[i][i] > 0)) {
+          throw new IllegalArgumentException(
+              "The covariance matrix given is not positive definite");
+        }
+        sumLogDiag += Math.log(lower[i][i]);
+      }
+      this.logDet = 2 * sumLogDiag;
+    }
+
+    final MatrixLib covariance;
+    final MatrixLib sqrtCovariance; // lower triangular Cholesky factor
+    final double[][] lower; // rows of sqrtCovariance, up to the diagonal
+    final double logDet;
+  }
+
+  private static final int FACTORIZATION_CACHE_SIZE = 64;
+
+  /**
+   * Factorizations, by covariance matrix, shared by all instances. Least
+   * recently used factorizations are evicted first.
+   */
+  private static final Map<MatrixLib, Factorization> factorizationCache = new LinkedHashMap<MatrixLib, Factorization>(
+      16, 0.75f, true) {
+    protected boolean removeEldestEntry(
+        Map.Entry<MatrixLib, Factorization> eldest) {
+      return size() > FACTORIZATION_CACHE_SIZE;
+    }
+  };
+
   private MatrixLib mean;
   private boolean hasMean;
   private MatrixLib covariance;
@@ -243,6 +340,6 @@ public class MultivarGaussian implements CondProbDistrib {
   private double logDimFactor;
   private double normConst;
   private double logNormConst;
-  private MatrixLib inverseCovariance;
   private MatrixLib sqrtCovariance;
+  private Factorization factorization;
 }
@@ -188,9 +188,10 @@ public class NegativeBinomial implements CondProbDistrib {
       int supportSize = 0;
       while (!Util.closeToZero(getProb(supportSize)))
         supportSize++;
-      finiteSupport = new Object[supportSize];
+      Object[] support = new Object[supportSize];
       for (int i = 0; i < supportSize; i++)
-        finiteSupport[i] = i;
+        support[i] = i;
+      finiteSupport = support;
     }
     return finiteSupport;
   }
@@ -199,5 +200,5 @@ public class NegativeBinomial implements CondProbDistrib {
   private boolean hasR;
   private double p;
   private boolean hasP;
-  private Object[] finiteSupport = null;
+  private volatile Object[] finiteSupport = null;
 }
@@ -121,7 +121,7 @@ public class Poisson implements CondProbDistrib {
    * @param b
    * @return
    */
-  public double cdf(int a, int b) {
+  public synchronized double cdf(int a, int b) {
     ensureCDFTable(b);
 
     if (a <= 0)
@@ -273,14 +273,15 @@ public class Poisson implements CondProbDistrib {
       int supportSize = 0;
       while (!Util.closeToZero(getProb(supportSize)))
         supportSize++;
-      finiteSupport = new Object[supportSize];
+      Object[] support = new Object[supportSize];
       for (int i = 0; i < supportSize; i++)
-        finiteSupport[i] = i;
+        support[i] = i;
+      finiteSupport = support;
     }
     return finiteSupport;
   }
 
   private double lambda;
   private boolean hasLambda;
-  private Object[] finiteSupport = null;
+  private volatile Object[] finiteSupport = null;
 }
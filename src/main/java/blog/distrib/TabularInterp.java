@@ -35,6 +35,9 @@
 
 package blog.distrib;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.*;
 import blog.common.HashMapWithPreimages;
 import blog.common.MapWithPreimages;
@@ -92,7 +95,7 @@ public class TabularInterp extends AbstractFunctionInterp {
 		}
 
 		for (int i = 1; i < params.size(); i += (arity + 1)) {
-			List args = params.subList(i, i + arity);
+			List args = new ArrayList(params.subList(i, i + arity));
 			Object value = params.get(i + arity);
 			// System.out.println(args + " -> " + value);
 
@@ -136,7 +139,22 @@ public class TabularInterp extends AbstractFunctionInterp {
 		return Collections.unmodifiableSet(values.getPreimage(value));
 	}
 
+	/**
+	 * Writes the argument-value mapping as a plain map; the preimages are
+	 * rebuilt when reading it.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(new HashMap(values));
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		values = new HashMapWithPreimages((Map) in.readObject());
+	}
+
 	private int arity;
-	private MapWithPreimages values = new HashMapWithPreimages(); // from List to
-																																// Object
+	// from List to Object
+	private transient MapWithPreimages values = new HashMapWithPreimages();
 }
@@ -172,10 +172,11 @@ public class UniformInt implements CondProbDistrib {
   public Object[] getFiniteSupport() {
     if (finiteSupport == null) {
       checkHasParams();
-      finiteSupport = new Object[upper - lower + 1];
+      Object[] support = new Object[upper - lower + 1];
       for (int i = lower; i <= upper; i++) {
-        finiteSupport[i - lower] = i;
+        support[i - lower] = i;
       }
+      finiteSupport = support;
     }
     return finiteSupport;
   }
@@ -198,5 +199,5 @@ public class UniformInt implements CondProbDistrib {
    * <code>upper</code> inclusive.
    */
   private double logProb;
-  private Object[] finiteSupport = null;
+  private volatile Object[] finiteSupport = null;
 }
@@ -35,7 +35,8 @@
 
 package blog.distrib;
 
-import blog.common.Util;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
 import blog.common.numerical.MatrixFactory;
 import blog.common.numerical.MatrixLib;
 
@@ -205,9 +206,11 @@ public class UniformVector implements CondProbDistrib {
   /** Samples from a UniformVector distribution. */
   public MatrixLib sample_value() {
     checkHasParams();
+    RandomStream rng = RandomContext.current();
     MatrixLib sample = MatrixFactory.fromArray(new double[dim][1]);
     for (int i = 0; i < dim; ++i) {
-      sample.setElement(i, 0, mins[i] + (Util.random() * (maxes[i] - mins[i])));
+      sample.setElement(i, 0,
+          mins[i] + (rng.nextDouble() * (maxes[i] - mins[i])));
     }
     return sample;
   }
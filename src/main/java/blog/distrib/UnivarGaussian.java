@@ -3,7 +3,8 @@ package blog.distrib;
 import java.util.Collection;
 import java.util.Iterator;
 
-import blog.common.Util;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
 
 /**
  * Univariate Gaussian distribution with a given <code>mean</code> and
@@ -126,8 +127,9 @@ public class UnivarGaussian implements CondProbDistrib {
    */
   public double sample_value() {
     checkHasParams();
-    double U = Util.random();
-    double V = Util.random();
+    RandomStream rng = RandomContext.current();
+    double U = rng.nextDouble();
+    double V = rng.nextDouble();
     return (mean + (sqrtVariance * Math.sin(2 * Math.PI * V) * Math
         .sqrt((-2 * Math.log(U)))));
   }
@@ -0,0 +1,198 @@
+package blog.engine;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.model.ModelEvidenceQueries;
+import blog.model.Queries;
+import blog.msg.ErrorMsg;
+import blog.parse.Parse;
+import blog.semant.Semant;
+
+/**
+ * Reads evidence and queries incrementally, for a {@link ParticleFilter} that
+ * runs online. The input is a sequence of blocks, each made of BLOG
+ * <code>obs</code> and <code>query</code> statements and terminated by an
+ * empty line. The feed ends at the end of the input, or at a line consisting
+ * of the word <code>end</code>.
+ *
+ * <p>
+ * A feed is opened from a description of its source:
+ * <dl>
+ * <dt><code>stdin</code>
+ * <dd>the standard input;
+ * <dt><code>tail:</code><i>path</i>
+ * <dd>a file that may still be growing: at the end of the file, the feed waits
+ * for more lines, so it only ends with an <code>end</code> line;
+ * <dt><code>socket:</code><i>port</i>
+ * <dd>the first connection accepted on the given port of the loopback
+ * interface.
+ * </dl>
+ */
+public class EvidenceFeed {
+
+  /**
+   * Opens the feed described by <code>source</code>, whose statements refer to
+   * the given model.
+   *
+   * @throws IllegalArgumentException
+   *           if the description is invalid
+   */
+  public static EvidenceFeed open(String source, Model model)
+      throws IOException {
+    if (source.equals("stdin")) {
+      return new EvidenceFeed(System.in, model, source);
+    }
+    if (source.startsWith("tail:")) {
+      String path = source.substring("tail:".length());
+      return new EvidenceFeed(new TailInputStream(new FileInputStream(path)),
+          model, path);
+    }
+    if (source.startsWith("socket:")) {
+      int port;
+      try {
+        port = Integer.parseInt(source.substring("socket:".length()));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid port in feed: " + source);
+      }
+      ServerSocket server = new ServerSocket(port, 1,
+          InetAddress.getByName("localhost"));
+      System.out.println("Waiting for evidence on port " + port);
+      Socket socket;
+      try {
+        socket = server.accept();
+      } finally {
+        server.close();
+      }
+      EvidenceFeed feed = new EvidenceFeed(socket.getInputStream(), model,
+          source);
+      feed.socket = socket;
+      return feed;
+    }
+    throw new IllegalArgumentException("Invalid feed: " + source);
+  }
+
+  /**
+   * Creates a feed reading blocks from the given stream.
+   */
+  public EvidenceFeed(InputStream in, Model model, String origin) {
+    this.reader = new BufferedReader(new InputStreamReader(in));
+    this.model = model;
+    this.origin = origin;
+  }
+
+  /**
+   * Reads the next block and returns its compiled evidence and queries. Blocks
+   * with errors, including declarations, which would change the model while it
+   * is in use, are reported on the standard error and skipped.
+   *
+   * @return null if the feed has ended
+   */
+  public ModelEvidenceQueries readBlock() throws IOException {
+    while (!ended) {
+      String block = readBlockText();
+      if (block.length() == 0) {
+        continue;
+      }
+      ++numBlocks;
+      String blockOrigin = origin + ", block " + numBlocks;
+      Evidence blockEvidence = new Evidence(model);
+      Queries blockQueries = new Queries(model);
+      ErrorMsg msg = new ErrorMsg(blockOrigin);
+      Parse parse = new Parse(new StringReader(block), msg, blockOrigin);
+      if (msg.OK()) {
+        Semant sem = new Semant(model, blockEvidence, blockQueries, msg);
+        sem.transEvidenceAndQueries(parse.getResult());
+      }
+      if (!msg.OK() || blockEvidence.compile() + blockQueries.compile() > 0) {
+        System.err.println("Skipping invalid block in " + blockOrigin);
+        continue;
+      }
+      return new ModelEvidenceQueries(model, blockEvidence, blockQueries);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the text of the next block, without its terminating empty line.
+   */
+  private String readBlockText() throws IOException {
+    StringBuilder block = new StringBuilder();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.trim().equals("end")) {
+        break;
+      }
+      if (line.trim().length() == 0) {
+        return block.toString();
+      }
+      block.append(line).append('\n');
+    }
+    ended = true;
+    return block.toString();
+  }
+
+  /**
+   * Closes the underlying input, unless it is the standard input.
+   */
+  public void close() throws IOException {
+    if (socket != null) {
+      socket.close();
+    } else if (!origin.equals("stdin")) {
+      reader.close();
+    }
+  }
+
+  /**
+   * Input stream that, at the end of the underlying stream, waits for more
+   * data to be appended instead of returning -1.
+   */
+  private static class TailInputStream extends InputStream {
+    TailInputStream(InputStream in) {
+      this.in = in;
+    }
+
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n;
+      while ((n = in.read(b, off, len)) <= 0 && len > 0) {
+        try {
+          Thread.sleep(POLL_INTERVAL_MS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while tailing file");
+        }
+      }
+      return n;
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+
+    private final InputStream in;
+  }
+
+  private static final long POLL_INTERVAL_MS = 100;
+
+  private final BufferedReader reader;
+  private final Model model;
+  private final String origin;
+  private Socket socket = null;
+  private boolean ended = false;
+  private int numBlocks = 0;
+}
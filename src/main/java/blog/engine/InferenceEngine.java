@@ -41,6 +41,7 @@ import java.util.Properties;
 
 import blog.common.Util;
 import blog.io.ResultWriter;
+import blog.model.ArgSpecQuery;
 import blog.model.Evidence;
 import blog.model.Model;
 import blog.model.ModelEvidenceQueries;
@@ -60,6 +61,15 @@ import blog.model.Query;
  * arguments, of types blog.Model and java.util.Properties. The properties
  * argument specifies configuration parameters for the inference engine; it may
  * be ignored if the engine has no such parameters.
+ *
+ * <p>
+ * The <code>queryStats</code> property, common to all engines, sets how the
+ * queries given to the engine accumulate their results (see
+ * {@link ArgSpecQuery.StatsMode}): <code>histogram</code> (the default) keeps
+ * the weight of every distinct value, <code>summary</code> keeps
+ * constant-memory summary statistics (moments, quantiles and a binned
+ * histogram) of real and vector values, and <code>auto</code> uses summary
+ * statistics for real-valued queries and histograms for the others.
  */
 public abstract class InferenceEngine {
   /**
@@ -73,13 +83,23 @@ public abstract class InferenceEngine {
     String className = properties.getProperty("engineClass",
         "blog.engine.SamplingEngine");
     System.out.println("Constructing inference engine of class " + className);
+    String queryStats = properties.getProperty("queryStats", "histogram");
+    ArgSpecQuery.StatsMode statsMode = ArgSpecQuery.StatsMode.HISTOGRAM;
+    try {
+      statsMode = ArgSpecQuery.StatsMode.valueOf(queryStats.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      Util.fatalErrorWithoutStack("Invalid query statistics mode: "
+          + queryStats);
+    }
     try {
       Class<?> engineClass = Class.forName(className);
       Class<?>[] paramTypes = { Model.class, Properties.class };
       Constructor<?> constructor = engineClass.getConstructor(paramTypes);
 
       Object[] args = { model, properties };
-      return (InferenceEngine) constructor.newInstance(args);
+      InferenceEngine engine = (InferenceEngine) constructor.newInstance(args);
+      engine.setStatsMode(statsMode);
+      return engine;
     } catch (Exception e) {
       Util.fatalError(e);
     }
@@ -144,6 +164,34 @@ public abstract class InferenceEngine {
   public void setQueries(Collection<? extends Query> queries) {
     this.queries.clear();
     this.queries.addAll(queries);
+    applyStatsMode(queries);
+  }
+
+  /**
+   * Returns the mode in which the queries given to this engine accumulate
+   * their results.
+   */
+  public ArgSpecQuery.StatsMode getStatsMode() {
+    return statsMode;
+  }
+
+  /**
+   * Sets the mode in which the queries given to this engine accumulate their
+   * results. It applies to the queries set after this call.
+   */
+  public void setStatsMode(ArgSpecQuery.StatsMode statsMode) {
+    this.statsMode = statsMode;
+  }
+
+  /**
+   * Sets the statistics mode of this engine on the given queries.
+   */
+  protected void applyStatsMode(Collection<? extends Query> queries) {
+    for (Query query : queries) {
+      if (query instanceof ArgSpecQuery) {
+        ((ArgSpecQuery) query).setStatsMode(statsMode);
+      }
+    }
   }
 
   /**
@@ -170,6 +218,11 @@ public abstract class InferenceEngine {
    */
   protected Queries queries = null;
 
+  /**
+   * How the queries given to this engine accumulate their results.
+   */
+  private ArgSpecQuery.StatsMode statsMode = ArgSpecQuery.StatsMode.HISTOGRAM;
+
   /**
    * to print out the results.
    */
@@ -40,6 +40,7 @@ import java.util.Iterator;
 
 import blog.BLOGUtil;
 import blog.DBLOGUtil;
+import blog.common.Metrics;
 import blog.model.Evidence;
 import blog.model.Queries;
 import blog.model.Query;
@@ -47,6 +48,7 @@ import blog.sample.Sampler;
 import blog.type.Timestep;
 import blog.world.DefaultPartialWorld;
 import blog.world.PartialWorld;
+import blog.world.PersistentPartialWorld;
 
 /**
  * A Particle for Particle Filtering. The particle is advanced as it receives
@@ -67,22 +69,58 @@ public class Particle {
    * on it, and recalculates particle logWeight according to its probability.
    */
   public void take(Evidence evidence) {
+    take(evidence, sampler);
+  }
+
+  /**
+   * Same as {@link #take(Evidence)}, but uses the given sampler instead of the
+   * one this particle was created with. This lets concurrent callers give each
+   * thread a sampler of its own.
+   */
+  public void take(Evidence evidence, Sampler sampler) {
     sampler.initialize(evidence, new Queries(null));
     sampler.setBaseWorld(curWorld);
 
     sampler.nextSample();
-    logWeight = sampler.getLatestLogWeight();
+    logWeight = priorLogWeight + sampler.getLatestLogWeight();
     curWorld = sampler.getLatestWorld();
   }
 
+  /**
+   * Makes the next evidence taken multiply the current weight of this particle,
+   * rather than replace it. Used by filters that skip resampling steps, so
+   * that weights accumulate until the particles are resampled.
+   */
+  public void carryWeight() {
+    priorLogWeight = logWeight;
+  }
+
+  /**
+   * Makes the next evidence taken replace the weight of this particle, as is
+   * done after resampling. This is the initial behavior.
+   */
+  public void dropWeight() {
+    priorLogWeight = 0;
+  }
+
   /**
    * Takes a collection of queries and answers them based on current world.
    */
   public void answer(Collection queries) {
     // System.out.println("Particle.answer");
+    ensureQueriesSupported(queries);
+    updateQueriesStats(queries);
+  }
+
+  /**
+   * Instantiates the variables needed to answer the given queries in the
+   * current world, without updating the query statistics. The first half of
+   * {@link #answer(Collection)}; only this part may run concurrently for
+   * different particles.
+   */
+  public void ensureQueriesSupported(Collection queries) {
     Collection queriesVars = BLOGUtil.getQueriesVars(queries);
     BLOGUtil.ensureDetAndSupported(queriesVars, curWorld);
-    updateQueriesStats(queries);
   }
 
   /**
@@ -107,10 +145,17 @@ public class Particle {
   }
 
   public Particle copy() {
-    DefaultPartialWorld worldCopy = (DefaultPartialWorld) ((DefaultPartialWorld) curWorld)
-        .clone();
+    long startTime = Metrics.startTime();
+    PartialWorld worldCopy;
+    if (curWorld instanceof PersistentPartialWorld) {
+      worldCopy = (PartialWorld) ((PersistentPartialWorld) curWorld).clone();
+    } else {
+      worldCopy = (DefaultPartialWorld) ((DefaultPartialWorld) curWorld)
+          .clone();
+    }
     Particle copy = new Particle(sampler, worldCopy);
     copy.logWeight = logWeight;
+    COPY_TIME.recordSince(startTime);
     return copy;
   }
 
@@ -118,10 +163,12 @@ public class Particle {
     // System.out.println("Particle.updateQueriesStats: start");
     if (getLatestLogWeight() > Sampler.NEGLIGIBLE_LOG_WEIGHT) {
       // System.out.println("Particle.updateQueriesStats: going over queries");
+      long startTime = Metrics.startTime();
       for (Iterator iter = queries.iterator(); iter.hasNext();) {
         Query q = (Query) iter.next();
         q.updateStats(getLatestWorld(), getLatestLogWeight()); // XXX
       }
+      QUERY_UPDATE_TIME.recordSince(startTime);
     }
     // else
     // System.out.println("Particle.updateQueriesStats: getLatestLogWeight was zero.");
@@ -131,7 +178,13 @@ public class Particle {
     return "(" + curWorld + "," + logWeight + ")";
   }
 
+  private static final Metrics.Recorder COPY_TIME = Metrics
+      .recorder("world.copy.ns");
+  private static final Metrics.Recorder QUERY_UPDATE_TIME = Metrics
+      .recorder("query.update.ns");
+
   public PartialWorld curWorld = null;
   protected double logWeight;
+  private double priorLogWeight = 0; // weight carried over from earlier evidence
   private Sampler sampler;
 }
@@ -35,7 +35,9 @@
 
 package blog.engine;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
@@ -43,23 +45,58 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import blog.DBLOGUtil;
+import blog.common.Metrics;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
 import blog.common.Util;
 import blog.model.Evidence;
 import blog.model.Model;
+import blog.model.ModelEvidenceQueries;
 import blog.model.Queries;
 import blog.model.Type;
 import blog.sample.Sampler;
 import blog.type.Timestep;
 import blog.world.DefaultPartialWorld;
+import blog.world.PartialWorld;
+import blog.world.PersistentPartialWorld;
 
 /**
  * A Particle Filter. It works by keeping a set of {@link Particles}, each
  * representing a partial world, weighted by the
  * evidence. It uses the following properties: <code>numParticles</code> or
- * <code>numSamples</code>: number of particles (default is <code>1000</code>).
+ * <code>numSamples</code>: number of particles (default is <code>1000</code>);
+ * <code>numThreads</code>: number of threads used to advance the particles
+ * (default is <code>1</code>); <code>worldType</code>: <code>default</code> to
+ * represent each particle's world with a {@link DefaultPartialWorld}, or
+ * <code>persistent</code> to use a {@link PersistentPartialWorld}, which
+ * makes copying particles during resampling much cheaper (default is
+ * <code>default</code>); <code>feed</code>: a source of evidence and queries
+ * to read after the ones given at construction time, while the filter runs
+ * (see {@link EvidenceFeed}; by default there is none); <code>resampling</code>:
+ * the resampling scheme, <code>multinomial</code>, <code>stratified</code>,
+ * <code>systematic</code>, <code>residual</code> or the name of a
+ * {@link Resampler} class (default is <code>stratified</code>);
+ * <code>essThreshold</code>: resample only when the effective sample size of
+ * the particles is below this fraction of their number, and otherwise let
+ * their weights accumulate (default is <code>1</code>, which resamples before
+ * every new evidence).
  * 
+ * <p>
+ * With more than one thread, the particles are split into as many contiguous
+ * blocks, and each block is always advanced by the same worker, with its own
+ * sampler and its own random stream (see {@link RandomContext}). Results are
+ * therefore reproducible for a fixed seed and a fixed number of threads. Query
+ * statistics are still accumulated sequentially, in particle order.
+ * 
+ * <p>
  * The ParticleFilter is an unusual {@link InferenceEngine} in that it takes
  * evidence and queries additional to the ones taken by
  * {@link #setEvidence(Evidence)} and {@link #setQueries(List)}. The evidence
@@ -104,6 +141,47 @@ public class ParticleFilter extends InferenceEngine {
     System.out.println("Constructing sampler of class " + samplerClassName);
     particleSampler = Sampler.make(samplerClassName, model, properties);
 
+    String numThreadsStr = properties.getProperty("numThreads", "1");
+    try {
+      numThreads = Integer.parseInt(numThreadsStr);
+    } catch (NumberFormatException e) {
+      Util.fatalErrorWithoutStack("Invalid number of threads: "
+          + numThreadsStr);
+    }
+    if (numThreads < 1) {
+      Util.fatalErrorWithoutStack("Invalid number of threads: "
+          + numThreadsStr);
+    }
+    if (numThreads > 1) {
+      System.out.println("Using " + numThreads + " threads");
+      workerSamplers = new Sampler[numThreads];
+      for (int i = 0; i < numThreads; i++) {
+        workerSamplers[i] = Sampler.make(samplerClassName, model, properties);
+      }
+      workerStreams = RandomContext.split(numThreads);
+    }
+
+    String worldType = properties.getProperty("worldType", "default");
+    if (worldType.equals("persistent")) {
+      usePersistentWorlds = true;
+    } else if (!worldType.equals("default")) {
+      Util.fatalErrorWithoutStack("Invalid world type: " + worldType);
+    }
+
+    feed = properties.getProperty("feed");
+
+    resampler = Resampler.make(properties.getProperty("resampling",
+        "stratified"));
+    String essThresholdStr = properties.getProperty("essThreshold", "1");
+    try {
+      essThreshold = Double.parseDouble(essThresholdStr);
+    } catch (NumberFormatException e) {
+      Util.fatalErrorWithoutStack("Invalid ESS threshold: " + essThresholdStr);
+    }
+    if (!(essThreshold >= 0 && essThreshold <= 1)) {
+      Util.fatalErrorWithoutStack("Invalid ESS threshold: " + essThresholdStr);
+    }
+
     String queryReportIntervalStr = properties.getProperty(
         "queryReportInterval", "10");
     try {
@@ -124,10 +202,25 @@ public class ParticleFilter extends InferenceEngine {
     }
     System.out.println("Report every: " + queryReportInterval + " timesteps");
     reset();
-    takeEvidenceAndAnswerQuery();
+    try {
+      takeEvidenceAndAnswerQuery();
+      if (feed != null) {
+        takeEvidenceAndAnswerQueryFromFeed();
+      }
+    } finally {
+      shutdownExecutor();
+    }
     System.out.println("Log likelihood of data: " + dataLogLik);
   }
 
+  /**
+   * Returns the log likelihood of the evidence taken by the last call to
+   * {@link #answerQueries()}, as estimated by the particles.
+   */
+  public double getDataLogLikelihood() {
+    return dataLogLik;
+  }
+
   private void reset() {
     System.out.println("Using " + numParticles + " particles...");
     if (evidence == null) {
@@ -164,32 +257,10 @@ public class ParticleFilter extends InferenceEngine {
     // We use a TreeSet to remove duplicates and to sort the timesteps.
     // (We can't construct a TreeSet directly because it doesn't accept nulls.)
     TreeSet<Timestep> sortedTimesteps = new TreeSet<Timestep>(nonNullTimesteps);
+    atemporalQueries = slicedQueries.get(null);
     for (Timestep timestep : sortedTimesteps) {
-      if (slicedEvidence.containsKey(timestep)) {
-        take(slicedEvidence.get(timestep));
-      }
-      if (slicedQueries.containsKey(timestep)) {
-        Queries currentQueries = slicedQueries.get(timestep);
-        for (Particle particle : particles) {
-          particle.answer(currentQueries);
-        }
-        if (currentQueries != null) {
-          writer.writeAllResults(currentQueries);
-          currentQueries.reset();
-        }
-      }
-
-      // HACK: Answer atemporal queries at every timestep:
-      if (slicedQueries.containsKey(null)) {
-        Queries currentQueries = slicedQueries.get(null);
-        for (Particle particle : particles) {
-          particle.answer(currentQueries);
-        }
-        writer.writeAllResults(currentQueries);
-        currentQueries.reset();
-      }
-
-      removePriorTimeSlice(timestep);
+      advance(timestep, slicedEvidence.get(timestep),
+          slicedQueries.get(timestep));
     }
 
     /*-
@@ -205,13 +276,113 @@ public class ParticleFilter extends InferenceEngine {
      */
   }
 
+  /**
+   * Takes the evidence and answers the queries of a timestep (either may be
+   * null), writes the results of the queries, and removes the variables of
+   * the previous timesteps from the particles.
+   */
+  private void advance(Timestep timestep, Evidence currentEvidence,
+      Queries currentQueries) {
+    if (currentEvidence != null) {
+      take(currentEvidence);
+    }
+    if (currentQueries != null) {
+      answer(currentQueries);
+      writer.writeAllResults(currentQueries);
+      currentQueries.reset();
+    }
+
+    // HACK: Answer atemporal queries at every timestep:
+    if (atemporalQueries != null) {
+      answer(atemporalQueries);
+      writer.writeAllResults(atemporalQueries);
+      atemporalQueries.reset();
+    }
+
+    removePriorTimeSlice(timestep);
+    lastTimestep = timestep;
+  }
+
+  /**
+   * Reads evidence and queries from the feed given by the <code>feed</code>
+   * property, block by block, and advances the particles through the
+   * timesteps of each block as soon as it is read.
+   */
+  private void takeEvidenceAndAnswerQueryFromFeed() {
+    EvidenceFeed evidenceFeed = null;
+    try {
+      evidenceFeed = EvidenceFeed.open(feed, model);
+      ModelEvidenceQueries block;
+      while ((block = evidenceFeed.readBlock()) != null) {
+        takeBlock(block.evidence, block.queries);
+      }
+    } catch (IOException e) {
+      Util.fatalError("Error reading evidence from " + feed + ": " + e, false);
+    } catch (IllegalArgumentException e) {
+      Util.fatalErrorWithoutStack(e.getMessage());
+    } finally {
+      if (evidenceFeed != null) {
+        try {
+          evidenceFeed.close();
+        } catch (IOException e) {
+          // nothing left to read
+        }
+      }
+    }
+  }
+
+  /**
+   * Processes a block of evidence and queries read from the feed. Atemporal
+   * evidence is taken first; atemporal queries are answered once, after the
+   * timesteps of the block. Timesteps prior to the latest one processed are
+   * skipped, since their variables have already been removed.
+   */
+  private void takeBlock(Evidence blockEvidence, Queries blockQueries) {
+    applyStatsMode(blockQueries);
+    Map<Timestep, Evidence> slicedEvidence = DBLOGUtil
+        .splitEvidenceInTime(blockEvidence);
+    Map<Timestep, Queries> slicedQueries = DBLOGUtil
+        .splitQueriesInTime(blockQueries);
+
+    if (slicedEvidence.containsKey(null)) {
+      take(slicedEvidence.get(null));
+    }
+
+    List<Timestep> nonNullTimesteps = new ArrayList<Timestep>();
+    nonNullTimesteps.addAll(slicedEvidence.keySet());
+    nonNullTimesteps.addAll(slicedQueries.keySet());
+    nonNullTimesteps.removeAll(Collections.singleton(null));
+    TreeSet<Timestep> sortedTimesteps = new TreeSet<Timestep>(nonNullTimesteps);
+    for (Timestep timestep : sortedTimesteps) {
+      if (lastTimestep != null && timestep.compareTo(lastTimestep) < 0) {
+        System.err.println("Skipping evidence and queries for past timestep "
+            + timestep);
+        continue;
+      }
+      advance(timestep, slicedEvidence.get(timestep),
+          slicedQueries.get(timestep));
+    }
+
+    if (slicedQueries.containsKey(null)) {
+      Queries currentQueries = slicedQueries.get(null);
+      answer(currentQueries);
+      writer.writeAllResults(currentQueries);
+      currentQueries.reset();
+    }
+  }
+
   /**
    * A method making a particle (by default, {@link Particle}). Useful for
    * extensions using specialized particles (don't forget to specialize
    * {@link Particle#copy()} for it to return an object of its own class).
    */
   protected Particle makeParticle(Set<? extends Type> idTypes) {
-    DefaultPartialWorld world = new DefaultPartialWorld(idTypes, false, false);
+    PartialWorld world;
+    if (usePersistentWorlds) {
+      world = new PersistentPartialWorld(idTypes, false, false);
+    } else {
+      world = new DefaultPartialWorld(idTypes, false, false);
+    }
     return new Particle(particleSampler, world);
   }
 
@@ -221,31 +392,88 @@ public class ParticleFilter extends InferenceEngine {
    * @param timestep
    *          Timestep before which the vars should be removed
    */
-  public void removePriorTimeSlice(Timestep timestep) {
-    for (Particle p : particles) {
-      p.removePriorTimeSlice(timestep);
+  public void removePriorTimeSlice(final Timestep timestep) {
+    if (numThreads == 1) {
+      for (Particle p : particles) {
+        p.removePriorTimeSlice(timestep);
+      }
+      return;
+    }
+    forEachParticle(new ParticleOperation() {
+      public void apply(Particle p, Sampler sampler) {
+        p.removePriorTimeSlice(timestep);
+      }
+    });
+  }
+
+  /**
+   * Updates the statistics of the given queries with every particle. The
+   * variables needed by the queries are instantiated concurrently when using
+   * several threads, but the statistics are always updated in particle order.
+   */
+  protected void answer(final Collection queries) {
+    if (numThreads > 1) {
+      forEachParticle(new ParticleOperation() {
+        public void apply(Particle p, Sampler sampler) {
+          p.ensureQueriesSupported(queries);
+        }
+      });
+    }
+    for (Particle particle : particles) {
+      particle.answer(queries);
     }
   }
 
   /** Takes more evidence. */
-  public void take(Evidence evidence) {
+  public void take(final Evidence evidence) {
     if (evidence.isEmpty()) {
       return;
     }
 
+    // log of the mean weight carried over from earlier evidence, which is 0
+    // when the particles have just been resampled
+    double logMeanPriorWeight = 0;
     if (needsToBeResampledBeforeFurtherSampling) {
-      resample();
+      if (shouldResample()) {
+        long startTime = Metrics.startTime();
+        resample();
+        RESAMPLE_TIME.recordSince(startTime);
+      } else {
+        double logSumPriorWeights = Double.NEGATIVE_INFINITY;
+        for (Particle p : particles) {
+          logSumPriorWeights = Util.logSum(logSumPriorWeights,
+              p.getLatestLogWeight());
+          p.carryWeight();
+        }
+        logMeanPriorWeight = logSumPriorWeights - Math.log(particles.size());
+        RESAMPLES_SKIPPED.increment();
+      }
     }
 
+    long startTime = Metrics.startTime();
+
     if (beforeTakesEvidence != null)
       beforeTakesEvidence.evaluate(evidence, this);
 
-    for (Particle p : particles) {
-      if (beforeParticleTakesEvidence != null)
-        beforeParticleTakesEvidence.evaluate(p, evidence, this);
-      p.take(evidence);
-      if (afterParticleTakesEvidence != null)
-        afterParticleTakesEvidence.evaluate(p, evidence, this);
+    if (numThreads == 1) {
+      for (Particle p : particles) {
+        if (beforeParticleTakesEvidence != null)
+          beforeParticleTakesEvidence.evaluate(p, evidence, this);
+        p.take(evidence);
+        if (afterParticleTakesEvidence != null)
+          afterParticleTakesEvidence.evaluate(p, evidence, this);
+      }
+    } else {
+      final ParticleFilter filter = this;
+      forEachParticle(new ParticleOperation() {
+        public void apply(Particle p, Sampler sampler) {
+          if (beforeParticleTakesEvidence != null)
+            beforeParticleTakesEvidence.evaluate(p, evidence, filter);
+          p.take(evidence, sampler);
+          if (afterParticleTakesEvidence != null)
+            afterParticleTakesEvidence.evaluate(p, evidence, filter);
+        }
+      });
     }
 
     double logSumWeights = Double.NEGATIVE_INFINITY;
@@ -264,7 +492,8 @@ public class ParticleFilter extends InferenceEngine {
     if (particles.size() == 0)
       throw new IllegalArgumentException("All particles have zero weight");
 
-    dataLogLik += logSumWeights;
+    dataLogLik += logSumWeights - logMeanPriorWeight;
+    TAKE_TIME.recordSince(startTime);
 
     needsToBeResampledBeforeFurtherSampling = true;
 
@@ -272,66 +501,142 @@ public class ParticleFilter extends InferenceEngine {
       afterTakesEvidence.evaluate(evidence, this);
   }
 
-  protected void resample() {
+  /**
+   * Returns true if the particles should be resampled before taking more
+   * evidence: always if the <code>essThreshold</code> property is 1, and
+   * otherwise only if their effective sample size has fallen below that
+   * fraction of the number of particles.
+   */
+  protected boolean shouldResample() {
+    if (essThreshold >= 1) {
+      return true;
+    }
+    return Resampler.effectiveSampleSize(getLogWeights()) < essThreshold
+        * particles.size();
+  }
+
+  private double[] getLogWeights() {
     double[] logWeights = new double[particles.size()];
-    boolean[] alreadySampled = new boolean[particles.size()];
-    double maxLogWeight = Double.NEGATIVE_INFINITY;
-    double sumWeights = 0;
-    double[] normalizedWeights = new double[particles.size()];
-    List<Particle> newParticles = new ArrayList<Particle>();
-
-    /*
-     * Modified on Oct. 2. 2014 by yiwu
-     * For normalization, we do not actually need to compute the sum of
-     * the log weights.
-     * Every logsum operator requires 2 expensive math function calls.
-     * Only computing the maximum will be enough.
-     */
     for (int i = 0; i < particles.size(); i++) {
       logWeights[i] = particles.get(i).getLatestLogWeight();
-      maxLogWeight = Math.max(maxLogWeight, logWeights[i]);
     }
+    return logWeights;
+  }
 
-    if (maxLogWeight == Double.NEGATIVE_INFINITY) {
-      throw new IllegalArgumentException("All particles have zero weight");
+  /**
+   * Replaces the particles by <code>numParticles</code> particles drawn
+   * according to their weights, with the scheme given by the
+   * <code>resampling</code> property. A particle drawn several times is copied
+   * for all but its first draw.
+   */
+  protected void resample() {
+    double[] cumulativeWeights = Resampler
+        .cumulativeWeights(getLogWeights());
+    int[] selected = resampler.resample(cumulativeWeights, numParticles);
+    boolean[] alreadySampled = new boolean[particles.size()];
+    List<Particle> newParticles = new ArrayList<Particle>(numParticles);
+    for (int i = 0; i < selected.length; i++) {
+      Particle particle = particles.get(selected[i]);
+      if (!alreadySampled[selected[i]]) {
+        alreadySampled[selected[i]] = true;
+      } else {
+        particle = particle.copy();
+      }
+      particle.dropWeight();
+      newParticles.add(particle);
     }
 
-    /*
-     * Modified on Oct. 2. 2014 by yiwu
-     * I replace the original super slow resample algorithm, which
-     * runs in O(n^2) time, with a new algorithm, which only needs
-     * a quick-sort and a linear scan.
+    particles = newParticles;
+  }
+
+  // CONCURRENT PARTICLE PROCESSING
+  /**
+   * An operation applied to every particle by
+   * {@link ParticleFilter#forEachParticle(ParticleOperation)}.
+   */
+  protected static interface ParticleOperation {
+    /**
+     * Applies the operation to a particle, using the given sampler, which is
+     * owned by the calling thread.
      */
-    for (int i = 0; i < particles.size(); i++) {
-      normalizedWeights[i] = Math.exp(logWeights[i] - maxLogWeight);
-      if (i > 0)
-        normalizedWeights[i] += normalizedWeights[i - 1];
-    }
+    public void apply(Particle particle, Sampler sampler);
+  }
 
-    sumWeights = normalizedWeights[particles.size() - 1];
+  /**
+   * Applies an operation to all particles, distributing contiguous blocks of
+   * particles over the worker threads. Must only be called when using more
+   * than one thread. Each block is handled by the worker sampler and random
+   * stream of the same index, so the outcome does not depend on thread
+   * scheduling.
+   */
+  protected void forEachParticle(final ParticleOperation op) {
+    final int size = particles.size();
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numThreads);
+    for (int w = 0; w < numThreads; w++) {
+      final int from = (int) ((long) w * size / numThreads);
+      final int to = (int) ((long) (w + 1) * size / numThreads);
+      final Sampler sampler = workerSamplers[w];
+      final RandomStream stream = workerStreams[w];
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          RandomStream previous = RandomContext.enter(stream);
+          try {
+            for (int i = from; i < to; i++) {
+              op.apply(particles.get(i), sampler);
+            }
+          } finally {
+            RandomContext.exit(previous);
+          }
+          return null;
+        }
+      });
+    }
 
-    /*
-     * Modified by yiwu on Oct.8.2014
-     * Use systematic resample scheme
-     */
-    double ratio = sumWeights / numParticles;
-    double basis = 0;
-    double sampleKey = 0;
-    int selection = 0;
-    for (int i = 0; i < numParticles; i++) {
-      sampleKey = basis + Util.random() * ratio;
-      basis += ratio;
-      while (normalizedWeights[selection] < sampleKey)
-        ++selection;
-      if (!alreadySampled[selection]) {
-        newParticles.add(particles.get(selection));
-        alreadySampled[selection] = true;
-      } else {
-        newParticles.add(particles.get(selection).copy());
+    try {
+      for (Future<Object> future : getExecutor().invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while advancing particles", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
       }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
     }
+  }
 
-    particles = newParticles;
+  /**
+   * Returns the pool of worker threads, creating it if needed.
+   */
+  private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "particle-worker");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Shuts down the pool of worker threads, if any, so that engines that are
+   * done answering queries do not keep idle threads. The pool is created again
+   * if the particles are advanced later.
+   */
+  protected synchronized void shutdownExecutor() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
   }
 
   // PARTICLE TAKES EVIDENCE EVENT HANDLING
@@ -380,6 +685,23 @@ public class ParticleFilter extends InferenceEngine {
   private Set<Type> idTypes; // of Type
 
   private int numParticles;
+  private static final Metrics.Recorder TAKE_TIME = Metrics
+      .recorder("pf.take.ns");
+  private static final Metrics.Recorder RESAMPLE_TIME = Metrics
+      .recorder("pf.resample.ns");
+  private static final Metrics.Counter RESAMPLES_SKIPPED = Metrics
+      .counter("pf.resample.skipped");
+
+  private int numThreads = 1;
+  private boolean usePersistentWorlds = false;
+  private String feed; // source of online evidence, or null
+  private Resampler resampler;
+  private double essThreshold; // fraction of numParticles
+  private Queries atemporalQueries; // answered at every timestep, or null
+  private Timestep lastTimestep; // latest timestep processed, or null
+  private Sampler[] workerSamplers; // one per thread, when numThreads > 1
+  private RandomStream[] workerStreams; // one per thread, when numThreads > 1
+  private ExecutorService executor; // created on first use; null if unused
   protected List<Particle> particles;
   private boolean needsToBeResampledBeforeFurtherSampling = false;
   private Sampler particleSampler;
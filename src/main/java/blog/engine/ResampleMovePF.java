@@ -77,6 +77,9 @@ public class ResampleMovePF extends InferenceEngine {
           false);
     }
 
+    resampler = Resampler.make(properties.getProperty("resampling",
+        "stratified"));
+
     dataLogLik = 0;
 
     // TODO: make this a parameter
@@ -222,62 +225,26 @@ public class ResampleMovePF extends InferenceEngine {
     proposer.add(evidence);
   }
 
+  /**
+   * Replaces the particles by <code>numParticles</code> particles drawn
+   * according to their weights, with the scheme given by the
+   * <code>resampling</code> property (see {@link Resampler}).
+   */
   protected void resample() {
     double[] logWeights = new double[particles.size()];
-    boolean[] alreadySampled = new boolean[particles.size()];
-    double maxLogWeight = Double.NEGATIVE_INFINITY;
-    double sumWeights = 0;
-    double[] normalizedWeights = new double[particles.size()];
-    List<Particle> newParticles = new ArrayList<Particle>();
-
-    /*
-     * Modified on Oct. 2. 2014 by yiwu
-     * For normalization, we do not actually need to compute the sum of
-     * the log weights.
-     * Every logsum operator requires 2 expensive math function calls.
-     * Only computing the maximum will be enough.
-     */
     for (int i = 0; i < particles.size(); i++) {
       logWeights[i] = particles.get(i).getLatestLogWeight();
-      maxLogWeight = Math.max(maxLogWeight, logWeights[i]);
     }
-
-    if (maxLogWeight == Double.NEGATIVE_INFINITY) {
-      throw new IllegalArgumentException("All particles have zero weight");
-    }
-
-    /*
-     * Modified on Oct. 2. 2014 by yiwu
-     * I replace the original super slow resample algorithm, which
-     * runs in O(n^2) time, with a new algorithm, which only needs
-     * a quick-sort and a linear scan.
-     */
-    for (int i = 0; i < particles.size(); i++) {
-      normalizedWeights[i] = Math.exp(logWeights[i] - maxLogWeight);
-      if (i > 0)
-        normalizedWeights[i] += normalizedWeights[i - 1];
-    }
-
-    sumWeights = normalizedWeights[particles.size() - 1];
-
-    /*
-     * Modified by yiwu on Oct.8.2014
-     * Use systematic resample scheme
-     */
-    double ratio = sumWeights / numParticles;
-    double basis = 0;
-    double sampleKey = 0;
-    int selection = 0;
-    for (int i = 0; i < numParticles; i++) {
-      sampleKey = basis + Util.random() * ratio;
-      basis += ratio;
-      while (normalizedWeights[selection] < sampleKey)
-        ++selection;
-      if (!alreadySampled[selection]) {
-        newParticles.add(particles.get(selection));
-        alreadySampled[selection] = true;
+    int[] selected = resampler.resample(
+        Resampler.cumulativeWeights(logWeights), numParticles);
+    boolean[] alreadySampled = new boolean[particles.size()];
+    List<Particle> newParticles = new ArrayList<Particle>(numParticles);
+    for (int i = 0; i < selected.length; i++) {
+      if (!alreadySampled[selected[i]]) {
+        newParticles.add(particles.get(selected[i]));
+        alreadySampled[selected[i]] = true;
       } else {
-        newParticles.add(particles.get(selection).copy());
+        newParticles.add(particles.get(selected[i]).copy());
       }
     }
 
@@ -306,6 +273,7 @@ public class ResampleMovePF extends InferenceEngine {
   protected List<Particle> particles;
   private boolean needsToBeResampledBeforeFurtherSampling = false;
   private Sampler particleSampler;
+  private Resampler resampler;
   private int queryReportInterval;
   private double dataLogLik; // log likelihood of the data
 }
@@ -0,0 +1,222 @@
+package blog.engine;
+
+import blog.common.Util;
+
+/**
+ * A resampling scheme for particle filters: draws the indices of the particles
+ * that survive a resampling step, given their weights. All schemes take the
+ * cumulative sums of the (unnormalized) weights, return the drawn indices in
+ * nondecreasing order, and run in time linear in the number of particles.
+ *
+ * <p>
+ * {@link #make(String)} accepts the names of the built-in schemes:
+ * <dl>
+ * <dt>multinomial
+ * <dd>Draws every index independently, with probability proportional to its
+ * weight.
+ * <dt>stratified
+ * <dd>Splits the total weight into equal strata and draws one index uniformly
+ * within each stratum.
+ * <dt>systematic
+ * <dd>Like stratified, but with the same offset in every stratum, so only one
+ * random number is drawn.
+ * <dt>residual
+ * <dd>Keeps floor(<i>n</i> <i>w<sub>i</sub></i>) copies of each index
+ * <i>i</i>, for normalized weights <i>w<sub>i</sub></i>, and draws the rest
+ * multinomially from the remaining weight.
+ * </dl>
+ * or the name of a subclass of Resampler with a public default constructor.
+ */
+public abstract class Resampler {
+
+  /**
+   * Returns the resampler with the given name, which is either one of the
+   * built-in schemes or the name of a Resampler class.
+   */
+  public static Resampler make(String name) {
+    if (name.equals("multinomial")) {
+      return new Multinomial();
+    } else if (name.equals("stratified")) {
+      return new Stratified();
+    } else if (name.equals("systematic")) {
+      return new Systematic();
+    } else if (name.equals("residual")) {
+      return new Residual();
+    }
+    return (Resampler) Util.makeInstance_NE(name, new Class[0], new Object[0]);
+  }
+
+  /**
+   * Draws <code>n</code> indices into the given array of cumulative weights,
+   * whose last element is the total weight and must be positive. Index
+   * <code>i</code> is drawn with probability proportional to its weight,
+   * <code>cumulativeWeights[i] - cumulativeWeights[i - 1]</code>.
+   *
+   * @return the drawn indices, in nondecreasing order
+   */
+  public abstract int[] resample(double[] cumulativeWeights, int n);
+
+  /**
+   * Returns the cumulative sums of the weights whose logarithms are given,
+   * scaled so that the largest weight is 1.
+   *
+   * @throws IllegalArgumentException
+   *           if all the weights are zero
+   */
+  public static double[] cumulativeWeights(double[] logWeights) {
+    double maxLogWeight = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < logWeights.length; i++) {
+      maxLogWeight = Math.max(maxLogWeight, logWeights[i]);
+    }
+    if (maxLogWeight == Double.NEGATIVE_INFINITY) {
+      throw new IllegalArgumentException("All particles have zero weight");
+    }
+    double[] cumulative = new double[logWeights.length];
+    for (int i = 0; i < logWeights.length; i++) {
+      cumulative[i] = Math.exp(logWeights[i] - maxLogWeight);
+      if (i > 0) {
+        cumulative[i] += cumulative[i - 1];
+      }
+    }
+    return cumulative;
+  }
+
+  /**
+   * Returns the effective sample size of the weights whose logarithms are
+   * given: the square of their sum divided by the sum of their squares. It
+   * ranges from 1, when a single weight is nonzero, to the number of weights,
+   * when all are equal.
+   */
+  public static double effectiveSampleSize(double[] logWeights) {
+    double maxLogWeight = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < logWeights.length; i++) {
+      maxLogWeight = Math.max(maxLogWeight, logWeights[i]);
+    }
+    if (maxLogWeight == Double.NEGATIVE_INFINITY) {
+      return 0;
+    }
+    double sum = 0;
+    double sumOfSquares = 0;
+    for (int i = 0; i < logWeights.length; i++) {
+      double w = Math.exp(logWeights[i] - maxLogWeight);
+      sum += w;
+      sumOfSquares += w * w;
+    }
+    return sum * sum / sumOfSquares;
+  }
+
+  /**
+   * Returns the indices selected by the given sorted keys, which must lie in
+   * [0, total weight]: index <code>i</code> for a key in
+   * (<code>cumulativeWeights[i - 1]</code>, <code>cumulativeWeights[i]</code>].
+   */
+  protected static int[] select(double[] cumulativeWeights, double[] keys) {
+    int[] selected = new int[keys.length];
+    int last = cumulativeWeights.length - 1;
+    int selection = 0;
+    for (int i = 0; i < keys.length; i++) {
+      while (selection < last && cumulativeWeights[selection] < keys[i]) {
+        ++selection;
+      }
+      selected[i] = selection;
+    }
+    return selected;
+  }
+
+  /**
+   * Returns <code>n</code> sorted independent uniform draws from [0,
+   * <code>scale</code>), generated from normalized exponential spacings
+   * rather than by sorting.
+   */
+  protected static double[] sortedUniforms(int n, double scale) {
+    double[] keys = new double[n];
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      sum -= Math.log(1 - Util.random());
+      keys[i] = sum;
+    }
+    sum -= Math.log(1 - Util.random());
+    for (int i = 0; i < n; i++) {
+      keys[i] = keys[i] / sum * scale;
+    }
+    return keys;
+  }
+
+  private static class Multinomial extends Resampler {
+    public int[] resample(double[] cumulativeWeights, int n) {
+      double total = cumulativeWeights[cumulativeWeights.length - 1];
+      return select(cumulativeWeights, sortedUniforms(n, total));
+    }
+  }
+
+  private static class Stratified extends Resampler {
+    public int[] resample(double[] cumulativeWeights, int n) {
+      double ratio = cumulativeWeights[cumulativeWeights.length - 1] / n;
+      double[] keys = new double[n];
+      double basis = 0;
+      for (int i = 0; i < n; i++) {
+        keys[i] = basis + Util.random() * ratio;
+        basis += ratio;
+      }
+      return select(cumulativeWeights, keys);
+    }
+  }
+
+  private static class Systematic extends Resampler {
+    public int[] resample(double[] cumulativeWeights, int n) {
+      double ratio = cumulativeWeights[cumulativeWeights.length - 1] / n;
+      double offset = Util.random() * ratio;
+      double[] keys = new double[n];
+      for (int i = 0; i < n; i++) {
+        keys[i] = offset + i * ratio;
+      }
+      return select(cumulativeWeights, keys);
+    }
+  }
+
+  private static class Residual extends Resampler {
+    public int[] resample(double[] cumulativeWeights, int n) {
+      int size = cumulativeWeights.length;
+      double total = cumulativeWeights[size - 1];
+      int[] counts = new int[size];
+      double[] residuals = new double[size];
+      int numDeterministic = 0;
+      for (int i = 0; i < size; i++) {
+        double weight = cumulativeWeights[i]
+            - ((i > 0) ? cumulativeWeights[i - 1] : 0);
+        double expected = n * weight / total;
+        counts[i] = (int) Math.floor(expected);
+        numDeterministic += counts[i];
+        residuals[i] = expected - counts[i];
+        if (i > 0) {
+          residuals[i] += residuals[i - 1];
+        }
+      }
+      int numRandom = n - numDeterministic;
+      if (numRandom > 0 && residuals[size - 1] > 0) {
+        int[] drawn = select(residuals,
+            sortedUniforms(numRandom, residuals[size - 1]));
+        for (int i = 0; i < drawn.length; i++) {
+          counts[drawn[i]]++;
+        }
+      } else if (numRandom > 0) {
+        // rounding left no residual weight; top up the heaviest index
+        int heaviest = 0;
+        for (int i = 0; i < size; i++) {
+          if (counts[i] > counts[heaviest]) {
+            heaviest = i;
+          }
+        }
+        counts[heaviest] += numRandom;
+      }
+      int[] selected = new int[n];
+      int k = 0;
+      for (int i = 0; i < size && k < n; i++) {
+        for (int c = 0; c < counts[i] && k < n; c++) {
+          selected[k++] = i;
+        }
+      }
+      return selected;
+    }
+  }
+}
@@ -36,13 +36,27 @@
 package blog.engine;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import blog.BLOGUtil;
+import blog.common.Metrics;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
 import blog.common.Util;
 import blog.io.TableWriter;
+import blog.model.ArgSpecQuery;
 import blog.model.Model;
+import blog.model.Queries;
 import blog.model.Query;
+import blog.sample.MHSampler;
 import blog.sample.Sampler;
 import blog.world.PartialWorld;
 
@@ -74,6 +88,16 @@ import blog.world.PartialWorld;
  * <dd>Number of samples between progress reports (-1 for no report). A progress
  * report just involves printing how many samples have been done and how long
  * the sampler has been running. Default is 500.
+ * 
+ * <dt>numChains
+ * <dd>Number of independent samplers (chains) to run concurrently, each on its
+ * own thread, with its own worlds and its own random stream. The
+ * <code>numSamples</code> samples are divided among the chains, each of which
+ * discards its own <code>burnIn</code> first samples. The query results of the
+ * chains are merged once they are all done; intermediate query reports are
+ * not printed. When the sampler is an {@link MHSampler}, the acceptance rate
+ * of each chain and the Gelman-Rubin statistic (R-hat) of each query with
+ * numeric or Boolean values are printed as well. Default is 1.
  * </dl>
  * The property list is also passed to the sampler's constructor.
  */
@@ -85,20 +109,11 @@ public class SamplingEngine extends InferenceEngine {
   public SamplingEngine(Model model, Properties properties) {
     super(model);
 
-    String samplerClassName = properties.getProperty("samplerClass",
+    this.properties = properties;
+    samplerClassName = properties.getProperty("samplerClass",
         "blog.sample.LWSampler");
     System.out.println("Constructing sampler of class " + samplerClassName);
-
-    try {
-      Class<?> samplerClass = Class.forName(samplerClassName);
-      Class<?>[] paramTypes = { Model.class, Properties.class };
-      Constructor<?> constructor = samplerClass.getConstructor(paramTypes);
-
-      Object[] args = { model, properties };
-      sampler = (Sampler) constructor.newInstance(args);
-    } catch (Exception e) {
-      Util.fatalError(e);
-    }
+    sampler = makeSampler();
 
     String numSamplesStr = properties.getProperty("numSamples", "50000");
     try {
@@ -122,6 +137,32 @@ public class SamplingEngine extends InferenceEngine {
     } catch (NumberFormatException e) {
       Util.fatalError("Invalid number of burn-in samples: " + burnInStr, false);
     }
+
+    String numChainsStr = properties.getProperty("numChains", "1");
+    try {
+      numChains = Integer.parseInt(numChainsStr);
+    } catch (NumberFormatException e) {
+      Util.fatalError("Invalid number of chains: " + numChainsStr, false);
+    }
+    if (numChains < 1) {
+      Util.fatalError("Invalid number of chains: " + numChainsStr, false);
+    }
+  }
+
+  /** Constructs a new sampler of the class given at construction time. */
+  private Sampler makeSampler() {
+    Sampler newSampler = null;
+    try {
+      Class<?> samplerClass = Class.forName(samplerClassName);
+      Class<?>[] paramTypes = { Model.class, Properties.class };
+      Constructor<?> constructor = samplerClass.getConstructor(paramTypes);
+
+      Object[] args = { model, properties };
+      newSampler = (Sampler) constructor.newInstance(args);
+    } catch (Exception e) {
+      Util.fatalError(e);
+    }
+    return newSampler;
   }
 
   public SamplingEngine(Model model) {
@@ -141,6 +182,11 @@ public class SamplingEngine extends InferenceEngine {
   }
 
   public void answerQueries() {
+    if (numChains > 1) {
+      answerQueriesWithChains();
+      return;
+    }
+
     boolean printed = false;
     sampler.initialize(evidence, queries);
 
@@ -164,18 +210,7 @@ public class SamplingEngine extends InferenceEngine {
       if (i >= numBurnIn) {
         if (logWeight > Sampler.NEGLIGIBLE_LOG_WEIGHT) {
           // Update statistics to reflect this sample.
-          for (Query query : queries) {
-            // Make sure the new world supports the query variables
-            BLOGUtil.ensureDetAndSupported(query.getVariables(),
-            // this is not part of the sampler's
-            // sampling, but sampling done on
-            // top of it. Since this sampling is
-            // done according to the model's
-            // distribution, it still converges
-            // to it.
-                sampler.getLatestWorld());
-            query.updateStats(sampler.getLatestWorld(), logWeight);
-          }
+          updateStats(queries, sampler.getLatestWorld(), logWeight);
         }
       }
 
@@ -198,8 +233,249 @@ public class SamplingEngine extends InferenceEngine {
     writer.writeAllResults(queries);
   }
 
+  /** Updates the statistics of the given queries with a sampled world. */
+  private static void updateStats(Queries queries, PartialWorld world,
+      double logWeight) {
+    long startTime = Metrics.startTime();
+    for (Query query : queries) {
+      // Make sure the new world supports the query variables
+      BLOGUtil.ensureDetAndSupported(query.getVariables(),
+      // this is not part of the sampler's
+      // sampling, but sampling done on
+      // top of it. Since this sampling is
+      // done according to the model's
+      // distribution, it still converges
+      // to it.
+          world);
+      query.updateStats(world, logWeight);
+    }
+    QUERY_UPDATE_TIME.recordSince(startTime);
+  }
+
+  private static final Metrics.Recorder QUERY_UPDATE_TIME = Metrics
+      .recorder("query.update.ns");
+
+  /**
+   * Runs <code>numChains</code> chains concurrently and merges their query
+   * statistics into the engine's queries.
+   */
+  private void answerQueriesWithChains() {
+    System.out.println("Evidence: " + evidence);
+    System.out.println("Query: " + queries);
+    System.out.println("Running " + numChains + " chains for " + numSamples
+        + " samples in total...");
+    if (numBurnIn != 0) {
+      System.out.println("(Burn-in samples per chain: " + numBurnIn + ")");
+    }
+
+    // Split the streams in chain order so that results are reproducible.
+    RandomStream[] streams = RandomContext.split(numChains);
+    List<Chain> chains = new ArrayList<Chain>(numChains);
+    for (int k = 0; k < numChains; k++) {
+      int chainSamples = numSamples / numChains
+          + ((k < numSamples % numChains) ? 1 : 0);
+      Sampler chainSampler = (k == 0) ? sampler : makeSampler();
+      chains.add(new Chain(chainSampler, copyQueries(), streams[k],
+          chainSamples));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numChains);
+    try {
+      for (Future<Object> future : executor.invokeAll(chains)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while running chains", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      executor.shutdown();
+    }
+
+    for (Chain chain : chains) {
+      for (int i = 0; i < queries.size(); i++) {
+        ((ArgSpecQuery) queries.get(i)).addStats((ArgSpecQuery) chain.queries
+            .get(i));
+      }
+    }
+
+    for (int k = 0; k < numChains; k++) {
+      System.out.println("======== Chain " + k + " ========");
+      chains.get(k).sampler.printStats();
+    }
+    if (sampler instanceof MHSampler) {
+      printDiagnostics(chains);
+    }
+    writer.writeAllResults(queries);
+  }
+
+  /**
+   * Returns fresh copies of the engine's queries, to accumulate the
+   * statistics of a single chain.
+   */
+  private Queries copyQueries() {
+    Queries copies = new Queries(queries.model);
+    for (Query query : queries) {
+      if (!(query instanceof ArgSpecQuery)) {
+        Util.fatalError("Cannot run several chains for query " + query, false);
+      }
+      copies.add(new ArgSpecQuery((ArgSpecQuery) query));
+    }
+    return copies;
+  }
+
+  private void printDiagnostics(List<Chain> chains) {
+    System.out.println("======== Convergence Diagnostics ========");
+    for (int k = 0; k < chains.size(); k++) {
+      System.out.println("Acceptance rate of chain " + k + ": "
+          + ((MHSampler) chains.get(k).sampler).getAcceptanceRate());
+    }
+
+    double[] means = new double[chains.size()];
+    double[] variances = new double[chains.size()];
+    for (int i = 0; i < queries.size(); i++) {
+      int n = Integer.MAX_VALUE;
+      boolean scalar = true;
+      for (int k = 0; k < chains.size(); k++) {
+        Chain chain = chains.get(k);
+        scalar = scalar && chain.scalar[i];
+        n = Math.min(n, chain.count);
+        means[k] = chain.means[i];
+        variances[k] = (chain.count > 1) ? chain.sumSqDiffs[i]
+            / (chain.count - 1) : Double.NaN;
+      }
+      if (scalar) {
+        System.out.println("R-hat for " + queries.get(i) + ": "
+            + computeRHat(means, variances, n));
+      }
+    }
+  }
+
+  /**
+   * Returns the Gelman-Rubin potential scale reduction factor (R-hat) of a
+   * scalar quantity, given its mean and its sample variance in each of several
+   * chains of <code>n</code> samples. Values close to 1 indicate that the
+   * chains have mixed. Returns NaN if there are fewer than two chains or two
+   * samples per chain; returns 1 if all samples are identical.
+   */
+  public static double computeRHat(double[] means, double[] variances, int n) {
+    int m = means.length;
+    if (m < 2 || n < 2) {
+      return Double.NaN;
+    }
+    double grandMean = 0;
+    double withinVariance = 0;
+    for (int k = 0; k < m; k++) {
+      grandMean += means[k];
+      withinVariance += variances[k];
+    }
+    grandMean /= m;
+    withinVariance /= m;
+
+    // B / n, the variance of the chain means
+    double betweenVarianceOverN = 0;
+    for (int k = 0; k < m; k++) {
+      betweenVarianceOverN += (means[k] - grandMean) * (means[k] - grandMean);
+    }
+    betweenVarianceOverN /= (m - 1);
+
+    if (withinVariance == 0) {
+      return (betweenVarianceOverN == 0) ? 1 : Double.POSITIVE_INFINITY;
+    }
+    double pooledVariance = (n - 1) / (double) n * withinVariance
+        + betweenVarianceOverN;
+    return Math.sqrt(pooledVariance / withinVariance);
+  }
+
+  /**
+   * One of several independent samplers run by
+   * {@link SamplingEngine#answerQueriesWithChains()}. Accumulates query
+   * statistics in its own copies of the queries, and, for MH samplers, the
+   * running mean and sum of squared deviations (Welford's method) of the
+   * value of each query, for computing R-hat.
+   */
+  private class Chain implements Callable<Object> {
+    Chain(Sampler sampler, Queries queries, RandomStream stream, int numSamples) {
+      this.sampler = sampler;
+      this.queries = queries;
+      this.stream = stream;
+      this.numSamples = numSamples;
+      trackValues = sampler instanceof MHSampler;
+      means = new double[queries.size()];
+      sumSqDiffs = new double[queries.size()];
+      scalar = new boolean[queries.size()];
+      Arrays.fill(scalar, true);
+    }
+
+    public Object call() {
+      RandomStream previous = RandomContext.enter(stream);
+      try {
+        sampler.initialize(evidence, queries);
+        for (int i = 0; i < numSamples; ++i) {
+          sampler.nextSample();
+          double logWeight = sampler.getLatestLogWeight();
+          if (i >= numBurnIn && logWeight > Sampler.NEGLIGIBLE_LOG_WEIGHT) {
+            PartialWorld world = sampler.getLatestWorld();
+            updateStats(queries, world, logWeight);
+            if (trackValues) {
+              trackValues(world);
+            }
+          }
+        }
+      } finally {
+        RandomContext.exit(previous);
+      }
+      return null;
+    }
+
+    private void trackValues(PartialWorld world) {
+      ++count;
+      for (int i = 0; i < queries.size(); i++) {
+        if (!scalar[i]) {
+          continue;
+        }
+        Object value = ((ArgSpecQuery) queries.get(i)).getArgSpec().evaluate(
+            world);
+        double x;
+        if (value instanceof Number) {
+          x = ((Number) value).doubleValue();
+        } else if (value instanceof Boolean) {
+          x = ((Boolean) value).booleanValue() ? 1 : 0;
+        } else {
+          scalar[i] = false;
+          continue;
+        }
+        double delta = x - means[i];
+        means[i] += delta / count;
+        sumSqDiffs[i] += delta * (x - means[i]);
+      }
+    }
+
+    final Sampler sampler;
+    final Queries queries;
+    private final RandomStream stream;
+    private final int numSamples;
+    private final boolean trackValues;
+
+    int count = 0;
+    final double[] means;
+    final double[] sumSqDiffs;
+    final boolean[] scalar;
+  }
+
+  private Properties properties;
+  private String samplerClassName;
   private Sampler sampler;
   private int numSamples;
   private int queryReportInterval;
   private int numBurnIn;
+  private int numChains = 1;
 }
@@ -0,0 +1,142 @@
+package blog.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.model.ModelEvidenceQueries;
+import blog.model.Queries;
+
+/**
+ * Reads and writes snapshots of compiled models. A snapshot holds a model,
+ * its evidence and its queries after parsing, semantic checks and compilation,
+ * so loading it skips all three.
+ *
+ * <p>
+ * A snapshot starts with a magic string and a format version, followed by the
+ * Java serialization of the model, evidence and queries. The serialized
+ * classes do not declare a <code>serialVersionUID</code>, so a snapshot
+ * written by a different build of BLOG is rejected rather than loaded with
+ * the wrong layout; it must then be saved again from the source files.
+ * Built-in types and functions are written by name, and resolved to those of
+ * the running JVM when loading.
+ */
+public class CompiledModelFile {
+
+  /**
+   * Returns true if the file at the given path starts with the magic string
+   * of a snapshot. Returns false if it does not, or if it cannot be read.
+   */
+  public static boolean isCompiledModel(String path) {
+    byte[] header = new byte[MAGIC.length()];
+    InputStream in = null;
+    try {
+      in = new FileInputStream(path);
+      int read = 0;
+      while (read < header.length) {
+        int n = in.read(header, read, header.length - read);
+        if (n < 0) {
+          return false;
+        }
+        read += n;
+      }
+      return MAGIC.equals(new String(header, "US-ASCII"));
+    } catch (IOException e) {
+      return false;
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
+  /**
+   * Writes a snapshot of the given compiled model, evidence and queries to the
+   * file at the given path.
+   */
+  public static void save(ModelEvidenceQueries meq, String path)
+      throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(path),
+        BUFFER_SIZE);
+    try {
+      DataOutputStream header = new DataOutputStream(out);
+      header.writeBytes(MAGIC);
+      header.writeInt(FORMAT_VERSION);
+      ObjectOutputStream objects = new ObjectOutputStream(out);
+      objects.writeObject(meq.model);
+      objects.writeObject(meq.evidence);
+      objects.writeObject(meq.queries);
+      objects.flush();
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads the snapshot at the given path.
+   *
+   * @throws IOException
+   *           if the file cannot be read, is not a snapshot, or was written by
+   *           an incompatible build
+   */
+  public static ModelEvidenceQueries load(String path) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(path),
+        BUFFER_SIZE);
+    try {
+      DataInputStream header = new DataInputStream(in);
+      byte[] magic = new byte[MAGIC.length()];
+      header.readFully(magic);
+      if (!MAGIC.equals(new String(magic, "US-ASCII"))) {
+        throw new IOException(path + " is not a compiled BLOG model");
+      }
+      int version = header.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException(path + " has format version " + version
+            + ", expected " + FORMAT_VERSION);
+      }
+      ObjectInputStream objects = new ObjectInputStream(in);
+      Model model = (Model) objects.readObject();
+      Evidence evidence = (Evidence) objects.readObject();
+      Queries queries = (Queries) objects.readObject();
+      return new ModelEvidenceQueries(model, evidence, queries);
+    } catch (ClassNotFoundException e) {
+      throw incompatible(path, e);
+    } catch (java.io.InvalidClassException e) {
+      throw incompatible(path, e);
+    } catch (ClassCastException e) {
+      throw incompatible(path, e);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static IOException incompatible(String path, Exception cause) {
+    IOException e = new IOException(path
+        + " was compiled by a different version of BLOG; "
+        + "save it again from the model files");
+    e.initCause(cause);
+    return e;
+  }
+
+  private static void closeQuietly(InputStream in) {
+    if (in != null) {
+      try {
+        in.close();
+      } catch (IOException e) {
+        // nothing to do
+      }
+    }
+  }
+
+  private static final String MAGIC = "BLOGCOMPILED";
+  private static final int FORMAT_VERSION = 1;
+  private static final int BUFFER_SIZE = 1 << 16;
+}
@@ -4,8 +4,13 @@
 package blog.io;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import blog.common.BinnedHistogram;
 import blog.common.Histogram;
+import blog.common.SummaryStats;
+import blog.common.WeightedMoments;
 import blog.model.ArgSpecQuery;
 import blog.model.Query;
 
@@ -33,6 +38,25 @@ import com.google.gson.Gson;
  * ]
  * </code>
  * 
+ * For queries that use summary statistics, the list of pairs is replaced by an
+ * object with the effective sample size ("ess"), the log of the total weight
+ * ("logWeight"), the probability of values that were not summarized
+ * ("undefinedProb"), the shape of matrix values ("rows" and "cols"), and a list
+ * with, for each component of the values, its "mean", "variance", "min",
+ * "max", "quantiles" as (level, value) pairs, and "histogram" as (lower bound,
+ * upper bound, probability) triples for the nonempty bins:
+ * 
+ * <code>
+ * [
+ *     ["x", {"ess": 1000.0, "logWeight": 6.9, "undefinedProb": 0.0,
+ *         "components": [
+ *             {"mean": 0.01, "variance": 0.98, "min": -3.1, "max": 3.3,
+ *              "quantiles": [[0.025, -1.9], ...],
+ *              "histogram": [[-3.25, -3.0, 0.001], ...]}
+ *         ]}]
+ * ]
+ * </code>
+ * 
  * @author cberzan
  * @since Jun 9, 2014
  *
@@ -49,6 +73,14 @@ public class JsonWriter extends ResultWriter {
 
   @Override
   public void writeResult(Query query) {
+    ArgSpecQuery q = (ArgSpecQuery) query;
+    if (q.usesSummaryStats()) {
+      ArrayList<Object> results = new ArrayList<Object>();
+      results.add(q.getArgSpec().toString());
+      results.add(summaryToMap(q.getSummaryStats()));
+      allResults.add(results);
+      return;
+    }
     Histogram histogram = query.getHistogram();
     ArrayList<Object> histogramEntries = new ArrayList<Object>();
     for (Object entry_obj : histogram.entrySet()) {
@@ -59,11 +91,55 @@ public class JsonWriter extends ResultWriter {
       histogramEntries.add(entryPair);
     }
     ArrayList<Object> results = new ArrayList<Object>();
-    results.add(((ArgSpecQuery) query).getArgSpec().toString());
+    results.add(q.getArgSpec().toString());
     results.add(histogramEntries);
     allResults.add(results);
   }
 
+  private static Map<String, Object> summaryToMap(SummaryStats stats) {
+    Map<String, Object> result = new LinkedHashMap<String, Object>();
+    result.put("ess", stats.getEffectiveSampleSize());
+    if (stats.getEffectiveSampleSize() > 0) {
+      result.put("logWeight", stats.getTotalLogWeight());
+    }
+    result.put("undefinedProb", stats.getUndefinedProb());
+    if (stats.isMatrix()) {
+      result.put("rows", stats.getNumRows());
+      result.put("cols", stats.getNumCols());
+    }
+    ArrayList<Object> components = new ArrayList<Object>();
+    for (int c = 0; c < stats.getNumComponents(); ++c) {
+      Map<String, Object> component = new LinkedHashMap<String, Object>();
+      WeightedMoments moments = stats.getMoments(c);
+      component.put("mean", moments.getMean());
+      component.put("variance", moments.getVariance());
+      component.put("min", moments.getMin());
+      component.put("max", moments.getMax());
+      ArrayList<Object> quantiles = new ArrayList<Object>();
+      for (int i = 0; i < QUANTILE_LEVELS.length; ++i) {
+        ArrayList<Object> pair = new ArrayList<Object>();
+        pair.add(QUANTILE_LEVELS[i]);
+        pair.add(stats.getQuantiles(c).quantile(QUANTILE_LEVELS[i]));
+        quantiles.add(pair);
+      }
+      component.put("quantiles", quantiles);
+      ArrayList<Object> bins = new ArrayList<Object>();
+      BinnedHistogram histogram = stats.getHistogram(c);
+      for (int i = histogram.firstNonEmptyBin(); i <= histogram
+          .lastNonEmptyBin(); ++i) {
+        ArrayList<Object> bin = new ArrayList<Object>();
+        bin.add(histogram.getLowerBound(i));
+        bin.add(histogram.getUpperBound(i));
+        bin.add(histogram.getProb(i));
+        bins.add(bin);
+      }
+      component.put("histogram", bins);
+      components.add(component);
+    }
+    result.put("components", components);
+    return result;
+  }
+
   @Override
   public void flush() {
     if (!allResults.isEmpty()) {
@@ -72,6 +148,7 @@ public class JsonWriter extends ResultWriter {
       allResults.clear();
       out.println(json);
     }
+    super.flush();
   }
 
   protected ArrayList<Object> allResults;
@@ -0,0 +1,179 @@
+package blog.io;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import blog.common.Metrics;
+import blog.common.Util;
+
+import com.google.gson.Gson;
+
+/**
+ * Exports the {@link Metrics} of an inference run to a file, as one JSON
+ * object per line, written periodically and once more when the run ends. Each
+ * line has the wall-clock time in milliseconds ("time"), the seconds elapsed
+ * since the writer was started ("elapsed"), the value of every counter
+ * ("counters"), the count, sum, mean, min, max and estimated median, 90th and
+ * 99th percentiles of every recorder ("recorders"; latencies are in
+ * nanoseconds), and rates derived from them ("rates": samples per second, and
+ * the fraction of accepted Metropolis-Hastings proposals).
+ *
+ * <p>
+ * {@link #open(Properties)} looks for the following properties:
+ * <dl>
+ * <dt>metricsFile
+ * <dd>File the metrics are written to. If not set, metrics are disabled.
+ *
+ * <dt>metricsInterval
+ * <dd>Number of seconds between two lines. Default is 10.
+ * </dl>
+ */
+public class MetricsWriter {
+
+  /**
+   * Enables metrics and starts a writer as set by the <code>metricsFile</code>
+   * and <code>metricsInterval</code> properties. Returns null, and leaves
+   * metrics disabled, if <code>metricsFile</code> is not set.
+   */
+  public static MetricsWriter open(Properties properties) {
+    String path = properties.getProperty("metricsFile");
+    if (path == null) {
+      return null;
+    }
+    String intervalStr = properties.getProperty("metricsInterval", "10");
+    double interval = 0;
+    try {
+      interval = Double.parseDouble(intervalStr);
+    } catch (NumberFormatException e) {
+      Util.fatalErrorWithoutStack("Invalid metrics interval: " + intervalStr);
+    }
+    if (!(interval > 0)) {
+      Util.fatalErrorWithoutStack("Invalid metrics interval: " + intervalStr);
+    }
+    PrintStream out = null;
+    try {
+      out = new PrintStream(new FileOutputStream(path), true);
+    } catch (FileNotFoundException e) {
+      Util.fatalErrorWithoutStack("Cannot open metrics file: " + path);
+    }
+    MetricsWriter writer = new MetricsWriter(out);
+    writer.start((long) (interval * 1000));
+    return writer;
+  }
+
+  /**
+   * Creates a writer of metrics to the given stream.
+   */
+  public MetricsWriter(PrintStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Resets and enables the metrics, and writes them every
+   * <code>intervalMillis</code> milliseconds until {@link #close()} is called.
+   */
+  public void start(long intervalMillis) {
+    Metrics.reset();
+    Metrics.setEnabled(true);
+    startTime = System.currentTimeMillis();
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "blog-metrics");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        write();
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the periodic writes, writes the final metrics, disables metrics and
+   * closes the stream.
+   */
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    write();
+    Metrics.setEnabled(false);
+    out.close();
+  }
+
+  /**
+   * Writes the current value of the metrics as one line.
+   */
+  public synchronized void write() {
+    long now = System.currentTimeMillis();
+    double elapsed = (now - startTime) / 1000.0;
+    Map<String, Object> line = new LinkedHashMap<String, Object>();
+    line.put("time", now);
+    line.put("elapsed", elapsed);
+
+    Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Metrics.Counter> entry : Metrics.getCounters()
+        .entrySet()) {
+      counters.put(entry.getKey(), entry.getValue().get());
+    }
+    line.put("counters", counters);
+
+    Map<String, Object> recorders = new LinkedHashMap<String, Object>();
+    for (Map.Entry<String, Metrics.Recorder> entry : Metrics.getRecorders()
+        .entrySet()) {
+      Metrics.Recorder recorder = entry.getValue();
+      if (recorder.getCount() == 0) {
+        continue;
+      }
+      Map<String, Object> stats = new LinkedHashMap<String, Object>();
+      stats.put("count", recorder.getCount());
+      stats.put("sum", recorder.getSum());
+      stats.put("mean", recorder.getMean());
+      stats.put("min", recorder.getMin());
+      stats.put("max", recorder.getMax());
+      stats.put("p50", recorder.quantile(0.5));
+      stats.put("p90", recorder.quantile(0.9));
+      stats.put("p99", recorder.quantile(0.99));
+      recorders.put(entry.getKey(), stats);
+    }
+    line.put("recorders", recorders);
+
+    Map<String, Double> rates = new LinkedHashMap<String, Double>();
+    if (elapsed > 0) {
+      rates.put("samplesPerSecond", counters.containsKey(SAMPLES) ? counters
+          .get(SAMPLES) / elapsed : 0.0);
+    }
+    Long proposals = counters.get(PROPOSALS);
+    Long accepted = counters.get(ACCEPTED);
+    if (proposals != null && proposals > 0 && accepted != null) {
+      rates.put("acceptRate", accepted / (double) proposals);
+    }
+    line.put("rates", rates);
+
+    out.println(gson.toJson(line));
+  }
+
+  private static final String SAMPLES = "samples";
+  private static final String PROPOSALS = "mh.proposals";
+  private static final String ACCEPTED = "mh.accepted";
+
+  private final PrintStream out;
+  private final Gson gson = new Gson();
+  private ScheduledExecutorService executor;
+  private long startTime = System.currentTimeMillis();
+}
@@ -63,7 +63,9 @@ public abstract class ResultWriter {
    * file.
    */
   public void flush() {
-    // default doing nothing
+    if (out != null) {
+      out.flush();
+    }
   }
 
   /**
@@ -88,6 +90,12 @@ public abstract class ResultWriter {
    */
   abstract public void writeResult(Query query);
 
+  /**
+   * Levels of the quantiles written for queries that use summary statistics.
+   */
+  protected static final double[] QUANTILE_LEVELS = { 0.025, 0.25, 0.5, 0.75,
+      0.975 };
+
   protected PrintStream out;
   protected String header;
 }
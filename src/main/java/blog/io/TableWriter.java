@@ -6,7 +6,11 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
+import blog.common.BinnedHistogram;
 import blog.common.Histogram;
+import blog.common.QuantileSketch;
+import blog.common.SummaryStats;
+import blog.common.WeightedMoments;
 import blog.model.ArgSpec;
 import blog.model.ArgSpecQuery;
 import blog.model.Model;
@@ -30,6 +34,11 @@ import blog.model.Query;
  * ======== Done ========
  * </code>
  * 
+ * For queries that use summary statistics, we output instead the effective
+ * sample size, then for each component of the values (each entry of vectors
+ * and matrices) the mean, standard deviation, extreme values, some quantiles,
+ * and the probability of each nonempty bin of the binned histogram.
+ * 
  * @author cberzan
  * @since Jun 9, 2014
  * 
@@ -46,6 +55,10 @@ public class TableWriter extends ResultWriter {
   public void writeResult(Query query) {
     ArgSpecQuery q = (ArgSpecQuery) query;
     ArgSpec spec = q.getArgSpec();
+    if (q.usesSummaryStats()) {
+      writeSummary(spec, q.getSummaryStats());
+      return;
+    }
     Histogram histogram = query.getHistogram();
     out.println("Distribution of values for " + spec);
     List<?> entries = new ArrayList(histogram.entrySet());
@@ -65,6 +78,38 @@ public class TableWriter extends ResultWriter {
     }
   }
 
+  private void writeSummary(ArgSpec spec, SummaryStats stats) {
+    out.println("Summary of values for " + spec);
+    out.println("\teffective sample size\t" + stats.getEffectiveSampleSize());
+    if (stats.getUndefinedProb() > 0) {
+      out.println("\tundefined\t" + stats.getUndefinedProb());
+    }
+    for (int c = 0; c < stats.getNumComponents(); ++c) {
+      String indent = "\t";
+      if (stats.isMatrix()) {
+        out.println("\tentry (" + (c / stats.getNumCols()) + ", "
+            + (c % stats.getNumCols()) + ")");
+        indent = "\t\t";
+      }
+      WeightedMoments moments = stats.getMoments(c);
+      out.println(indent + "mean\t" + moments.getMean());
+      out.println(indent + "stddev\t" + Math.sqrt(moments.getVariance()));
+      out.println(indent + "min\t" + moments.getMin());
+      out.println(indent + "max\t" + moments.getMax());
+      QuantileSketch quantiles = stats.getQuantiles(c);
+      for (int i = 0; i < QUANTILE_LEVELS.length; ++i) {
+        out.println(indent + "quantile " + QUANTILE_LEVELS[i] + "\t"
+            + quantiles.quantile(QUANTILE_LEVELS[i]));
+      }
+      BinnedHistogram histogram = stats.getHistogram(c);
+      for (int i = histogram.firstNonEmptyBin(); i <= histogram
+          .lastNonEmptyBin(); ++i) {
+        out.println(indent + "[" + histogram.getLowerBound(i) + ", "
+            + histogram.getUpperBound(i) + ")\t" + histogram.getProb(i));
+      }
+    }
+  }
+
   private static Comparator WEIGHT_COMPARATOR = new Comparator() {
     public int compare(Object o1, Object o2) {
       double diff = (((Histogram.Entry) o1).getLogWeight() - ((Histogram.Entry) o2)
@@ -35,6 +35,7 @@
 
 package blog.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -66,7 +67,7 @@ import blog.world.PartialWorld;
  * Functions are only allowed to take Terms as arguments, whereas CPDs are are
  * allowed to take all argument types.
  */
-public abstract class ArgSpec {
+public abstract class ArgSpec implements Serializable {
   /**
    * Returns a List consisting of the objects obtained by evaluating each
    * element of <code>argSpecs</code> in the given context.
@@ -40,7 +40,9 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 
 import blog.bn.BayesNetVar;
+import blog.common.DenseHistogram;
 import blog.common.Histogram;
+import blog.common.SummaryStats;
 import blog.common.UnaryFunction;
 import blog.world.PartialWorld;
 
@@ -51,9 +53,40 @@ import blog.world.PartialWorld;
  * possible value to a representative in a user-defined equivalency class. The
  * representative is the one stored in the query's histogram. By default, the
  * normalizer is the identity function.
+ *
+ * <p>
+ * The values are accumulated according to the query's {@link StatsMode}: in a
+ * {@link Histogram} with an entry per distinct value, or in
+ * {@link SummaryStats} whose memory does not grow with the number of samples,
+ * for real and vector values. The mode is {@link StatsMode#HISTOGRAM} unless
+ * set with {@link #setStatsMode(StatsMode)}, which inference engines do for
+ * the queries they are given (see {@link blog.engine.InferenceEngine}).
+ *
+ * <p>
+ * In histogram mode, Boolean, Integer and enumerated values are first
+ * accumulated in a {@link DenseHistogram}, keyed by truth value, integer value
+ * or guaranteed-object index, which avoids per-sample allocation and log-space
+ * sums; the histogram returned by {@link #getHistogram()} is rebuilt from it
+ * when needed. Other values, and all values if a normalizer is set, go
+ * directly into a {@link Histogram}.
  */
 public class ArgSpecQuery extends AbstractQuery {
 
+  /**
+   * How a query accumulates the values it takes in the sampled worlds.
+   */
+  public enum StatsMode {
+    /** Keep a {@link Histogram} of the values. */
+    HISTOGRAM,
+    /** Keep {@link SummaryStats} of the values. */
+    SUMMARY,
+    /**
+     * Keep {@link SummaryStats} for queries of type Real or of a real vector
+     * or matrix type, and a {@link Histogram} for other queries.
+     */
+    AUTO
+  }
+
   public ArgSpecQuery(ArgSpec argSpec) {
     this.argSpec = argSpec;
   }
@@ -62,6 +95,7 @@ public class ArgSpecQuery extends AbstractQuery {
     this(another.argSpec());
     if (another.getNormalizer() != null)
       this.setNormalizer(another.getNormalizer());
+    this.statsMode = another.statsMode;
     if (another.variable != null)
       compile(); // if another is compiled, compile this one too.
   }
@@ -109,19 +143,135 @@ public class ArgSpecQuery extends AbstractQuery {
     return errors;
   }
 
-  /**
-   * 
-   */
   @Override
   public void updateStats(PartialWorld world, double logWeight) {
     Object value = getArgSpec().evaluate(world);
-    histogram.increaseWeight(value, logWeight);
+    if (usesSummaryStats()) {
+      summaryStats.add(value, logWeight);
+    } else {
+      if (!increaseDenseWeight(value, logWeight)) {
+        otherValues.increaseWeight(value, logWeight);
+      }
+      histogramUpToDate = false;
+    }
   }
 
+  /**
+   * Increases the weight of the given value in the dense histogram, if it can
+   * hold the value. Returns false if it cannot.
+   */
+  private boolean increaseDenseWeight(Object value, double logWeight) {
+    if (normalized || value == null) {
+      return false;
+    }
+    Class valueClass = value.getClass();
+    if (valueClass != denseClass) {
+      if (denseClass != null
+          || (valueClass != Boolean.class && valueClass != Integer.class
+              && valueClass != EnumeratedObject.class)) {
+        return false;
+      }
+      denseClass = valueClass;
+    }
+    int key;
+    if (valueClass == Integer.class) {
+      key = ((Integer) value).intValue();
+    } else if (valueClass == Boolean.class) {
+      key = ((Boolean) value).booleanValue() ? 1 : 0;
+    } else {
+      key = ((EnumeratedObject) value).getIndex();
+    }
+    return denseValues.increaseWeight(key, value, logWeight);
+  }
+
+  /**
+   * Adds the statistics accumulated by <code>other</code>, a query on the same
+   * ArgSpec, to the statistics of this query.
+   */
+  public void addStats(ArgSpecQuery other) {
+    if (denseClass == null) {
+      denseClass = other.denseClass;
+    }
+    if (other.denseClass == denseClass) {
+      denseValues.addAll(other.denseValues, otherValues);
+    } else {
+      other.denseValues.addTo(otherValues);
+    }
+    otherValues.addAll(other.otherValues);
+    histogramUpToDate = false;
+    summaryStats.addAll(other.summaryStats);
+  }
+
+  public void resetStats() {
+    denseValues.clear();
+    denseClass = null;
+    otherValues.clear();
+    histogramUpToDate = false;
+    summaryStats.clear();
+  }
+
+  /**
+   * Returns the histogram of the values of this query. It is empty if the query
+   * uses summary statistics.
+   */
   public Histogram getHistogram() {
+    if (!histogramUpToDate) {
+      histogram.clear();
+      histogram.addAll(otherValues);
+      denseValues.addTo(histogram);
+      histogramUpToDate = true;
+    }
     return histogram;
   }
 
+  /**
+   * Returns the summary statistics of the values of this query. They are empty
+   * unless the query uses summary statistics.
+   */
+  public SummaryStats getSummaryStats() {
+    return summaryStats;
+  }
+
+  /**
+   * Returns the mode of this query.
+   */
+  public StatsMode getStatsMode() {
+    return statsMode;
+  }
+
+  /**
+   * Sets the mode of this query. The mode should be set before statistics are
+   * accumulated.
+   */
+  public void setStatsMode(StatsMode mode) {
+    statsMode = mode;
+  }
+
+  /**
+   * Returns true if this query accumulates its values in summary statistics
+   * rather than in a histogram.
+   */
+  public boolean usesSummaryStats() {
+    StatsMode mode = getStatsMode();
+    if (mode == StatsMode.AUTO) {
+      return hasRealValues();
+    }
+    return mode == StatsMode.SUMMARY;
+  }
+
+  /**
+   * Returns true if the type of this query is Real, or a real vector or matrix
+   * type.
+   */
+  private boolean hasRealValues() {
+    if (!(getArgSpec() instanceof Term)) {
+      return false;
+    }
+    Type type = ((Term) getArgSpec()).getType();
+    return type == BuiltInTypes.REAL || type == BuiltInTypes.REAL_MATRIX
+        || (type != null && type.isSubtypeOf(BuiltInTypes.REAL_ARRAY));
+  }
+
   public Collection elementSet() {
     return getHistogram().elementSet();
   }
@@ -148,7 +298,14 @@ public class ArgSpecQuery extends AbstractQuery {
    * <code>(1 - percentile)</code> of the total weight remains.
    */
   public void prune(double percentile) {
-    histogram.prune(percentile);
+    Histogram pruned = getHistogram();
+    pruned.prune(percentile);
+    // keep the pruned entries as the accumulated values, since the histogram
+    // is rebuilt from those when more samples arrive
+    otherValues.clear();
+    otherValues.addAll(pruned);
+    denseValues.clear();
+    denseClass = null;
   }
 
   public UnaryFunction getNormalizer() {
@@ -157,6 +314,8 @@ public class ArgSpecQuery extends AbstractQuery {
 
   public void setNormalizer(UnaryFunction normalizer) {
     histogram.setNormalizer(normalizer);
+    otherValues.setNormalizer(normalizer);
+    normalized = true;
   }
 
   public String toString() {
@@ -176,4 +335,17 @@ public class ArgSpecQuery extends AbstractQuery {
   protected ArgSpec argSpec;
   protected BayesNetVar variable;
   protected Histogram histogram = new Histogram();
+  protected SummaryStats summaryStats = new SummaryStats();
+
+  // values accumulated in histogram mode, from which histogram is rebuilt
+  private final DenseHistogram denseValues = new DenseHistogram(
+      MAX_DENSE_RANGE);
+  private Class denseClass = null; // class of the values in denseValues
+  private final Histogram otherValues = new Histogram();
+  private boolean histogramUpToDate = true;
+  private boolean normalized = false;
+
+  private StatsMode statsMode = StatsMode.HISTOGRAM;
+
+  private static final int MAX_DENSE_RANGE = 1 << 16;
 }
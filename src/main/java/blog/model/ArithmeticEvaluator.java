@@ -0,0 +1,506 @@
+package blog.model;
+
+import java.io.Serializable;
+import java.util.Collections;
+
+import blog.sample.EvalContext;
+
+/**
+ * Evaluates a function application term whose function is a built-in
+ * arithmetic function or comparison, or a numeric {@link ComparisonFormula},
+ * without going through {@link FixedFunction#getValueInContext}. The term and
+ * its nested arithmetic subterms are compiled into a tree of nodes specialized
+ * for <code>int</code> or <code>double</code> values, which pass their
+ * results to each other unboxed; only the value of the whole term is boxed.
+ * Numeric literals become constant nodes, and any other subterm is a leaf,
+ * evaluated with {@link ArgSpec#evaluate(EvalContext)}, so random variables
+ * are looked up in the context as usual. So are foldable subterms (see
+ * {@link FuncAppTerm#isFoldable()}), which keep their value once evaluated.
+ *
+ * <p>
+ * As with {@link FuncAppTerm#evaluate(EvalContext)}, arguments are evaluated
+ * from left to right, and the term is null (resp. Model.NULL) as soon as one
+ * of them is null (resp. Model.NULL).
+ */
+abstract class ArithmeticEvaluator implements Serializable {
+
+  /**
+   * Returns an evaluator for the given term, or null if its function is not a
+   * built-in arithmetic function or comparison.
+   */
+  static ArithmeticEvaluator compile(FuncAppTerm term) {
+    Function f = term.getFunction();
+    ArgSpec[] args = term.getArgs();
+    if (getRealOp(f) != NONE) {
+      return new RealRoot(realApplication(term));
+    } else if (getIntOp(f) != NONE) {
+      return new IntRoot(integerApplication(term));
+    } else if (getComparison(f) != NONE) {
+      return new ComparisonRoot(getComparison(f), real(args[0]), real(args[1]));
+    }
+    return null;
+  }
+
+  /**
+   * Returns an evaluator for the comparison formula with the given operator
+   * and operands, or null unless both operands are of type Real, or both are
+   * integers. Comparisons between other types, including a Real and an
+   * integer, are left to the formula.
+   */
+  static ArithmeticEvaluator compile(ComparisonFormula.Operator operator,
+      Term left, Term right) {
+    Type leftType = left.getType();
+    Type rightType = right.getType();
+    if (leftType == null || rightType == null) {
+      return null;
+    }
+    boolean real;
+    if (leftType == BuiltInTypes.REAL && rightType == BuiltInTypes.REAL) {
+      real = true;
+    } else if (leftType.isSubtypeOf(BuiltInTypes.INTEGER)
+        && rightType.isSubtypeOf(BuiltInTypes.INTEGER)) {
+      real = false;
+    } else {
+      return null;
+    }
+    int op;
+    switch (operator) {
+    case LT:
+      op = LT;
+      break;
+    case LEQ:
+      op = LEQ;
+      break;
+    case GT:
+      op = GT;
+      break;
+    default:
+      op = GEQ;
+    }
+    if (real) {
+      return new FormulaComparisonRoot(op, real(left), real(right), true);
+    }
+    return new FormulaComparisonRoot(op, new IntToReal(integer(left)),
+        new IntToReal(integer(right)), false);
+  }
+
+  /**
+   * Returns the value of the term in the given context.
+   */
+  Object evaluate(EvalContext context) {
+    try {
+      return evaluateBoxed(context);
+    } catch (Undefined e) {
+      return e.value;
+    }
+  }
+
+  abstract Object evaluateBoxed(EvalContext context) throws Undefined;
+
+  /**
+   * Returns the node of an operand. Foldable terms are leaves, so that they
+   * keep their value once evaluated.
+   */
+  private static RealNode real(ArgSpec arg) {
+    Object constant = getConstantValue(arg);
+    if (constant instanceof Number) {
+      return new RealConstant(((Number) constant).doubleValue());
+    }
+    if (arg instanceof FuncAppTerm && !((FuncAppTerm) arg).isFoldable()) {
+      RealNode node = realApplication((FuncAppTerm) arg);
+      if (node != null) {
+        return node;
+      }
+    }
+    return new RealLeaf(arg);
+  }
+
+  /**
+   * Returns the node of the given arithmetic term, or null if its function is
+   * not a built-in arithmetic function.
+   */
+  private static RealNode realApplication(FuncAppTerm term) {
+    Function f = term.getFunction();
+    ArgSpec[] args = term.getArgs();
+    int op = getRealOp(f);
+    if (op != NONE) {
+      return (args.length == 1) ? new RealUnary(op, real(args[0]))
+          : new RealBinary(op, real(args[0]), real(args[1]));
+    }
+    if (getIntOp(f) != NONE) {
+      return new IntToReal(integerApplication(term));
+    }
+    return null;
+  }
+
+  private static IntNode integer(ArgSpec arg) {
+    Object constant = getConstantValue(arg);
+    if (constant instanceof Integer) {
+      return new IntConstant(((Integer) constant).intValue());
+    }
+    if (arg instanceof FuncAppTerm && !((FuncAppTerm) arg).isFoldable()) {
+      IntNode node = integerApplication((FuncAppTerm) arg);
+      if (node != null) {
+        return node;
+      }
+    }
+    return new IntLeaf(arg);
+  }
+
+  private static IntNode integerApplication(FuncAppTerm term) {
+    ArgSpec[] args = term.getArgs();
+    int op = getIntOp(term.getFunction());
+    if (op != NONE) {
+      return new IntBinary(op, integer(args[0]), integer(args[1]));
+    }
+    return null;
+  }
+
+  /**
+   * Returns the value of the given argument if it is a literal, and null
+   * otherwise.
+   */
+  private static Object getConstantValue(ArgSpec arg) {
+    if (arg instanceof FuncAppTerm) {
+      FuncAppTerm term = (FuncAppTerm) arg;
+      if (term.getArgs().length == 0
+          && term.getFunction() instanceof FixedFunction) {
+        FixedFunction f = (FixedFunction) term.getFunction();
+        if (f.getInterpretation() instanceof ConstantInterp) {
+          return f.getInterpretation().getValue(Collections.EMPTY_LIST);
+        }
+      }
+    }
+    return null;
+  }
+
+  private static int getRealOp(Function f) {
+    if (f == BuiltInFunctions.RPLUS) {
+      return PLUS;
+    } else if (f == BuiltInFunctions.RMINUS) {
+      return MINUS;
+    } else if (f == BuiltInFunctions.RMULT) {
+      return MULT;
+    } else if (f == BuiltInFunctions.RDIV) {
+      return DIV;
+    } else if (f == BuiltInFunctions.POWER) {
+      return POWER;
+    } else if (f == BuiltInFunctions.EXP || f == BuiltInFunctions.EXP_INT) {
+      return EXP;
+    } else if (f == BuiltInFunctions.LOG || f == BuiltInFunctions.LOG_INT) {
+      return LOG;
+    } else if (f == BuiltInFunctions.ABS) {
+      return ABS;
+    }
+    return NONE;
+  }
+
+  private static int getIntOp(Function f) {
+    if (f == BuiltInFunctions.PLUS) {
+      return PLUS;
+    } else if (f == BuiltInFunctions.MINUS) {
+      return MINUS;
+    } else if (f == BuiltInFunctions.MULT) {
+      return MULT;
+    } else if (f == BuiltInFunctions.DIV) {
+      return DIV;
+    } else if (f == BuiltInFunctions.MOD) {
+      return MOD;
+    }
+    return NONE;
+  }
+
+  private static int getComparison(Function f) {
+    if (f == BuiltInFunctions.LT) {
+      return LT;
+    } else if (f == BuiltInFunctions.LEQ) {
+      return LEQ;
+    } else if (f == BuiltInFunctions.GT) {
+      return GT;
+    } else if (f == BuiltInFunctions.GEQ) {
+      return GEQ;
+    }
+    return NONE;
+  }
+
+  private static final int NONE = 0;
+  private static final int PLUS = 1;
+  private static final int MINUS = 2;
+  private static final int MULT = 3;
+  private static final int DIV = 4;
+  private static final int MOD = 5;
+  private static final int POWER = 6;
+  private static final int EXP = 7;
+  private static final int LOG = 8;
+  private static final int ABS = 9;
+  private static final int LT = 10;
+  private static final int LEQ = 11;
+  private static final int GT = 12;
+  private static final int GEQ = 13;
+
+  /**
+   * Thrown by a leaf whose value is null or Model.NULL, to make the whole term
+   * evaluate to that value. The two instances are shared and carry no stack
+   * trace, so throwing one costs little more than a return.
+   */
+  static class Undefined extends Exception {
+    private Undefined(Object value) {
+      this.value = value;
+    }
+
+    public Throwable fillInStackTrace() {
+      return this;
+    }
+
+    final Object value;
+  }
+
+  private static final Undefined NOT_DETERMINED = new Undefined(null);
+  private static final Undefined NULL_VALUE = new Undefined(Model.NULL);
+
+  private static Object evaluateLeaf(ArgSpec arg, EvalContext context)
+      throws Undefined {
+    Object value = arg.evaluate(context);
+    if (value == null) {
+      throw NOT_DETERMINED;
+    }
+    if (value == Model.NULL) {
+      throw NULL_VALUE;
+    }
+    return value;
+  }
+
+  private static abstract class RealNode implements Serializable {
+    abstract double evaluate(EvalContext context) throws Undefined;
+  }
+
+  private static abstract class IntNode implements Serializable {
+    abstract int evaluate(EvalContext context) throws Undefined;
+  }
+
+  private static class RealLeaf extends RealNode {
+    RealLeaf(ArgSpec arg) {
+      this.arg = arg;
+    }
+
+    double evaluate(EvalContext context) throws Undefined {
+      return ((Number) evaluateLeaf(arg, context)).doubleValue();
+    }
+
+    private final ArgSpec arg;
+  }
+
+  private static class IntLeaf extends IntNode {
+    IntLeaf(ArgSpec arg) {
+      this.arg = arg;
+    }
+
+    int evaluate(EvalContext context) throws Undefined {
+      return ((Integer) evaluateLeaf(arg, context)).intValue();
+    }
+
+    private final ArgSpec arg;
+  }
+
+  private static class RealConstant extends RealNode {
+    RealConstant(double value) {
+      this.value = value;
+    }
+
+    double evaluate(EvalContext context) {
+      return value;
+    }
+
+    private final double value;
+  }
+
+  private static class IntConstant extends IntNode {
+    IntConstant(int value) {
+      this.value = value;
+    }
+
+    int evaluate(EvalContext context) {
+      return value;
+    }
+
+    private final int value;
+  }
+
+  private static class IntToReal extends RealNode {
+    IntToReal(IntNode node) {
+      this.node = node;
+    }
+
+    double evaluate(EvalContext context) throws Undefined {
+      return node.evaluate(context);
+    }
+
+    private final IntNode node;
+  }
+
+  private static class RealUnary extends RealNode {
+    RealUnary(int op, RealNode arg) {
+      this.op = op;
+      this.arg = arg;
+    }
+
+    double evaluate(EvalContext context) throws Undefined {
+      double x = arg.evaluate(context);
+      switch (op) {
+      case EXP:
+        return Math.exp(x);
+      case LOG:
+        return Math.log(x);
+      default:
+        return Math.abs(x);
+      }
+    }
+
+    private final int op;
+    private final RealNode arg;
+  }
+
+  private static class RealBinary extends RealNode {
+    RealBinary(int op, RealNode left, RealNode right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    double evaluate(EvalContext context) throws Undefined {
+      double x = left.evaluate(context);
+      double y = right.evaluate(context);
+      switch (op) {
+      case PLUS:
+        return x + y;
+      case MINUS:
+        return x - y;
+      case MULT:
+        return x * y;
+      case DIV:
+        return x / y;
+      default:
+        return Math.pow(x, y);
+      }
+    }
+
+    private final int op;
+    private final RealNode left;
+    private final RealNode right;
+  }
+
+  private static class IntBinary extends IntNode {
+    IntBinary(int op, IntNode left, IntNode right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    int evaluate(EvalContext context) throws Undefined {
+      int x = left.evaluate(context);
+      int y = right.evaluate(context);
+      switch (op) {
+      case PLUS:
+        return x + y;
+      case MINUS:
+        return x - y;
+      case MULT:
+        return x * y;
+      case DIV:
+        return x / y;
+      default:
+        return x % y;
+      }
+    }
+
+    private final int op;
+    private final IntNode left;
+    private final IntNode right;
+  }
+
+  private static class RealRoot extends ArithmeticEvaluator {
+    RealRoot(RealNode node) {
+      this.node = node;
+    }
+
+    Object evaluateBoxed(EvalContext context) throws Undefined {
+      return Double.valueOf(node.evaluate(context));
+    }
+
+    private final RealNode node;
+  }
+
+  private static class IntRoot extends ArithmeticEvaluator {
+    IntRoot(IntNode node) {
+      this.node = node;
+    }
+
+    Object evaluateBoxed(EvalContext context) throws Undefined {
+      return Integer.valueOf(node.evaluate(context));
+    }
+
+    private final IntNode node;
+  }
+
+  private static class ComparisonRoot extends ArithmeticEvaluator {
+    ComparisonRoot(int op, RealNode left, RealNode right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    Object evaluateBoxed(EvalContext context) throws Undefined {
+      double x = left.evaluate(context);
+      double y = right.evaluate(context);
+      return Boolean.valueOf(compare(op, x, y));
+    }
+
+    final int op;
+    final RealNode left;
+    final RealNode right;
+  }
+
+  /**
+   * Evaluates a {@link ComparisonFormula}, which is null, rather than
+   * Model.NULL, if an operand is Model.NULL, and orders reals as
+   * {@link Double#compareTo} does.
+   */
+  private static class FormulaComparisonRoot extends ComparisonRoot {
+    FormulaComparisonRoot(int op, RealNode left, RealNode right, boolean real) {
+      super(op, left, right);
+      this.real = real;
+    }
+
+    Object evaluate(EvalContext context) {
+      try {
+        return evaluateBoxed(context);
+      } catch (Undefined e) {
+        return null;
+      }
+    }
+
+    Object evaluateBoxed(EvalContext context) throws Undefined {
+      double x = left.evaluate(context);
+      double y = right.evaluate(context);
+      if (real) {
+        return Boolean.valueOf(compare(op, Double.compare(x, y), 0));
+      }
+      return Boolean.valueOf(compare(op, x, y));
+    }
+
+    private final boolean real;
+  }
+
+  private static boolean compare(int op, double x, double y) {
+    switch (op) {
+    case LT:
+      return x < y;
+    case LEQ:
+      return x <= y;
+    case GT:
+      return x > y;
+    default:
+      return x >= y;
+    }
+  }
+}
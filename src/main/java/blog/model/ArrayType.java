@@ -20,10 +20,17 @@ public class ArrayType extends Type {
    *          in Real[]
    */
   public ArrayType(Type elementType) {
-    super("Array<" + elementType.getName() + ">");
+    super(nameOf(elementType));
     this.elementType = elementType;
   }
 
+  /**
+   * Returns the name of the type of arrays whose elements have the given type.
+   */
+  static String nameOf(Type elementType) {
+    return "Array<" + elementType.getName() + ">";
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -38,5 +45,17 @@ public class ArrayType extends Type {
     return false;
   }
 
+  public Type getElementType() {
+    return elementType;
+  }
+
+  /**
+   * Arrays of built-in types are shared by all models.
+   */
+  @Override
+  boolean isShared() {
+    return elementType.isShared() && Type.getType(getName()) == this;
+  }
+
   private Type elementType;
 }
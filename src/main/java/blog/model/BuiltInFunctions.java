@@ -35,6 +35,9 @@
 
 package blog.model;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -691,6 +694,56 @@ public class BuiltInFunctions {
         .unmodifiableList(funcsWithName);
   }
 
+  /**
+   * Returns true if the given function is one of the built-in functions or
+   * constants returned by {@link #getFunction(FunctionSignature)}, rather than
+   * a user-defined function with the same signature.
+   */
+  static boolean isBuiltIn(Function f) {
+    List funcsWithName = (List) functions.get(f.getName());
+    if (funcsWithName != null) {
+      for (Iterator iter = funcsWithName.iterator(); iter.hasNext();) {
+        if (iter.next() == f) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Serialized form of a built-in function, which resolves to the built-in
+   * function with the same signature when deserialized. Literals that the
+   * deserializing JVM has not created yet are created from their value.
+   */
+  static class FunctionRef implements Serializable {
+    FunctionRef(FixedFunction f) {
+      name = f.getName();
+      argTypes = f.getArgTypes();
+      retType = f.getRetType();
+      if (argTypes.length == 0
+          && f.getInterpretation() instanceof ConstantInterp) {
+        value = f.getInterpretation().getValue(Collections.EMPTY_LIST);
+      }
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+      FixedFunction f = getFunction(new FunctionSignature(name, argTypes));
+      if (f == null && value != null) {
+        f = getLiteral(name, retType, value);
+      }
+      if (f == null) {
+        throw new InvalidObjectException("Unknown built-in function: " + name);
+      }
+      return f;
+    }
+
+    private String name;
+    private Type[] argTypes;
+    private Type retType;
+    private Object value;
+  }
+
   private static void addFunction(Function f) {
     List funcsWithName = (List) functions.get(f.getName());
     if (funcsWithName != null) {
@@ -395,6 +395,7 @@ public class BuiltInTypes {
     addType(INTEGER_ARRAY);
     addType(INTEGER_MATRIX);
     addType(SET);
+    addType(MAP);
     addType(ANY);
 
     // special treatment for NaturalNum
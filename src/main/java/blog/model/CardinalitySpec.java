@@ -44,6 +44,7 @@ import java.util.Set;
 import blog.common.UnaryProcedure;
 import blog.objgen.ObjectSet;
 import blog.sample.EvalContext;
+import blog.sample.SetViews;
 
 /**
  * Argument specifier that refers to the size of an implicitly defined set.
@@ -64,6 +65,16 @@ public class CardinalitySpec extends ArgSpec {
   public Object evaluate(EvalContext context) {
     context.pushEvaluee(this);
 
+    SetViews views = SetViews.get(context);
+    if (views != null) {
+      SetViews.Count count = views.count(this, setSpec.getGenericSetElt(),
+          setSpec.getCond(), context);
+      if (count != null) {
+        context.popEvaluee();
+        return Integer.valueOf(count.satisfied);
+      }
+    }
+
     // Note that we don't evaluate the underlying ImplicitSetSpec,
     // because that requires the elements of the set to be determined.
     // We only care about the size of the set.
@@ -56,6 +56,16 @@ public class CaseSpec extends ArgSpec {
     if (t == null) {
       return null;
     }
+    Map<Object, Object> table = clause.getDispatchTable();
+    if (table != null) {
+      // constant keys: evaluate the selected branch only
+      Object ret = table.get(t);
+      if (ret == null)
+        return Model.NULL;
+      if (ret instanceof ArgSpec)
+        return ((ArgSpec) ret).evaluate(context);
+      return ret;
+    }
     Map<Object, Object> mp = clause.evaluate(context);
     if (mp.containsKey(t)) {
       Object ret = mp.get(t);
@@ -35,6 +35,7 @@
 package blog.model;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -91,7 +92,17 @@ public class ComparisonFormula extends Formula {
     return new ComparisonFormula(left, right, oppositeOp);
   }
 
+  public int compile(LinkedHashSet callStack) {
+    int errors = super.compile(callStack);
+    evaluator = ArithmeticEvaluator.compile(compator, left, right);
+    return errors;
+  }
+
   public Object evaluate(EvalContext context) {
+    if (evaluator != null) {
+      return evaluator.evaluate(context);
+    }
+
     Object t1Value = left.evaluate(context);
     if (t1Value == null || (!(t1Value instanceof Comparable))) {
       return null;
@@ -248,4 +259,6 @@ public class ComparisonFormula extends Formula {
   private Term left;
   private Term right;
   private Operator compator;
+  // set by compile if both operands are reals, or both are integers
+  private ArithmeticEvaluator evaluator;
 }
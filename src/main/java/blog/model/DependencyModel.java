@@ -36,6 +36,7 @@
 package blog.model;
 
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -58,23 +59,29 @@ import blog.sample.EvalContext;
  * @see blog.model.Function
  * @see blog.model.POP
  */
-public class DependencyModel {
+public class DependencyModel implements Serializable {
 
   /**
    * Nested class representing a distribution over child values, in the form of
-   * a CPD and a list of values for the CPD's arguments.
+   * a CPD whose parameters have been set to a list of argument values.
    * 
-   * TODO: This class is no longer necessary after the new distribution
-   * interface is implemented. Instead of storing the args in this container, we
-   * can just call setParams() on the distribution. So we only need to pass
-   * around a CondProbDistrib, not a CondProbDistrib + args.
+   * A Distrib is immutable: setParams must not be called on its CPD, which may
+   * be shared with other Distribs that have the same argument values. So a
+   * Distrib can be used by several threads at once.
    */
-  public static class Distrib {
+  public static class Distrib implements Serializable {
+    /**
+     * Creates a Distrib for the given CPD, whose parameters must already be set
+     * to the given argument values.
+     */
     public Distrib(CondProbDistrib cpd, List argValues) {
       this.cpd = cpd;
       this.argValues = argValues;
     }
 
+    /**
+     * Returns the parameterized CPD. Its parameters must not be changed.
+     */
     public CondProbDistrib getCPD() {
       return cpd;
     }
@@ -83,12 +90,20 @@ public class DependencyModel {
       return argValues.toArray();
     }
 
+    /**
+     * Returns true if this distribution's argument values are equal to the
+     * given ones.
+     */
+    public boolean hasArgValues(List values) {
+      return argValues.equals(values);
+    }
+
     public String toString() {
       return (cpd + "(" + argValues + ")");
     }
 
-    private CondProbDistrib cpd;
-    private List argValues;
+    private final CondProbDistrib cpd;
+    private final List argValues;
   }
 
   public DependencyModel(ArgSpec cl, Type childType, Object defaultVal) {
@@ -131,7 +146,8 @@ public class DependencyModel {
         return null;
       }
       if (!exists.booleanValue()) {
-        return new DependencyModel.Distrib(EqualsCPD.CPD,
+        return new DependencyModel.Distrib(new EqualsCPD(
+            valueWhenArgsDontExist),
             Collections.singletonList(valueWhenArgsDontExist));
       }
     }
@@ -15,6 +15,7 @@ import java.util.Set;
 import blog.bn.BasicVar;
 import blog.bn.RandFuncAppVar;
 import blog.common.UnaryProcedure;
+import blog.distrib.CPDFactory;
 import blog.distrib.CondProbDistrib;
 import blog.distrib.EqualsCPD;
 import blog.sample.EvalContext;
@@ -30,6 +31,10 @@ public class DistribSpec extends ArgSpec {
   private ArgSpec[] args;
   private CondProbDistrib cpd;
   private Class<? extends CondProbDistrib> cpdClass;
+  private transient CPDFactory cpdFactory;
+  private DependencyModel.Distrib fixedDistrib; // if all args are fixed
+  // distribution returned last to each thread
+  private transient volatile ThreadLocal<DependencyModel.Distrib> lastDistrib;
 
   public String getName() {
     return cpdName;
@@ -75,10 +80,22 @@ public class DistribSpec extends ArgSpec {
     return this;
   }
 
+  /**
+   * Returns the distribution specified by this DistribSpec in the given
+   * context, or null if the context does not determine all its arguments. The
+   * returned distribution has its own CPD, already parameterized: the CPD of
+   * this DistribSpec is never modified, so several threads can get
+   * distributions from it at once. If all the arguments are fixed, the same
+   * distribution is returned every time; otherwise the distribution returned
+   * last to the calling thread is reused if its argument values are the same.
+   */
   public DependencyModel.Distrib getDistrib(EvalContext context) {
     if (cpd == null) {
       throw new IllegalStateException("CPD not initialized");
     }
+    if (fixedDistrib != null) {
+      return fixedDistrib;
+    }
     context.pushEvaluee(this);
     List<Object> argValues = new ArrayList<Object>();
 
@@ -94,11 +111,46 @@ public class DistribSpec extends ArgSpec {
     context.popEvaluee();
     if (argValues.size() == args.length) {
       // all CPD args were determined
-      return new DependencyModel.Distrib(cpd, argValues);
+      ThreadLocal<DependencyModel.Distrib> last = getLastDistrib();
+      DependencyModel.Distrib distrib = last.get();
+      if (distrib == null || !distrib.hasArgValues(argValues)) {
+        distrib = new DependencyModel.Distrib(newCPD(argValues), argValues);
+        last.set(distrib);
+      }
+      return distrib;
     }
     return null;
   }
 
+  /**
+   * Returns a new instance of this DistribSpec's CPD class, with its
+   * parameters set to the given values.
+   */
+  private CondProbDistrib newCPD(List<Object> argValues) {
+    CPDFactory factory = cpdFactory;
+    if (factory == null) {
+      factory = CPDFactory.forClass(cpdClass);
+      cpdFactory = factory;
+    }
+    CondProbDistrib newCPD = factory.create();
+    newCPD.setParams(argValues.toArray());
+    return newCPD;
+  }
+
+  private ThreadLocal<DependencyModel.Distrib> getLastDistrib() {
+    ThreadLocal<DependencyModel.Distrib> last = lastDistrib;
+    if (last == null) {
+      // created lazily, since it is not serialized
+      synchronized (this) {
+        if (lastDistrib == null) {
+          lastDistrib = new ThreadLocal<DependencyModel.Distrib>();
+        }
+        last = lastDistrib;
+      }
+    }
+    return last;
+  }
+
   public BasicVar getEqualParent(EvalContext context) {
     if (cpd instanceof EqualsCPD) {
       ArgSpec arg = args[0];
@@ -252,6 +304,10 @@ public class DistribSpec extends ArgSpec {
       Constructor<? extends CondProbDistrib> ct = cpdClass.getConstructor();
       cpd = (CondProbDistrib) ct.newInstance();
       cpd.setParams(constructionArgValues.toArray());
+      if (!constructionArgValues.contains(null)) {
+        // all arguments are fixed
+        fixedDistrib = new DependencyModel.Distrib(cpd, constructionArgValues);
+      }
     } catch (InvocationTargetException e) {
       e.printStackTrace();
       System.err.println("Error initializing CPD at " + getLocation() + ": "
@@ -35,6 +35,8 @@
 
 package blog.model;
 
+import java.io.Serializable;
+
 
 /**
  * An EnumeratedObject represents a guaranteed object that is explicitly defined
@@ -50,7 +52,7 @@ package blog.model;
  * @author leili
  * @date 2012/12/17
  */
-public class EnumeratedObject implements Comparable {
+public class EnumeratedObject implements Comparable, Serializable {
 	/**
 	 * Creates a new EnumeratedObject of the given type that was introduced with
 	 * the given name.
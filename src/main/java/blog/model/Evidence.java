@@ -35,6 +35,7 @@
 
 package blog.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -80,7 +81,7 @@ import blog.world.PartialWorld;
  * @see blog.model.SymbolEvidenceStatement
  * @see blog.model.ValueEvidenceStatement
  */
-public class Evidence {
+public class Evidence implements Serializable {
   public Evidence(Model model) {
     this.model = model;
   }
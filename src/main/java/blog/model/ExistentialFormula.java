@@ -47,6 +47,7 @@ import blog.objgen.CompiledSetSpec;
 import blog.objgen.ObjectIterator;
 import blog.objgen.ObjectSet;
 import blog.sample.EvalContext;
+import blog.sample.SetViews;
 
 /**
  * Represents an existential instantiation for one variable satisfying an
@@ -101,6 +102,15 @@ public class ExistentialFormula extends Formula {
   public Object evaluate(EvalContext context) {
     context.pushEvaluee(this);
 
+    SetViews views = SetViews.get(context);
+    if (views != null) {
+      SetViews.Count count = views.count(this, var, cond, context);
+      if (count != null) {
+        context.popEvaluee();
+        return Boolean.valueOf(count.satisfied > 0);
+      }
+    }
+
     ObjectSet witnesses = getWitnessSpec().elementSet(context);
     Boolean result = null;
     if (witnesses.canDetermineIsEmpty()) {
@@ -43,11 +43,14 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import blog.common.Metrics;
 import blog.common.Util;
 import blog.sample.EvalContext;
 
@@ -222,6 +225,86 @@ public class FixedFunction extends Function {
    */
   public Object getValueInContext(Object[] args, EvalContext context,
       boolean stable) {
+    if (memoCapacity > 0) {
+      return getMemoizedValue(args, context);
+    }
+    return computeValue(args, context);
+  }
+
+  /**
+   * Makes this function cache up to <code>capacity</code> of its values, by
+   * argument tuple, evicting the least recently used ones first. A capacity of
+   * 0 disables the cache, which is the default. Since the value of a fixed
+   * function only depends on its arguments, this saves recomputing costly
+   * functions, such as matrix inversions or file loads, when they are called
+   * again with the same arguments.
+   */
+  public void setMemoCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+    }
+    synchronized (this) {
+      memoCapacity = capacity;
+      memo = null;
+    }
+  }
+
+  /**
+   * Returns the capacity of the cache of values of this function, 0 if it has
+   * none.
+   */
+  public int getMemoCapacity() {
+    return memoCapacity;
+  }
+
+  /**
+   * Returns the number of calls to this function answered from its cache.
+   */
+  public long getMemoHits() {
+    return memoHits.get();
+  }
+
+  /**
+   * Returns the number of calls to this function that were computed and added
+   * to its cache.
+   */
+  public long getMemoMisses() {
+    return memoMisses.get();
+  }
+
+  private Object getMemoizedValue(Object[] args, EvalContext context) {
+    List key = Arrays.asList(args);
+    Object value;
+    synchronized (this) {
+      if (memo == null) {
+        final int capacity = memoCapacity;
+        memo = new LinkedHashMap<List, Object>(16, 0.75f, true) {
+          protected boolean removeEldestEntry(Map.Entry<List, Object> eldest) {
+            return size() > capacity;
+          }
+        };
+      }
+      value = memo.get(key);
+    }
+    if (value != null) {
+      memoHits.incrementAndGet();
+      MEMO_HITS.increment();
+      return value;
+    }
+    value = computeValue(args, context);
+    if (value != null) { // null: not determined, e.g. on generic objects
+      memoMisses.incrementAndGet();
+      MEMO_MISSES.increment();
+      synchronized (this) {
+        if (memo != null) {
+          memo.put(Arrays.asList(args.clone()), value);
+        }
+      }
+    }
+    return value;
+  }
+
+  private Object computeValue(Object[] args, EvalContext context) {
     if (body != null) {
       context.assignTuple(getArgVars(), args);
       Object v = body.evaluate(context);
@@ -468,4 +551,15 @@ public class FixedFunction extends Function {
   private FunctionInterp interp;
 
   private ArgSpec body;
+
+  private static final Metrics.Counter MEMO_HITS = Metrics
+      .counter("fixed.memo.hits");
+  private static final Metrics.Counter MEMO_MISSES = Metrics
+      .counter("fixed.memo.misses");
+
+  private int memoCapacity = 0;
+  // values by argument list, least recently used first; made on first use
+  private transient Map<List, Object> memo;
+  private AtomicLong memoHits = new AtomicLong();
+  private AtomicLong memoMisses = new AtomicLong();
 }
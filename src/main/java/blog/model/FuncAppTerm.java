@@ -49,6 +49,7 @@ import blog.bn.BayesNetVar;
 import blog.bn.DerivedVar;
 import blog.bn.RandFuncAppVar;
 import blog.sample.EvalContext;
+import blog.sample.SetViews;
 
 /**
  * Represents a function invocation.
@@ -127,18 +128,57 @@ public class FuncAppTerm extends Term {
       errors += args[i].compile(callStack);
     }
     // errors += f.compile(callStack);
+    foldable = (errors == 0) && (f instanceof FixedFunction)
+        && !containsRandomSymbol() && getFreeVars().isEmpty();
+    evaluator = ArithmeticEvaluator.compile(this);
+    if (errors == 0 && f == BuiltInFunctions.SET_SIZE
+        && args[0] instanceof TupleSetSpec) {
+      ImplicitSetSpec setSpec = ((TupleSetSpec) args[0]).toImplicitSetSpec();
+      if (setSpec != null) {
+        cardinality = new CardinalitySpec(setSpec);
+        errors += cardinality.compile(callStack);
+      }
+    }
 
     callStack.remove(this);
     return errors;
   }
 
+  /**
+   * Returns true if this term applies a fixed function to non-random arguments
+   * with no free variables, so that it has the same value in every world. Such
+   * a term is folded: the value of its first evaluation is kept, and every
+   * later evaluation returns it without evaluating the arguments again. The
+   * term is not evaluated when it is compiled, since it may never be evaluated
+   * at all (e.g., in a branch that is never taken), and evaluating it may fail
+   * or not terminate.
+   */
+  boolean isFoldable() {
+    return foldable;
+  }
+
   public Object evaluate(EvalContext context) {
-    // if (argValues == null) { // Not reusing anymore since this array was
-    // being used for being argument arrays for RandFuncAppVars and had to be
-    // cloned anyway.
-    Object[] oldArgValues = argValues;
-    argValues = new Object[args.length];
-    // }
+    Object value = foldedValue;
+    if (value == null) {
+      value = (evaluator != null) ? evaluator.evaluate(context)
+          : evaluateApplication(context);
+      if (foldable && value != null) {
+        foldedValue = value;
+      }
+    }
+    return value;
+  }
+
+  private Object evaluateApplication(EvalContext context) {
+    if (cardinality != null && SetViews.get(context) != null) {
+      // let the set views count the set
+      return cardinality.evaluate(context);
+    }
+
+    // The argument array is allocated per call (rather than kept as scratch
+    // space in this term) because it becomes the argument array of
+    // RandFuncAppVars, and because terms may be evaluated concurrently.
+    Object[] argValues = new Object[args.length];
 
     for (int i = 0; i < args.length; ++i) {
       argValues[i] = args[i].evaluate(context);
@@ -148,14 +188,11 @@ public class FuncAppTerm extends Term {
 
       if (argValues[i] == Model.NULL) {
         // short-circuit, don't evaluate other args
-        argValues = oldArgValues;
         return Model.NULL;
       }
     }
 
-    Object result = f.getValueInContext(argValues, context, false);
-    argValues = oldArgValues;
-    return result;
+    return f.getValueInContext(argValues, context, false);
   }
 
   /**
@@ -165,33 +202,28 @@ public class FuncAppTerm extends Term {
    * a BasicVar (specifically, a RandFuncAppVar). Otherwise, it's a DerivedVar.
    */
   public BayesNetVar getVariable() {
-    Object[] oldArgValues = argValues;
     if (f instanceof RandomFunction) {
-      if (loadArgValuesIfNonRandom()) {
-        RandFuncAppVar randFuncAppVar = new RandFuncAppVar((RandomFunction) f,
-            argValues, true);
-        argValues = oldArgValues;
-        return randFuncAppVar;
+      Object[] argValues = getArgValuesIfNonRandom();
+      if (argValues != null) {
+        return new RandFuncAppVar((RandomFunction) f, argValues, true);
       }
     }
-    argValues = oldArgValues;
     return new DerivedVar(this);
   }
 
-  private boolean loadArgValuesIfNonRandom() {
-    // if (argValues == null) { // Not reusing anymore since this array was
-    // being used for being argument arrays for RandFuncAppVars and had to be
-    // cloned anyway.
-    argValues = new Object[args.length];
-    // }
-
+  /**
+   * Returns a new array with the values of the arguments, or null if some
+   * argument is random.
+   */
+  private Object[] getArgValuesIfNonRandom() {
+    Object[] argValues = new Object[args.length];
     for (int i = 0; i < args.length; ++i) {
       argValues[i] = args[i].getValueIfNonRandom();
       if (argValues[i] == null) {
-        return false;
+        return null;
       }
     }
-    return true;
+    return argValues;
   }
 
   public Collection getSubExprs() {
@@ -441,6 +473,13 @@ public class FuncAppTerm extends Term {
   private String funcName;
   private Function f;
   private ArgSpec[] args;
-  private Object[] argValues; // scratch space for storing arg values
   private boolean compiled = false;
+  // set by compile if the value of this term does not depend on the world
+  private boolean foldable = false;
+  // value of the first evaluation of a foldable term
+  private transient volatile Object foldedValue;
+  // set by compile if f is a built-in arithmetic function or comparison
+  private ArithmeticEvaluator evaluator;
+  // set by compile if this term is the size of a set of single objects
+  private CardinalitySpec cardinality;
 }
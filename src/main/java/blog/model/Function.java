@@ -35,6 +35,8 @@
 
 package blog.model;
 
+import java.io.ObjectStreamException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -49,7 +51,7 @@ import blog.sample.EvalContext;
  * and argument types.
  */
 
-public abstract class Function {
+public abstract class Function implements Serializable {
   public Function(String fname, List<Type> argTypeList, Type retType) {
     sig = new FunctionSignature(fname, argTypeList);
     this.retType = retType;
@@ -252,6 +254,17 @@ public abstract class Function {
     return sig.hashCode();
   }
 
+  /**
+   * Serializes the built-in functions as a reference to the function with the
+   * same signature in the deserializing JVM.
+   */
+  protected Object writeReplace() throws ObjectStreamException {
+    if (BuiltInFunctions.isBuiltIn(this)) {
+      return new BuiltInFunctions.FunctionRef((FixedFunction) this);
+    }
+    return this;
+  }
+
   private FunctionSignature sig;
   private Type retType;
 
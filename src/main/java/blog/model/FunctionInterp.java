@@ -35,6 +35,7 @@
 
 package blog.model;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Set;
 
@@ -45,7 +46,7 @@ import java.util.Set;
  * Objects as its sole argument; these objects are parameters that define the
  * interpretation.
  */
-public interface FunctionInterp {
+public interface FunctionInterp extends Serializable {
   /**
    * Returns the value of this function on the given tuple of arguments.
    * Implementations can assume that the arguments are of the expected types and
@@ -3,6 +3,7 @@
  */
 package blog.model;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 
@@ -10,7 +11,7 @@ import java.util.List;
  * Nested class representing a function signature, that is, a function name
  * and a tuple of argument types.
  */
-public class FunctionSignature {
+public class FunctionSignature implements Serializable {
   /**
    * Creates a signature for a zero-ary function with the given name.
    */
@@ -1,5 +1,6 @@
 package blog.model;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -32,6 +33,10 @@ public class MapSpec extends ArgSpec {
   // if this flag is true, the values will not be evaluated
   boolean lazyEval = false;
 
+  // set by compile if all keys are constant; see getDispatchTable
+  private boolean constantKeys = false;
+  private transient Map<Object, Object> dispatchTable;
+
   public void setLazyEval(boolean flag) {
     lazyEval = flag;
   }
@@ -95,6 +100,8 @@ public class MapSpec extends ArgSpec {
       for (int i = 0; i < keys.size(); i++) {
         map.put(keys.get(i), values.get(i));
       }
+      constantKeys = (errors == 0) && hasConstantKeys();
+      dispatchTable = null;
     }
 
     callStack.remove(this);
@@ -102,9 +109,70 @@ public class MapSpec extends ArgSpec {
   }
 
   /**
-	 * 
-	 */
+   * Returns true if every key of this map is non-random, has no free
+   * variables, and has a value that can be computed now.
+   */
+  private boolean hasConstantKeys() {
+    for (ArgSpec key : map.keySet()) {
+      if (key.containsRandomSymbol() || !key.getFreeVars().isEmpty()) {
+        return false;
+      }
+      try {
+        if (key.getValueIfNonRandom() == null) {
+          return false;
+        }
+      } catch (RuntimeException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns an unmodifiable map from the values of the keys of this map to
+   * the corresponding unevaluated values, if all the keys are constant, and
+   * null otherwise. The table is built once, on first use, so that looking up
+   * a key (e.g., selecting the branch of a case or if expression) does not
+   * evaluate all the keys again.
+   */
+  Map<Object, Object> getDispatchTable() {
+    if (!constantKeys) {
+      return null;
+    }
+    Map<Object, Object> table = dispatchTable;
+    if (table == null) {
+      // Built lazily rather than at compile time, so that a deserialized model
+      // hashes its keys only once they are fully read.
+      HashMap<Object, Object> newTable = new HashMap<Object, Object>();
+      for (Map.Entry<ArgSpec, Object> entry : map.entrySet()) {
+        newTable.put(entry.getKey().getValueIfNonRandom(), entry.getValue());
+      }
+      table = Collections.unmodifiableMap(newTable);
+      dispatchTable = table;
+    }
+    return table;
+  }
+
+  /**
+   * Returns a map from the values of the keys of this map in the given context
+   * to the values of this map, which are evaluated too unless this map is
+   * lazily evaluated.
+   */
   public Map<Object, Object> evaluate(EvalContext context) {
+    Map<Object, Object> table = getDispatchTable();
+    if (table != null) {
+      if (lazyEval) {
+        return table;
+      }
+      HashMap<Object, Object> newmap = new HashMap<Object, Object>();
+      for (Map.Entry<Object, Object> entry : table.entrySet()) {
+        Object v = entry.getValue();
+        if (v instanceof ArgSpec)
+          v = ((ArgSpec) v).evaluate(context);
+        newmap.put(entry.getKey(), v);
+      }
+      return newmap;
+    }
     HashMap<Object, Object> newmap = new HashMap<Object, Object>();
     for (Map.Entry<ArgSpec, Object> entry : map.entrySet()) {
       Object k = entry.getKey().evaluate(context);
@@ -176,6 +244,7 @@ public class MapSpec extends ArgSpec {
         map.put(keys.get(i), dis);
       }
     }
+    dispatchTable = null;
     return errors;
   }
 
@@ -37,6 +37,7 @@ package blog.model;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -72,18 +73,27 @@ import blog.world.PartialWorld;
  * 
  * @author leili
  */
-public class Model {
+public class Model implements Serializable {
   /**
    * The BLOG null value. We use this object rather than the Java null value so
    * that we can always use <code>equals</code> to compare BLOG objects, and
    * methods can return null as an error indicator without worrying about the
    * possibility that a BLOG value might actually be null.
    */
-  public static final Object NULL = new Object() {
+  public static final Object NULL = new NullObject();
+
+  /**
+   * Class of {@link #NULL}, which resolves to {@link #NULL} when deserialized.
+   */
+  private static class NullObject implements Serializable {
     public String toString() {
       return "<null>";
     }
-  };
+
+    private Object readResolve() {
+      return NULL;
+    }
+  }
 
   /**
    * Class constructor.
@@ -96,6 +106,7 @@ public class Model {
    */
   public Model(Model another) {
     types = new ArrayList<Type>(another.types);
+    typesByName = new HashMap<String, Type>(another.typesByName);
     functions = new ArrayList<Function>(another.functions);
     functionsByName = new HashMap<String, List<Function>>(
         another.functionsByName);
@@ -151,9 +162,46 @@ public class Model {
   public Type addType(String typeName) {
     Type type = new Type(typeName);
     types.add(type);
+    typesByName.put(typeName, type);
     return type;
   }
 
+  /**
+   * Returns the type with the given name: a user-defined type of this model,
+   * an array type obtained from {@link #getArrayType(Type)}, or a built-in
+   * type. Returns null if there is no such type. Unlike
+   * {@link Type#getType(String)}, this ignores the types declared by other
+   * models loaded in the same JVM.
+   */
+  public Type getType(String typeName) {
+    Type type = typesByName.get(typeName);
+    return (type != null) ? type : BuiltInTypes.getType(typeName);
+  }
+
+  /**
+   * Returns the type of arrays whose elements have the given type. Arrays of
+   * built-in types are shared by all models; arrays of user-defined types
+   * belong to this model.
+   */
+  public ArrayType getArrayType(Type elementType) {
+    String name = ArrayType.nameOf(elementType);
+    Type type = getType(name);
+    if (type == null) {
+      if (BuiltInTypes.getType(elementType.getName()) == elementType) {
+        type = Type.getType(name);
+        if (type == null) {
+          // the first array type created with this name is the shared one
+          new ArrayType(elementType);
+          type = Type.getType(name);
+        }
+      } else {
+        type = new ArrayType(elementType);
+      }
+      typesByName.put(name, type);
+    }
+    return (ArrayType) type;
+  }
+
   /**
    * Returns the user-defined types in this model.
    * 
@@ -189,7 +237,7 @@ public class Model {
     StringTokenizer st = new StringTokenizer(typeList, ", ", false);
     while (st.hasMoreTokens()) {
       String typeName = st.nextToken();
-      Type type = Type.getType(typeName);
+      Type type = getType(typeName);
       if (type == null) {
         System.err.println("Undefined type: " + typeName);
         correct = false;
@@ -702,6 +750,11 @@ public class Model {
    */
   protected List<Type> types = new ArrayList<Type>(); // of Type
 
+  /**
+   * Maps names to the user-defined types and array types of this model.
+   */
+  protected Map<String, Type> typesByName = new HashMap<String, Type>();
+
   /**
    * Stores user-defined Function objects in the order they were declared.
    */
@@ -36,6 +36,7 @@
 package blog.model;
 
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
@@ -47,7 +48,7 @@ import blog.bn.NumberVar;
  * Represents a potential object pattern (POP), which includes the type of
  * object to be generated and a tuple of origin functions.
  */
-public class POP {
+public class POP implements Serializable {
 	/**
 	 * Creates a new potential object pattern for the given type and the given
 	 * tuple of origin functions, with the given dependency model.
@@ -60,7 +60,7 @@ public class Queries extends ArrayList<Query> {
    */
   public void reset() {
     for (Query q : this) {
-      q.getHistogram().clear();
+      q.resetStats();
     }
   }
 
@@ -35,6 +35,7 @@
 
 package blog.model;
 
+import java.io.Serializable;
 import java.util.Collection;
 
 import blog.bn.BayesNetVar;
@@ -57,7 +58,7 @@ import blog.world.PartialWorld;
  * variables. The other way is to pass in a factor over these variables using
  * <code>setPosterior</code>.
  */
-public interface Query {
+public interface Query extends Serializable {
   /**
    * Returns a collection of (basic or derived) random variables such that the
    * result of this query depends only on the posterior joint distribution for
@@ -98,6 +99,11 @@ public interface Query {
    */
   void updateStats(PartialWorld world);
 
+  /**
+   * Resets the within-run statistics for this query.
+   */
+  void resetStats();
+
   /**
    * Returns an object whose toString method yields a description of the
    * location where this query occurred in an input file.
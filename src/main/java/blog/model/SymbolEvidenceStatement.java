@@ -35,6 +35,7 @@
 
 package blog.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -52,7 +53,7 @@ import blog.world.PartialWorld;
  * Represents a symbol evidence statement, which is of the form <I>{type_name
  * var_name : cond_formula} = { symbol_list }</I>.
  */
-public class SymbolEvidenceStatement {
+public class SymbolEvidenceStatement implements Serializable {
 
   /**
    * Creates a new SymbolEvidenceStatement saying that the objects satisfying
@@ -96,8 +96,6 @@ public class TupleSetSpec extends ArgSpec {
     }
 
     this.cond = cond;
-
-    varValues = new Object[vars.length];
   }
 
   public TupleSetSpec(Term[] terms, LogicalVar[] vars, Formula cond) {
@@ -118,6 +116,25 @@ public class TupleSetSpec extends ArgSpec {
     return cond;
   }
 
+  /**
+   * Returns the implicit set equivalent to this tuple set if it is a set of
+   * single objects, such as <code>{b for Ball b : cond}</code>; otherwise
+   * returns null. The implicit set shares the variable and condition of this
+   * tuple set.
+   */
+  public ImplicitSetSpec toImplicitSetSpec() {
+    if (terms.length != 1 || vars.length != 1) {
+      return null;
+    }
+    // the term is a symbol before scope checking, and the variable after
+    if (terms[0] == vars[0]
+        || (terms[0] instanceof SymbolTerm && ((SymbolTerm) terms[0])
+            .getName().equals(vars[0].getName()))) {
+      return new ImplicitSetSpec(vars[0], cond);
+    }
+    return null;
+  }
+
   /**
    * Given a context, iterates over each assignment to the TupleSetSpec
    * parameters satisfying condition, temporarily placing it in the context and
@@ -139,6 +156,7 @@ public class TupleSetSpec extends ArgSpec {
 
     Multiset s = new HashMultiset();
     boolean undetermined = false;
+    Object[] varValues = new Object[vars.length];
 
     for (int i = 0; i < disjuncts.size(); ++i) {
       // Iterate over assignments that might satisfy disjunct i
@@ -551,5 +569,4 @@ public class TupleSetSpec extends ArgSpec {
   List disjuncts; // of ConjFormula;
   ObjGenGraph[][] objGenGraphs;
 
-  private Object[] varValues; // scratch space for variable values
 }
@@ -35,7 +35,10 @@
 
 package blog.model;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.BitSet;
@@ -48,6 +51,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Represents a type in a BLOG model. Stores a set of potential object patterns
@@ -62,15 +67,14 @@ import java.util.Stack;
  * @author leili
  * @date 2012/11/21
  */
-public class Type {
+public class Type implements Serializable {
   /**
    * Creates a new type with the given name that is not a sub-type of any other
    * type. It initially has no POPs, no origin functions, and no enumerated
    * guaranteed objects.
    */
   public Type(String name) {
-    if (!allTypes.containsKey(name))
-      Type.allTypes.put(name, this);
+    Type.allTypes.putIfAbsent(name, this);
     this.name = name;
   }
 
@@ -417,13 +421,51 @@ public class Type {
   }
 
   public static Type getType(String typeName) {
-    return allTypes.get(typeName);
+    return (typeName == null) ? null : allTypes.get(typeName);
   }
 
-  // Static variables: provide handling for all types
-  private static Map<String, Type> allTypes;
+  /**
+   * Returns true if this type is shared by all models, rather than declared
+   * by one of them: that is, if it is a built-in type.
+   */
+  boolean isShared() {
+    return BuiltInTypes.getType(name) == this;
+  }
+
+  /**
+   * Serializes the types shared by all models as a reference to the type of
+   * the same name in the deserializing JVM.
+   */
+  protected Object writeReplace() throws ObjectStreamException {
+    return isShared() ? new SharedTypeRef(this) : this;
+  }
+
+  private static class SharedTypeRef implements Serializable {
+    SharedTypeRef(Type type) {
+      name = type.getName();
+      if (type instanceof ArrayType) {
+        elementType = ((ArrayType) type).getElementType();
+      }
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+      Type type = (elementType == null) ? BuiltInTypes.getType(name)
+          : new Model().getArrayType(elementType);
+      if (type == null) {
+        throw new InvalidObjectException("Unknown built-in type: " + name);
+      }
+      return type;
+    }
+
+    private String name;
+    private Type elementType;
+  }
+
+  // Static variables: provide handling for all types. Models may be loaded
+  // concurrently (see blog.server.InferenceServer), so the map is concurrent.
+  private static ConcurrentMap<String, Type> allTypes;
   static {
-    allTypes = new HashMap<String, Type>();
+    allTypes = new ConcurrentHashMap<String, Type>();
     BuiltInTypes.ping();
   }
 
@@ -439,5 +481,5 @@ public class Type {
   private boolean infiniteGuaranteed = false;
 
   private Map originFuncsToPOP = new HashMap(); // from BitSet to POP
-  private List range;
+  private transient List range;
 }
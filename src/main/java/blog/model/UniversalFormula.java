@@ -50,6 +50,7 @@ import blog.objgen.CompiledSetSpec;
 import blog.objgen.ObjectIterator;
 import blog.objgen.ObjectSet;
 import blog.sample.EvalContext;
+import blog.sample.SetViews;
 
 /**
  * Represents a universal instantiation for one variable using one expression of
@@ -103,6 +104,15 @@ public class UniversalFormula extends Formula {
   public Object evaluate(EvalContext context) {
     context.pushEvaluee(this);
 
+    SetViews views = SetViews.get(context);
+    if (views != null) {
+      SetViews.Count count = views.count(this, var, cond, context);
+      if (count != null) {
+        context.popEvaluee();
+        return Boolean.valueOf(count.unsatisfied == 0);
+      }
+    }
+
     ObjectSet counterexamples = getCounterexampleSpec().elementSet(context);
     Boolean result = null;
     if (counterexamples.canDetermineIsEmpty()) {
@@ -35,6 +35,7 @@
 
 package blog.model;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -50,7 +51,7 @@ import blog.world.PartialWorld;
  * restricted to be zero-ary functions, so we don't have to worry about
  * evaluating arguments on the righthand side.
  */
-public class ValueEvidenceStatement {
+public class ValueEvidenceStatement implements Serializable {
 
   /**
    * Creates a ValueEvidenceStatement of the form: <code>leftSide</code> =
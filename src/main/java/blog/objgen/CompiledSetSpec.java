@@ -35,6 +35,7 @@
 
 package blog.objgen;
 
+import java.io.Serializable;
 import java.util.List;
 
 import blog.model.ConjFormula;
@@ -57,7 +58,7 @@ import blog.sample.EvalContext;
  * will still return objects that satisfy the other disjuncts after a finite
  * amount of time.
  */
-public class CompiledSetSpec {
+public class CompiledSetSpec implements Serializable {
 	/**
 	 * Creates a new CompiledSetSpec for iterating over all bindings for
 	 * <code>var</code> that satisfy <code>phi</code>.
@@ -1,5 +1,6 @@
 package blog.objgen;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
@@ -7,7 +8,7 @@ import java.util.Set;
 
 import blog.sample.EvalContext;
 
-public abstract class Node {
+public abstract class Node implements Serializable {
 
 	abstract Set getParents();
 
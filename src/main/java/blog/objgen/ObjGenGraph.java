@@ -37,6 +37,8 @@ package blog.objgen;
 
 import java.util.*;
 
+import java.io.Serializable;
+
 import blog.common.AbstractDGraph;
 import blog.common.DGraph;
 import blog.common.Util;
@@ -98,7 +100,7 @@ import blog.sample.EvalContext;
  * TODO: Fix case where term in TermNode evaluates to Model.NULL.
  */
 
-public class ObjGenGraph extends AbstractDGraph {
+public class ObjGenGraph extends AbstractDGraph implements Serializable {
 	/**
 	 * Creates an object generation graph where the target node is satisfied by
 	 * all objects of the given type.
@@ -95,8 +95,9 @@ public abstract class AbstractProposer implements Proposer {
           initWorld.print(System.out);
         }
 
+        // the PartialWorldDiff patches the CBN of its underlying world
         PartialWorld underlying = new DefaultPartialWorld(
-            initWorld.getIdTypes());
+            initWorld.getIdTypes(), true, true);
         return new PartialWorldDiff(underlying, initWorld);
       } else { // world is inconsistent with evidence, try again
         if (Util.verbose()) {
@@ -157,7 +157,6 @@ public class ClassicInstantiatingEvalContext extends ParentRecEvalContext
 
     // Sample new value for var
     CondProbDistrib cpd = distrib.getCPD();
-    cpd.setParams(distrib.getArgValues());
     Object newValue = cpd.sampleVal();
     double logProbForThisValue = cpd.getLogProb(newValue);
     logProb += logProbForThisValue;
@@ -0,0 +1,128 @@
+package blog.sample;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import blog.ObjectIdentifier;
+import blog.bn.BasicVar;
+import blog.bn.NumberVar;
+import blog.common.IndexedHashSet;
+import blog.common.Util;
+import blog.world.PartialWorldDiff;
+import blog.world.WorldDiffListener;
+import blog.world.WorldListener;
+
+/**
+ * Maintains the set of basic variables instantiated in a PartialWorldDiff,
+ * except for a given set of excluded (evidence) variables, so that MCMC
+ * samplers can pick a variable to resample uniformly at random in constant
+ * time. The set is an {@link IndexedHashSet}, updated as the world's variables
+ * change; the changes made since the world was last saved are recorded, so
+ * that they can be undone when it is reverted.
+ */
+public class EligibleVarTracker implements WorldListener, WorldDiffListener {
+
+  /**
+   * Creates a tracker for the given world, initially holding its instantiated
+   * variables that are not in <code>excludedVars</code>, and registers it as a
+   * listener of the world.
+   */
+  public EligibleVarTracker(PartialWorldDiff world, Set excludedVars) {
+    this.world = world;
+    this.excludedVars = excludedVars;
+    for (Iterator iter = world.getInstantiatedVars().iterator(); iter
+        .hasNext();) {
+      Object var = iter.next();
+      if (!excludedVars.contains(var)) {
+        vars.add(var);
+      }
+    }
+    world.addListener(this);
+    world.addDiffListener(this);
+  }
+
+  /**
+   * Returns the world whose variables this tracker maintains.
+   */
+  public PartialWorldDiff getWorld() {
+    return world;
+  }
+
+  /**
+   * Stops listening to the world. The tracker must not be used afterwards.
+   */
+  public void detach() {
+    world.removeListener(this);
+    world.removeDiffListener(this);
+  }
+
+  /**
+   * Returns the number of eligible variables.
+   */
+  public int size() {
+    return vars.size();
+  }
+
+  /**
+   * Returns an eligible variable chosen uniformly at random, or null if there
+   * is none.
+   */
+  public BasicVar sample() {
+    if (vars.isEmpty()) {
+      return null;
+    }
+    return (BasicVar) vars.get(Util.randInt(vars.size()));
+  }
+
+  public void varChanged(BasicVar rv, Object oldValue, Object newValue) {
+    if (excludedVars.contains(rv)) {
+      return;
+    }
+    if (oldValue == null && newValue != null) {
+      if (vars.add(rv)) {
+        changes.add(new Change(rv, true));
+      }
+    } else if (oldValue != null && newValue == null) {
+      if (vars.remove(rv)) {
+        changes.add(new Change(rv, false));
+      }
+    }
+  }
+
+  public void identifierChanged(ObjectIdentifier id, NumberVar oldPOPApp,
+      NumberVar newPOPApp) {
+  }
+
+  public void notifySaved() {
+    changes.clear();
+  }
+
+  public void notifyReverted() {
+    for (int i = changes.size() - 1; i >= 0; --i) {
+      Change change = changes.get(i);
+      if (change.added) {
+        vars.remove(change.var);
+      } else {
+        vars.add(change.var);
+      }
+    }
+    changes.clear();
+  }
+
+  private static class Change {
+    Change(BasicVar var, boolean added) {
+      this.var = var;
+      this.added = added;
+    }
+
+    final BasicVar var;
+    final boolean added;
+  }
+
+  private final PartialWorldDiff world;
+  private final Set excludedVars;
+  private final IndexedHashSet vars = new IndexedHashSet();
+  private final List<Change> changes = new ArrayList<Change>(); // since save
+}
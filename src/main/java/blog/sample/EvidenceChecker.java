@@ -0,0 +1,267 @@
+package blog.sample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import blog.ObjectIdentifier;
+import blog.bn.BasicVar;
+import blog.bn.BayesNetVar;
+import blog.bn.DerivedVar;
+import blog.bn.NumberVar;
+import blog.bn.RandFuncAppVar;
+import blog.common.HashMultiMap;
+import blog.common.MultiMap;
+import blog.model.Evidence;
+import blog.model.SkolemConstant;
+import blog.model.SymbolEvidenceStatement;
+import blog.model.ValueEvidenceStatement;
+import blog.world.PartialWorldDiff;
+import blog.world.WorldDiffListener;
+import blog.world.WorldListener;
+
+/**
+ * Checks whether evidence is true in the current version of a PartialWorldDiff
+ * by re-evaluating only the evidence statements that depend on the variables
+ * changed since the world was last saved. For the saved version of the world,
+ * the checker records which basic variables each statement's truth value
+ * depends on, and indexes the statements by these variables.
+ *
+ * <p>
+ * The result of {@link #isTrue()} is recorded in the index when the world is
+ * next saved, provided the world has not changed in between. If the world is
+ * saved after changes that were not checked, the whole evidence is
+ * re-evaluated on the next check. So is it when the proposed world changes the
+ * objects that identifiers stand for, since the index does not track them.
+ */
+public class EvidenceChecker implements WorldListener, WorldDiffListener {
+
+  /**
+   * Creates a checker for the given evidence and world, and registers it as a
+   * listener of the world.
+   */
+  public EvidenceChecker(Evidence evidence, PartialWorldDiff world) {
+    this.evidence = evidence;
+    this.world = world;
+    for (SymbolEvidenceStatement stmt : evidence.getSymbolEvidence()) {
+      statements.add(new Statement(stmt));
+    }
+    for (ValueEvidenceStatement stmt : evidence.getValueEvidence()) {
+      statements.add(new Statement(stmt));
+    }
+    world.addListener(this);
+    world.addDiffListener(this);
+  }
+
+  /**
+   * Returns the evidence checked by this checker.
+   */
+  public Evidence getEvidence() {
+    return evidence;
+  }
+
+  /**
+   * Returns the world in which this checker checks the evidence.
+   */
+  public PartialWorldDiff getWorld() {
+    return world;
+  }
+
+  /**
+   * Returns true if this checker covers all the statements of its evidence;
+   * false if statements have been added to the evidence since the checker was
+   * created.
+   */
+  public boolean isUpToDate() {
+    return statements.size() == evidence.getSymbolEvidence().size()
+        + evidence.getValueEvidence().size();
+  }
+
+  /**
+   * Stops listening to the world. The checker must not be used afterwards.
+   */
+  public void detach() {
+    world.removeListener(this);
+    world.removeDiffListener(this);
+  }
+
+  /**
+   * Returns true if the evidence is true in the current version of the world.
+   */
+  public boolean isTrue() {
+    pending = new LinkedHashMap<Statement, Outcome>();
+    int numFalse = 0;
+    if (stale || !world.getIdsWithChangedPOPApps().isEmpty()) {
+      for (Statement stmt : statements) {
+        Outcome outcome = stmt.evaluate(world);
+        pending.put(stmt, outcome);
+        if (!outcome.isTrue) {
+          ++numFalse;
+        }
+      }
+    } else {
+      numFalse = numFalseInSaved;
+      for (Iterator iter = world.getChangedVars().iterator(); iter.hasNext();) {
+        Set affected = (Set) varToStatements.get(iter.next());
+        for (Iterator stmtIter = affected.iterator(); stmtIter.hasNext();) {
+          Statement stmt = (Statement) stmtIter.next();
+          if (pending.containsKey(stmt)) {
+            continue;
+          }
+          Outcome outcome = stmt.evaluate(world);
+          pending.put(stmt, outcome);
+          if (!stmt.isTrue) {
+            --numFalse;
+          }
+          if (!outcome.isTrue) {
+            ++numFalse;
+          }
+        }
+      }
+    }
+    checked = true;
+    return numFalse == 0;
+  }
+
+  public void varChanged(BasicVar var, Object oldValue, Object newValue) {
+    checked = false;
+    changedSinceSave = true;
+  }
+
+  public void identifierChanged(ObjectIdentifier id, NumberVar oldPOPApp,
+      NumberVar newPOPApp) {
+    checked = false;
+    changedSinceSave = true;
+  }
+
+  public void notifySaved() {
+    if (checked && pending != null) {
+      if (stale) {
+        varToStatements.clear();
+        numFalseInSaved = 0;
+      }
+      for (Map.Entry<Statement, Outcome> entry : pending.entrySet()) {
+        record(entry.getKey(), entry.getValue());
+      }
+      stale = false;
+    } else if (changedSinceSave) {
+      stale = true;
+    }
+    resetCheck();
+  }
+
+  public void notifyReverted() {
+    resetCheck();
+  }
+
+  private void resetCheck() {
+    pending = null;
+    checked = false;
+    changedSinceSave = false;
+  }
+
+  /**
+   * Records the outcome of evaluating the given statement in the saved world.
+   */
+  private void record(Statement stmt, Outcome outcome) {
+    if (!stale) {
+      for (Iterator iter = stmt.parents.iterator(); iter.hasNext();) {
+        varToStatements.remove(iter.next(), stmt);
+      }
+      if (!stmt.isTrue) {
+        --numFalseInSaved;
+      }
+    }
+    for (Iterator iter = outcome.parents.iterator(); iter.hasNext();) {
+      varToStatements.add(iter.next(), stmt);
+    }
+    if (!outcome.isTrue) {
+      ++numFalseInSaved;
+    }
+    stmt.parents = outcome.parents;
+    stmt.isTrue = outcome.isTrue;
+  }
+
+  /**
+   * An evidence statement, with its truth value and the variables this value
+   * depends on in the saved world.
+   */
+  private static class Statement {
+    Statement(Object stmt) {
+      this.stmt = stmt;
+    }
+
+    /**
+     * Returns the truth value of this statement in the given world, and the
+     * variables it depends on there.
+     */
+    Outcome evaluate(PartialWorldDiff w) {
+      Set parents = new HashSet();
+      boolean isTrue;
+      if (stmt instanceof ValueEvidenceStatement) {
+        ValueEvidenceStatement valueStmt = (ValueEvidenceStatement) stmt;
+        BayesNetVar var = valueStmt.getObservedVar();
+        Object value;
+        if (var instanceof BasicVar) {
+          parents.add(var);
+          value = w.getValue((BasicVar) var);
+        } else {
+          value = evaluateDerived((DerivedVar) var, w, parents);
+        }
+        isTrue = valueStmt.getObservedValue().equals(value);
+      } else {
+        SymbolEvidenceStatement symbolStmt = (SymbolEvidenceStatement) stmt;
+        evaluateDerived(symbolStmt.getObservedVar(), w, parents);
+        for (SkolemConstant sym : symbolStmt.getSkolemConstants()) {
+          parents.add(new RandFuncAppVar(sym, Collections.EMPTY_LIST));
+        }
+        isTrue = symbolStmt.isTrue(w);
+      }
+      return new Outcome(parents, isTrue);
+    }
+
+    private static Object evaluateDerived(DerivedVar var, PartialWorldDiff w,
+        Set parents) {
+      ParentRecEvalContext context = new ParentRecEvalContext(w, false);
+      context.pushEvaluee(var);
+      Object value = var.getValue(context);
+      context.popEvaluee();
+      parents.addAll(context.getParents());
+      if (context.getLatestUninstParent() != null) {
+        parents.add(context.getLatestUninstParent());
+      }
+      return value;
+    }
+
+    final Object stmt; // ValueEvidenceStatement or SymbolEvidenceStatement
+    Set parents = Collections.EMPTY_SET;
+    boolean isTrue = true;
+  }
+
+  private static class Outcome {
+    Outcome(Set parents, boolean isTrue) {
+      this.parents = parents;
+      this.isTrue = isTrue;
+    }
+
+    final Set parents;
+    final boolean isTrue;
+  }
+
+  private final Evidence evidence;
+  private final PartialWorldDiff world;
+  private final List<Statement> statements = new ArrayList<Statement>();
+  private final MultiMap varToStatements = new HashMultiMap();
+  private int numFalseInSaved = 0;
+
+  // true if the index does not describe the saved world
+  private boolean stale = true;
+  private Map<Statement, Outcome> pending = null;
+  private boolean checked = false;
+  private boolean changedSinceSave = false;
+}
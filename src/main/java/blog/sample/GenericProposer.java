@@ -46,6 +46,7 @@ import blog.bn.VarWithDistrib;
 import blog.common.Util;
 import blog.distrib.CondProbDistrib;
 import blog.model.DependencyModel;
+import blog.model.Evidence;
 import blog.model.Model;
 import blog.world.PartialWorld;
 import blog.world.PartialWorldDiff;
@@ -93,7 +94,38 @@ public class GenericProposer extends AbstractProposer {
     }
   }
 
+  /**
+   * Adds extra evidence to the evidence the proposer must consider, and
+   * discards the eligible variables maintained so far since they may now
+   * include evidence variables.
+   */
+  public void add(Evidence evidence) {
+    super.add(evidence);
+    if (eligibleVars != null) {
+      eligibleVars.detach();
+      eligibleVars = null;
+    }
+  }
+
+  /**
+   * Picks a non-evidence variable uniformly at random from the instantiated
+   * variables of <code>world</code>. If <code>world</code> is a
+   * PartialWorldDiff, the eligible variables are maintained incrementally by an
+   * {@link EligibleVarTracker}, so this takes constant time.
+   */
   protected PickVarToSampleResult pickVarToSample(PartialWorld world) {
+    if (world instanceof PartialWorldDiff) {
+      if (eligibleVars == null || eligibleVars.getWorld() != world) {
+        if (eligibleVars != null) {
+          eligibleVars.detach();
+        }
+        eligibleVars = new EligibleVarTracker((PartialWorldDiff) world,
+            evidenceVars);
+      }
+      return new PickVarToSampleResult(
+          (VarWithDistrib) eligibleVars.sample(), eligibleVars.size());
+    }
+
     Set eligibleVars = new HashSet(world.getInstantiatedVars());
     eligibleVars.removeAll(evidenceVars);
 
@@ -200,15 +232,13 @@ public class GenericProposer extends AbstractProposer {
     DependencyModel.Distrib distrib = varToSample
         .getDistrib(new DefaultEvalContext(world, true));
     CondProbDistrib cpd = distrib.getCPD();
-    cpd.setParams(distrib.getArgValues());
     Object oldValue = world.getValue(varToSample);
     chosenVarOldValue = oldValue;
     logProbBackward += Math.log(cpd.getProb(oldValue));
-
     Object newValue = cpd.sampleVal();
+    logProbForward += Math.log(cpd.getProb(newValue));
     chosenVarNewValue = newValue;
     world.setValue(varToSample, newValue);
-    logProbForward += Math.log(cpd.getProb(newValue));
 
     // Make the world self-supporting. The only variables whose active
     // parent sets could have changed are the children of varToSample.
@@ -228,6 +258,7 @@ public class GenericProposer extends AbstractProposer {
 
   // The following are for debugger use only!
 
+  private EligibleVarTracker eligibleVars = null;
   private VarWithDistrib chosenVar = null;
   private Object chosenVarOldValue = null;
   private Object chosenVarNewValue = null;
@@ -90,19 +90,22 @@ public class GibbsSampler extends MHSampler {
      * world is minimal and self supported.
      */
     public void nextSample() {
-        // Find Nonevidence Variables in Current World
-		Set eligibleVars = new HashSet(curWorld.getInstantiatedVars());
-		eligibleVars.removeAll(evidenceVars);
+        // Track Nonevidence Variables in Current World
+        if (eligibleVars == null || eligibleVars.getWorld() != curWorld) {
+            if (eligibleVars != null)
+                eligibleVars.detach();
+            eligibleVars = new EligibleVarTracker(curWorld, evidenceVars);
+        }
 		++totalNumSamples;
 		++numSamplesThisTrial;
 
         // Return if no vars to sample
-        if (eligibleVars.isEmpty())
+        if (eligibleVars.size() == 0)
             return;
 
         // Find Variable to Sample
         VarWithDistrib varToSample = 
-                (VarWithDistrib) Util.uniformSample(eligibleVars);
+                (VarWithDistrib) eligibleVars.sample();
 
 		if (Util.verbose())
 			System.out.println("Sampling " + varToSample);
@@ -211,4 +214,7 @@ public class GibbsSampler extends MHSampler {
     // Generic Proposer to Handle the
 
     protected PartialWorldDiff curWorld = null;
+
+    // Nonevidence variables instantiated in curWorld
+    private EligibleVarTracker eligibleVars = null;
 }
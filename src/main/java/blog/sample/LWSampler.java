@@ -42,6 +42,7 @@ import java.util.Set;
 
 import blog.BLOGUtil;
 import blog.bn.BayesNetVar;
+import blog.common.Metrics;
 import blog.common.Util;
 import blog.model.Evidence;
 import blog.model.Model;
@@ -116,10 +117,18 @@ public class LWSampler extends Sampler {
       curWorld = baseWorld;
     else
       curWorld = new DefaultPartialWorld(idTypes);
+    int numVarsBefore = Metrics.isEnabled() ? curWorld.getInstantiatedVars()
+        .size() : 0;
 
+    long startTime = Metrics.startTime();
     latestSampleLogWeight = supportEvidenceAndCalculateLogWeight();
+    EVIDENCE_TIME.recordSince(startTime);
     BLOGUtil.ensureDetAndSupported(queryVars, curWorld);
 
+    SAMPLES.increment();
+    if (Metrics.isEnabled()) {
+      SAMPLE_VARS.record(curWorld.getInstantiatedVars().size() - numVarsBefore);
+    }
     ++totalNumSamples;
     ++numSamplesThisTrial;
     if (latestSampleLogWeight > NEGLIGIBLE_LOG_WEIGHT) {
@@ -178,6 +187,12 @@ public class LWSampler extends Sampler {
     }
   }
 
+  private static final Metrics.Counter SAMPLES = Metrics.counter("samples");
+  private static final Metrics.Recorder EVIDENCE_TIME = Metrics
+      .recorder("lw.evidence.ns");
+  private static final Metrics.Recorder SAMPLE_VARS = Metrics
+      .recorder("sample.vars");
+
   protected Set<Type> idTypes; // of Type
   protected List<BayesNetVar> queryVars = new ArrayList<BayesNetVar>();
 
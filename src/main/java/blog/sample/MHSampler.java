@@ -42,6 +42,7 @@ import java.util.Set;
 
 import blog.bn.BayesNetVar;
 import blog.bn.NumberVar;
+import blog.common.Metrics;
 import blog.common.Timer;
 import blog.common.Util;
 import blog.model.Evidence;
@@ -62,6 +63,11 @@ import blog.world.PartialWorldDiff;
  * <dt>proposerClass
  * <dd>Name of the proposer class to use. This class must implement the Proposer
  * interface. Default: blog.GenericProposer.
+ * <dt>incrementalSets
+ * <dd>Whether to maintain the counts of cardinality specifications, sizes of
+ * sets of single objects and quantified formulas incrementally across
+ * proposals (see {@link SetViews}), instead of enumerating their objects on
+ * every evaluation. Default: false.
  * </dl>
  * The property table is also passed to the proposer's constructor.
  */
@@ -80,6 +86,15 @@ public class MHSampler extends Sampler {
   public MHSampler(Model model, Properties properties) {
     super(model);
     constructProposer(properties);
+
+    String incrementalSetsStr = properties.getProperty("incrementalSets",
+        "false");
+    if (incrementalSetsStr.equals("true")) {
+      incrementalSets = true;
+    } else if (!incrementalSetsStr.equals("false")) {
+      Util.fatalErrorWithoutStack("Invalid value for incrementalSets: "
+          + incrementalSetsStr);
+    }
   }
 
   /** Method responsible for initializing the proposer field. */
@@ -149,9 +164,18 @@ public class MHSampler extends Sampler {
    */
   public void nextSample() {
     curWorld.save(); // make sure we start with saved world.
+    if (incrementalSets
+        && (setViews == null || setViews.getWorld() != curWorld)) {
+      if (setViews != null) {
+        setViews.detach();
+      }
+      setViews = new SetViews(curWorld);
+    }
 
     ++totalNumSamples;
     ++numSamplesThisTrial;
+    SAMPLES.increment();
+    PROPOSALS.increment();
 
     // Propose new world and get log proposal ratio, which is:
     // log (q(x | x') / q(x' | x))
@@ -162,7 +186,12 @@ public class MHSampler extends Sampler {
     if (Util.verbose()) {
       System.out.println("Proposing world...");
     }
+    long startTime = Metrics.startTime();
     double logProposalRatio = proposer.proposeNextState(curWorld);
+    PROPOSE_TIME.recordSince(startTime);
+    if (Metrics.isEnabled()) {
+      CHANGED_VARS.record(curWorld.getChangedVars().size());
+    }
     if (Util.verbose()) {
       System.out.println();
       System.out.println("\tlog proposal ratio: " + logProposalRatio);
@@ -174,6 +203,7 @@ public class MHSampler extends Sampler {
 
     // Compute the acceptance probability
     acceptProbTimer.start();
+    startTime = Metrics.startTime();
     double logProbRatio = computeLogProbRatio(curWorld.getSaved(), curWorld);
     latestLogProbRatio = logProbRatio;
     if (Util.verbose()) {
@@ -185,12 +215,16 @@ public class MHSampler extends Sampler {
       System.out.println("\tlog acceptance ratio: " + logAcceptRatio);
     }
     acceptProbTimer.stop();
+    LOG_PROB_RATIO_TIME.recordSince(startTime);
 
     // Accept or reject proposal
     if ((logAcceptRatio >= 0) || (Util.random() < Math.exp(logAcceptRatio))) {
       worldUpdateTimer.start();
+      startTime = Metrics.startTime();
       curWorld.save();
+      SAVE_TIME.recordSince(startTime);
       worldUpdateTimer.stop();
+      ACCEPTED.increment();
       if (Util.verbose()) {
         System.out.println("\taccepted");
       }
@@ -199,7 +233,9 @@ public class MHSampler extends Sampler {
       latestAccepted = true;
       proposer.updateStats(true);
     } else {
+      startTime = Metrics.startTime();
       curWorld.revert(); // clean slate for next proposal
+      REVERT_TIME.recordSince(startTime);
       if (Util.verbose()) {
         System.out.println("\trejected");
       }
@@ -261,7 +297,10 @@ public class MHSampler extends Sampler {
   public double computeLogProbRatio(PartialWorld savedWorld,
       PartialWorldDiff proposedWorld) {
     double logProbRatio = 0;
-    if (!evidence.isTrue(proposedWorld)) {
+    long startTime = Metrics.startTime();
+    boolean evidenceTrue = isEvidenceTrue(savedWorld, proposedWorld);
+    EVIDENCE_TIME.recordSince(startTime);
+    if (!evidenceTrue) {
       logProbRatio = Double.NEGATIVE_INFINITY;
       return logProbRatio;
     }
@@ -307,6 +346,28 @@ public class MHSampler extends Sampler {
     return logProbRatio;
   }
 
+  /**
+   * Returns true if the evidence is true in <code>proposedWorld</code>. When
+   * <code>savedWorld</code> is the saved version of <code>proposedWorld</code>,
+   * an {@link EvidenceChecker} re-evaluates only the evidence statements that
+   * depend on the variables the proposal changed.
+   */
+  private boolean isEvidenceTrue(PartialWorld savedWorld,
+      PartialWorldDiff proposedWorld) {
+    if (savedWorld != proposedWorld.getSaved()) {
+      return evidence.isTrue(proposedWorld);
+    }
+    if (evidenceChecker == null || evidenceChecker.getWorld() != proposedWorld
+        || evidenceChecker.getEvidence() != evidence
+        || !evidenceChecker.isUpToDate()) {
+      if (evidenceChecker != null) {
+        evidenceChecker.detach();
+      }
+      evidenceChecker = new EvidenceChecker(evidence, proposedWorld);
+    }
+    return evidenceChecker.isTrue();
+  }
+
   private double computeLogMultRatio(PartialWorld savedWorld,
       PartialWorldDiff proposedWorld) {
     double logMultRatio = 0;
@@ -400,6 +461,14 @@ public class MHSampler extends Sampler {
     proposer.printStats();
   }
 
+  /**
+   * Returns the fraction of proposals accepted since the last call to
+   * <code>initialize</code>, or NaN if no sample was generated since then.
+   */
+  public double getAcceptanceRate() {
+    return numAcceptedThisTrial / (double) numSamplesThisTrial;
+  }
+
   // The following are for debugger use only!
 
   public boolean latestAccepted;
@@ -412,6 +481,24 @@ public class MHSampler extends Sampler {
 
   // End of debugger-only members.
 
+  private static final Metrics.Counter SAMPLES = Metrics.counter("samples");
+  private static final Metrics.Counter PROPOSALS = Metrics
+      .counter("mh.proposals");
+  private static final Metrics.Counter ACCEPTED = Metrics
+      .counter("mh.accepted");
+  private static final Metrics.Recorder PROPOSE_TIME = Metrics
+      .recorder("mh.propose.ns");
+  private static final Metrics.Recorder LOG_PROB_RATIO_TIME = Metrics
+      .recorder("mh.logProbRatio.ns");
+  private static final Metrics.Recorder SAVE_TIME = Metrics
+      .recorder("world.save.ns");
+  private static final Metrics.Recorder REVERT_TIME = Metrics
+      .recorder("world.revert.ns");
+  private static final Metrics.Recorder EVIDENCE_TIME = Metrics
+      .recorder("mh.evidence.ns");
+  private static final Metrics.Recorder CHANGED_VARS = Metrics
+      .recorder("mh.changed.vars");
+
   protected Timer acceptProbTimer = new Timer();
   protected Timer worldUpdateTimer = new Timer();
 
@@ -419,6 +506,9 @@ public class MHSampler extends Sampler {
 
   protected PartialWorldDiff curWorld;
   protected PartialWorld baseWorld = null;
+  private EvidenceChecker evidenceChecker = null;
+  private boolean incrementalSets = false;
+  private SetViews setViews = null;
 
   protected int numTrials = 0;
   protected int totalNumSamples = 0;
@@ -107,6 +107,22 @@ public class ParentRecEvalContext extends DefaultEvalContext {
 		return null;
 	}
 
+	/**
+	 * Records the given variable as used, as if its value had been looked up
+	 * with this context. It must be instantiated.
+	 */
+	public void addParent(Object var) {
+		parents.add(var);
+	}
+
+	/**
+	 * Records the given variables as used, as if their values had been looked up
+	 * with this context. They must be instantiated.
+	 */
+	public void addParents(Collection vars) {
+		parents.addAll(vars);
+	}
+
 	/**
 	 * Returns the set of basic random variables that are instantiated and whose
 	 * values have been used in calls to the access methods. This set is backed by
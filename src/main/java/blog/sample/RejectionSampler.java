@@ -41,7 +41,6 @@ import java.util.Properties;
 import blog.bn.BayesNetVar;
 import blog.bn.VarWithDistrib;
 import blog.common.Util;
-import blog.distrib.CondProbDistrib;
 import blog.model.DependencyModel;
 import blog.model.Evidence;
 import blog.model.Model;
@@ -180,8 +179,6 @@ public class RejectionSampler extends Sampler {
         VarWithDistrib var = (VarWithDistrib) iter.next();
         DependencyModel.Distrib distrib = var
             .getDistrib(new DefaultEvalContext(curWorld, false));
-        CondProbDistrib cpd = distrib.getCPD();
-        cpd.setParams(distrib.getArgValues());
         if (distrib == null) {
           if (Util.verbose()) {
             System.out.println("Not supported yet: " + var);
@@ -191,7 +188,7 @@ public class RejectionSampler extends Sampler {
           if (Util.verbose()) {
             System.out.println("Instantiating: " + var);
           }
-          iter.setValue(cpd.sampleVal());
+          iter.setValue(distrib.getCPD().sampleVal());
 
           varInstantiated = true;
           break; // start again from first uninstantiated var
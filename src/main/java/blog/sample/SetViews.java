@@ -0,0 +1,465 @@
+package blog.sample;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import blog.ObjectIdentifier;
+import blog.bn.BasicVar;
+import blog.bn.NumberVar;
+import blog.common.HashMultiMap;
+import blog.common.Metrics;
+import blog.common.MultiMap;
+import blog.model.Formula;
+import blog.model.LogicalVar;
+import blog.model.TrueFormula;
+import blog.objgen.CompiledSetSpec;
+import blog.objgen.ObjectIterator;
+import blog.world.PartialWorld;
+import blog.world.PartialWorldDiff;
+import blog.world.WorldDiffListener;
+import blog.world.WorldListener;
+
+/**
+ * Incrementally maintained counts of the objects that satisfy the conditions
+ * of cardinality specifications and quantified formulas, in a
+ * {@link PartialWorldDiff}. A view is kept for each such expression without
+ * free variables: for every object of the quantified type, whether it
+ * satisfies the condition and the variables this depends on. When the world
+ * changes, only the objects that depend on the changed variables are checked
+ * again, so counting takes time proportional to the change rather than to the
+ * number of objects. As with {@link EvidenceChecker}, the views describe the
+ * saved version of the world; the counts in the current version are kept
+ * pending until the world is saved, and dropped if it is reverted.
+ *
+ * <p>
+ * A view is rebuilt from scratch when the set of objects itself may have
+ * changed (that is, when a variable it depends on, such as a number variable,
+ * or the identifiers of the world change). A view does not answer when some
+ * object cannot be determined to satisfy the condition or not; the expression
+ * is then evaluated as usual.
+ */
+public class SetViews implements WorldListener, WorldDiffListener {
+
+  /**
+   * Creates views of the given world, and attaches them to it so that
+   * expressions evaluated in it use them.
+   */
+  public SetViews(PartialWorldDiff world) {
+    this.world = world;
+    world.addListener(this);
+    world.addDiffListener(this);
+    world.setSetViews(this);
+  }
+
+  /**
+   * Returns the views attached to the world of the given context, or null if
+   * there are none.
+   */
+  public static SetViews get(EvalContext context) {
+    PartialWorld w = context.getPartialWorld();
+    if (w instanceof PartialWorldDiff) {
+      SetViews views = ((PartialWorldDiff) w).getSetViews();
+      if (views != null && views.world == w) {
+        return views;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the world of these views.
+   */
+  public PartialWorldDiff getWorld() {
+    return world;
+  }
+
+  /**
+   * Stops listening to the world and detaches the views from it.
+   */
+  public void detach() {
+    world.removeListener(this);
+    world.removeDiffListener(this);
+    if (world.getSetViews() == this) {
+      world.setSetViews(null);
+    }
+  }
+
+  /**
+   * Returns the numbers of objects that do and do not satisfy
+   * <code>cond</code> when bound to <code>var</code>, in the current version
+   * of the world, or null if they cannot be determined. The view is kept for
+   * <code>expr</code>, the expression being evaluated, which must have no free
+   * variables other than <code>var</code> for the view to be used. If the
+   * context records the variables used (see {@link ParentRecEvalContext}),
+   * the variables that the counts depend on are recorded in it.
+   */
+  public Count count(Object expr, LogicalVar var, Formula cond,
+      EvalContext context) {
+    View view = views.get(expr);
+    if (view == null) {
+      if (views.containsKey(expr)) {
+        return null;
+      }
+      Set<?> freeVars = cond.getFreeVars();
+      boolean closed = freeVars.isEmpty()
+          || (freeVars.size() == 1 && freeVars.contains(var));
+      // built-in types may be infinite, so their objects are not enumerated
+      if (closed && !var.getType().isBuiltIn()) {
+        view = new View(var, cond);
+      }
+      views.put(expr, view);
+      if (view == null) {
+        return null;
+      }
+    }
+    Count count = view.count();
+    if (count == null) {
+      FALLBACKS.increment();
+      return null;
+    }
+    if (context instanceof ParentRecEvalContext) {
+      view.recordParents((ParentRecEvalContext) context);
+    }
+    return count;
+  }
+
+  public void varChanged(BasicVar var, Object oldValue, Object newValue) {
+    ++version;
+    changedVars.add(var);
+  }
+
+  public void identifierChanged(ObjectIdentifier id, NumberVar oldPOPApp,
+      NumberVar newPOPApp) {
+    ++version;
+    idsChanged = true;
+  }
+
+  public void notifySaved() {
+    for (View view : views.values()) {
+      if (view != null) {
+        view.save();
+      }
+    }
+    changedVars.clear();
+    idsChanged = false;
+  }
+
+  public void notifyReverted() {
+    for (View view : views.values()) {
+      if (view != null) {
+        view.pending = null;
+      }
+    }
+    changedVars.clear();
+    idsChanged = false;
+  }
+
+  /**
+   * The numbers of objects that do and do not satisfy a condition.
+   */
+  public static class Count {
+    Count(int satisfied, int unsatisfied) {
+      this.satisfied = satisfied;
+      this.unsatisfied = unsatisfied;
+    }
+
+    public final int satisfied;
+    public final int unsatisfied;
+  }
+
+  /**
+   * Whether an object satisfies the condition of a view, and the variables
+   * this depends on.
+   */
+  private static class Member {
+    Member(boolean satisfied, Set<?> parents) {
+      this.satisfied = satisfied;
+      this.parents = parents;
+    }
+
+    final boolean satisfied;
+    final Set<?> parents; // of BayesNetVar
+  }
+
+  /**
+   * The members of a view in one version of the world.
+   */
+  private static class State {
+    Set<?> structure = Collections.emptySet(); // vars the objects depend on
+    Map<Object, Member> members = new HashMap<Object, Member>();
+    MultiMap varToObjs = new HashMultiMap();
+    Map<Object, Integer> parentCounts = new HashMap<Object, Integer>();
+    int numSatisfied = 0;
+
+    void add(Object obj, Member member) {
+      members.put(obj, member);
+      for (Object parent : member.parents) {
+        varToObjs.add(parent, obj);
+        Integer n = parentCounts.get(parent);
+        parentCounts.put(parent, (n == null) ? 1 : n.intValue() + 1);
+      }
+      if (member.satisfied) {
+        ++numSatisfied;
+      }
+    }
+
+    void remove(Object obj) {
+      Member member = members.remove(obj);
+      for (Object parent : member.parents) {
+        varToObjs.remove(parent, obj);
+        int n = parentCounts.get(parent).intValue();
+        if (n <= 1) {
+          parentCounts.remove(parent);
+        } else {
+          parentCounts.put(parent, n - 1);
+        }
+      }
+      if (member.satisfied) {
+        --numSatisfied;
+      }
+    }
+
+    Count count() {
+      return new Count(numSatisfied, members.size() - numSatisfied);
+    }
+  }
+
+  /**
+   * The counts in the current version of the world: either a complete state,
+   * or the members that changed relative to the saved state.
+   */
+  private static class Pending {
+    long version;
+    State full;
+    Map<Object, Member> changed;
+    Count count;
+  }
+
+  private class View {
+    View(LogicalVar var, Formula cond) {
+      this.var = var;
+      this.cond = cond;
+      candidateSpec = new CompiledSetSpec(var, TrueFormula.TRUE);
+    }
+
+    Count count() {
+      if (pending != null && pending.version == version) {
+        return pending.count;
+      }
+      pending = null;
+      Pending p = (saved == null || structureChanged()) ? rebuild()
+          : update();
+      if (p == null) {
+        return null;
+      }
+      p.version = version;
+      if (p.full != null && world.getChangedVars().isEmpty()
+          && world.getIdsWithChangedPOPApps().isEmpty()) {
+        // the current version is the saved one
+        saved = p.full;
+        staleVars.clear();
+      } else {
+        pending = p;
+      }
+      return p.count;
+    }
+
+    /**
+     * Records the variables that the current counts depend on.
+     */
+    void recordParents(ParentRecEvalContext context) {
+      if (pending != null && pending.full != null) {
+        context.addParents(pending.full.structure);
+        context.addParents(pending.full.parentCounts.keySet());
+        return;
+      }
+      context.addParents(saved.structure);
+      if (pending == null || pending.changed.isEmpty()) {
+        context.addParents(saved.parentCounts.keySet());
+        return;
+      }
+      Map<Object, Integer> delta = new HashMap<Object, Integer>();
+      for (Map.Entry<Object, Member> entry : pending.changed.entrySet()) {
+        addAll(delta, saved.members.get(entry.getKey()).parents, -1);
+        addAll(delta, entry.getValue().parents, 1);
+      }
+      for (Map.Entry<Object, Integer> entry : saved.parentCounts.entrySet()) {
+        Integer d = delta.remove(entry.getKey());
+        if (d == null || entry.getValue().intValue() + d.intValue() > 0) {
+          context.addParent(entry.getKey());
+        }
+      }
+      for (Map.Entry<Object, Integer> entry : delta.entrySet()) {
+        if (entry.getValue().intValue() > 0) {
+          context.addParent(entry.getKey());
+        }
+      }
+    }
+
+    void save() {
+      if (pending != null && pending.version == version) {
+        if (pending.full != null) {
+          saved = pending.full;
+        } else {
+          for (Map.Entry<Object, Member> entry : pending.changed.entrySet()) {
+            saved.remove(entry.getKey());
+            saved.add(entry.getKey(), entry.getValue());
+          }
+        }
+        staleVars.clear();
+      } else if (idsChanged) {
+        saved = null;
+        staleVars.clear();
+      } else if (saved != null) {
+        // not evaluated since the last change: catch up on the next count
+        staleVars.addAll(changedVars);
+      }
+      pending = null;
+    }
+
+    private boolean structureChanged() {
+      if (!world.getIdsWithChangedPOPApps().isEmpty()) {
+        return true;
+      }
+      return intersects(world.getChangedVars(), saved.structure)
+          || intersects(staleVars, saved.structure);
+    }
+
+    /**
+     * Evaluates the condition on every object.
+     */
+    private Pending rebuild() {
+      long startTime = Metrics.startTime();
+      ParentRecEvalContext context = new ParentRecEvalContext(world, false);
+      ObjectIterator iter = candidateSpec.elementSet(context).iterator(
+          Collections.EMPTY_SET);
+      State state = new State();
+      while (iter.hasNext()) {
+        Object obj = iter.next();
+        Member member = evaluate(obj);
+        if (member == null) {
+          return null;
+        }
+        state.add(obj, member);
+      }
+      if (!iter.canDetermineNext() || context.getLatestUninstParent() != null) {
+        return null;
+      }
+      state.structure = context.getParents();
+      Pending p = new Pending();
+      p.full = state;
+      p.count = state.count();
+      REBUILD_TIME.recordSince(startTime);
+      return p;
+    }
+
+    /**
+     * Evaluates the condition on the objects that depend on changed
+     * variables.
+     */
+    private Pending update() {
+      Pending p = new Pending();
+      p.changed = new HashMap<Object, Member>();
+      p.count = new Count(saved.numSatisfied, saved.members.size()
+          - saved.numSatisfied);
+      if (!update(world.getChangedVars(), p) || !update(staleVars, p)) {
+        return null;
+      }
+      UPDATED.add(p.changed.size());
+      return p;
+    }
+
+    /**
+     * Evaluates the condition on the objects that depend on the given
+     * variables and are not in <code>p</code> yet, adding them to
+     * <code>p</code>. Returns false if some object cannot be evaluated.
+     */
+    private boolean update(Set<?> vars, Pending p) {
+      int numSatisfied = p.count.satisfied;
+      for (Object var : vars) {
+        for (Object obj : (Set<?>) saved.varToObjs.get(var)) {
+          if (p.changed.containsKey(obj)) {
+            continue;
+          }
+          Member member = evaluate(obj);
+          if (member == null) {
+            return false;
+          }
+          p.changed.put(obj, member);
+          if (saved.members.get(obj).satisfied) {
+            --numSatisfied;
+          }
+          if (member.satisfied) {
+            ++numSatisfied;
+          }
+        }
+      }
+      p.count = new Count(numSatisfied, saved.members.size() - numSatisfied);
+      return true;
+    }
+
+    /**
+     * Returns whether the given object satisfies the condition in the current
+     * version of the world, or null if that cannot be determined.
+     */
+    private Member evaluate(Object obj) {
+      ParentRecEvalContext context = new ParentRecEvalContext(world, false);
+      context.assign(var, obj);
+      Boolean value = (Boolean) cond.evaluate(context);
+      if (value == null || context.getLatestUninstParent() != null) {
+        // Undetermined, or determined despite an uninstantiated variable,
+        // which evaluating in the caller's context would report.
+        return null;
+      }
+      return new Member(value.booleanValue(), context.getParents());
+    }
+
+    final LogicalVar var;
+    final Formula cond;
+    final CompiledSetSpec candidateSpec; // all objects of the type
+    State saved; // null if unknown
+    // vars changed between the saved state and the saved version of the world
+    Set<BasicVar> staleVars = new HashSet<BasicVar>();
+    Pending pending;
+  }
+
+  private static boolean intersects(Set<?> a, Set<?> b) {
+    if (a.size() > b.size()) {
+      Set<?> tmp = a;
+      a = b;
+      b = tmp;
+    }
+    for (Object obj : a) {
+      if (b.contains(obj)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void addAll(Map<Object, Integer> counts, Set<?> vars, int n) {
+    for (Object var : vars) {
+      Integer count = counts.get(var);
+      counts.put(var, (count == null) ? n : count.intValue() + n);
+    }
+  }
+
+  private static final Metrics.Recorder REBUILD_TIME = Metrics
+      .recorder("setviews.rebuild.ns");
+  private static final Metrics.Counter UPDATED = Metrics
+      .counter("setviews.updated");
+  private static final Metrics.Counter FALLBACKS = Metrics
+      .counter("setviews.fallbacks");
+
+  private final PartialWorldDiff world;
+  // view of each expression, or null if it cannot have one
+  private final Map<Object, View> views = new IdentityHashMap<Object, View>();
+  private long version = 0; // incremented on every change to the world
+  // since the last save or revert
+  private Set<BasicVar> changedVars = new HashSet<BasicVar>();
+  private boolean idsChanged = false;
+}
@@ -54,7 +54,6 @@ public class BlockInstantiatingEvalContextImpl extends
 
     // Sample new value for var
     CondProbDistrib cpd = distrib.getCPD();
-    cpd.setParams(distrib.getArgValues());
     Object newValue = cpd.sampleVal();
     double probForThisValue = cpd.getProb(newValue);
     double logProbForThisValue = Math.log(probForThisValue);
@@ -118,7 +118,6 @@ public class ModularLWSampler extends LWSampler {
     Util.debug("Instantiating: ", var);
     Type varType = var.getType();
     CondProbDistrib cpd = distrib.getCPD();
-    cpd.setParams(distrib.getArgValues());
     Region r = curWorld.getSatisfyingRegion(var);
 
     double logWeight = Double.NEGATIVE_INFINITY;
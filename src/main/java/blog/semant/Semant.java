@@ -244,7 +244,7 @@ public class Semant {
   Type getNameType(NameTy type) {
     Type ty = null;
     String name = type.name.toString();
-    ty = Type.getType(name);
+    ty = model.getType(name);
     if (ty == null) {
       error(type.line, type.col, "Type " + name + " undefined!");
     }
@@ -274,12 +274,9 @@ public class Semant {
 
     if (termType == null) {
       error(type.line, type.col, "Type " + type.typ.toString() + " undefined!");
+      return null;
     }
-
-    ArrayType arrType = new ArrayType(termType);
-    arrType = (ArrayType) Type.getType(arrType.getName());
-
-    return arrType;
+    return model.getArrayType(termType);
   }
 
   /**
@@ -738,7 +735,7 @@ public class Semant {
    */
   void transDec(TypeDec e) {
     String name = e.name.toString();
-    if (Type.getType(name) != null) {
+    if (model.getType(name) != null) {
       error(e.line, e.col, "Type " + name + " already defined!");
     } else {
       model.addType(name);
@@ -932,7 +929,7 @@ public class Semant {
     } else {
       error(e.test.line, e.test.col,
           "Cannot use non-Boolean value as predicate for if clause");
-      System.exit(1);
+      return null;
     }
     CaseSpec ret = new CaseSpec(t, m);
     ret.setInFixedFuncBody(isFixedFuncBody);
@@ -1040,6 +1037,9 @@ public class Semant {
    */
   CardinalitySpec transExpr(NumberExpr e) {
     Object r = transExpr(e.values);
+    if (r instanceof TupleSetSpec) {
+      r = ((TupleSetSpec) r).toImplicitSetSpec();
+    }
     if (r instanceof ImplicitSetSpec) {
       return new CardinalitySpec((ImplicitSetSpec) r);
     } else {
@@ -1273,8 +1273,8 @@ public class Semant {
       for (FunctionDec fd : funs)
         transFuncBody(fd);
 
-      // type checking
-      if (!model.checkTypesAndScope()) {
+      // type checking, unless translation failed and left parts missing
+      if (errorMsg.OK() && !model.checkTypesAndScope()) {
         error(0, 0, "type checking failed");
       }
 
@@ -1297,6 +1297,38 @@ public class Semant {
     return errorMsg.OK();
   }
 
+  /**
+   * Translates the observation and query statements of <code>e</code> to
+   * evidence and queries, for a model that has already been translated.
+   * Declarations are reported as errors, since they would change the model.
+   *
+   * @param e
+   * @return whether any error happened during translating
+   */
+  public boolean transEvidenceAndQueries(Absyn e) {
+    if (e != null && !(e instanceof StmtList)) {
+      error(0, 0, "Invalid program");
+      return false;
+    }
+    for (StmtList stl = (StmtList) e; stl != null; stl = stl.next) {
+      if (stl.head instanceof Dec) {
+        error(stl.head.line, stl.head.col,
+            "Declarations are not allowed with evidence and queries");
+      } else {
+        transStmt(stl.head);
+      }
+    }
+
+    if (!evidence.checkTypesAndScope(model)) {
+      error(0, 0, "type checking failed for evidence");
+    }
+
+    if (!queries.checkTypesAndScope()) {
+      error(0, 0, "type checking failed for query");
+    }
+    return errorMsg.OK();
+  }
+
   public ModelEvidenceQueries getModelEvidenceQueries() {
     return new ModelEvidenceQueries(model, evidence, queries);
   }
@@ -0,0 +1,512 @@
+package blog.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import blog.absyn.Absyn;
+import blog.absyn.Dec;
+import blog.absyn.Stmt;
+import blog.absyn.StmtList;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
+import blog.engine.InferenceEngine;
+import blog.io.JsonWriter;
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.model.Queries;
+import blog.model.Query;
+import blog.msg.ErrorMsg;
+import blog.parse.Parse;
+import blog.semant.Semant;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Resident inference server, started by <code>blog --server=<i>port</i></code>.
+ * It answers inference requests over HTTP on the loopback interface, without
+ * paying for JVM startup on every request, and keeps the compiled models of
+ * recent requests, keyed by the SHA-256 hash of their source, so that
+ * requests on the same model skip parsing and compiling it. Requests run
+ * concurrently on a pool of worker threads, each with its own random stream,
+ * its own evidence and queries, and its own engine.
+ *
+ * <p>
+ * <code>POST /infer</code> takes a JSON object with the following fields:
+ * <dl>
+ * <dt>model
+ * <dd>BLOG source of the model. It may also contain evidence and queries,
+ * which are used for every request on this model.
+ *
+ * <dt>evidence
+ * <dd>BLOG source with the evidence and queries of this request (optional).
+ * Declarations are not allowed.
+ *
+ * <dt>properties
+ * <dd>Object of inference properties, such as <code>engineClass</code>,
+ * <code>numSamples</code> or <code>samplerClass</code>, that override the
+ * properties the server was started with (optional).
+ *
+ * <dt>seed
+ * <dd>Seed of the random stream of this request (optional; by default, the
+ * stream is split off the server's).
+ * </dl>
+ * The response is a stream of JSON objects, one per line: first
+ * <code>{"model": <i>hash</i>, "cached": <i>boolean</i>}</code>, then the
+ * query results in the format of {@link JsonWriter}, one line each time the
+ * engine reports them (once for sampling engines, once per timestep for
+ * particle filters), and finally <code>{"done": true, "elapsed":
+ * <i>seconds</i>}</code>. Invalid requests get status 400 and
+ * <code>{"error": <i>message</i>}</code>; errors during inference end the
+ * stream with such a line instead of the final one.
+ *
+ * <p>
+ * <code>GET /status</code> returns the number of cached models, and the
+ * number of requests received and running.
+ *
+ * <p>
+ * The server looks for the following properties:
+ * <dl>
+ * <dt>serverThreads
+ * <dd>Number of requests run concurrently. Default is the number of
+ * processors.
+ *
+ * <dt>serverCacheSize
+ * <dd>Number of compiled models kept; the least recently used one is dropped
+ * first. Default is 16.
+ * </dl>
+ * The server does not listen on Unix domain sockets, which the Java platform
+ * targeted by BLOG does not support; it binds to the loopback address only.
+ */
+public class InferenceServer {
+
+  /**
+   * Creates a server listening on the given port of the loopback interface.
+   * The properties are the default inference properties of all requests;
+   * <code>packages</code> are searched for distribution and function classes,
+   * like the <code>--package</code> option of {@link blog.Main}.
+   */
+  public InferenceServer(int port, Properties properties, List<String> packages)
+      throws IOException {
+    this.properties = properties;
+    this.packages = packages;
+    String threadsStr = properties.getProperty("serverThreads",
+        String.valueOf(Runtime.getRuntime().availableProcessors()));
+    String cacheSizeStr = properties.getProperty("serverCacheSize", "16");
+    try {
+      numThreads = Integer.parseInt(threadsStr);
+      cacheSize = Integer.parseInt(cacheSizeStr);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid server thread count or "
+          + "cache size: " + threadsStr + ", " + cacheSizeStr);
+    }
+    if (numThreads < 1 || cacheSize < 1) {
+      throw new IllegalArgumentException("Invalid server thread count or "
+          + "cache size: " + threadsStr + ", " + cacheSizeStr);
+    }
+    rootStream = RandomContext.current();
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+    server.createContext("/infer", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        handleInfer(exchange);
+      }
+    });
+    server.createContext("/status", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        handleStatus(exchange);
+      }
+    });
+    executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private int count = 0;
+
+      public synchronized Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "blog-server-" + (count++));
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    server.setExecutor(executor);
+  }
+
+  /**
+   * Starts answering requests, on threads of the worker pool.
+   */
+  public void start() {
+    server.start();
+    System.out.println("Serving inference requests on http://127.0.0.1:"
+        + getPort() + "/infer with " + numThreads + " threads");
+  }
+
+  /**
+   * Stops accepting requests, and waits up to the given number of seconds for
+   * the running ones to finish.
+   */
+  public void stop(int delaySeconds) {
+    server.stop(delaySeconds);
+    executor.shutdownNow();
+  }
+
+  /**
+   * Returns the port the server listens on.
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * A request of <code>POST /infer</code>, as parsed from JSON.
+   */
+  static class Request {
+    String model;
+    String evidence;
+    Map<String, String> properties;
+    Long seed;
+  }
+
+  /**
+   * A compiled model of the cache, and the evidence and query statements that
+   * came with its source.
+   */
+  static class CompiledModel {
+    CompiledModel(String hash, Model model, StmtList statements) {
+      this.hash = hash;
+      this.model = model;
+      this.statements = statements;
+    }
+
+    final String hash;
+    final Model model;
+    final StmtList statements;
+  }
+
+  private void handleInfer(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      sendError(exchange, 405, "Use POST");
+      return;
+    }
+    numRequests.incrementAndGet();
+    numRunning.incrementAndGet();
+    try {
+      infer(exchange);
+    } finally {
+      numRunning.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  private void infer(HttpExchange exchange) throws IOException {
+    long startTime = System.currentTimeMillis();
+    Request request;
+    try {
+      request = gson.fromJson(readBody(exchange.getRequestBody()),
+          Request.class);
+    } catch (JsonParseException e) {
+      sendError(exchange, 400, "Invalid request: " + e.getMessage());
+      return;
+    }
+    if (request == null || request.model == null) {
+      sendError(exchange, 400, "Missing model");
+      return;
+    }
+
+    boolean[] cached = new boolean[1];
+    Properties requestProperties = new Properties();
+    requestProperties.putAll(properties);
+    if (request.properties != null) {
+      requestProperties.putAll(request.properties);
+    }
+    RandomStream stream;
+    if (request.seed != null) {
+      stream = new RandomStream(request.seed.longValue());
+    } else {
+      synchronized (rootStream) {
+        stream = rootStream.split();
+      }
+    }
+    RandomStream previous = RandomContext.enter(stream);
+    try {
+      answer(exchange, request, requestProperties, cached, startTime);
+    } finally {
+      RandomContext.exit(previous);
+    }
+  }
+
+  /**
+   * Answers a request that has been read, with the random stream of the
+   * request entered.
+   */
+  private void answer(HttpExchange exchange, Request request,
+      Properties requestProperties, boolean[] cached, long startTime)
+      throws IOException {
+    // Compile the model, or find it in the cache, and translate the evidence
+    // and queries of this request into a copy of it.
+    CompiledModel compiled;
+    InferenceEngine engine;
+    try {
+      compiled = getModel(request.model, cached);
+      Model model = new Model(compiled.model);
+      Evidence evidence = new Evidence(model);
+      Queries queries = new Queries(model);
+      translate(compiled, model, request.evidence, evidence, queries);
+      engine = InferenceEngine.constructEngine(model, requestProperties);
+      engine.setEvidence(evidence);
+      engine.setQueries(queries);
+    } catch (RuntimeException e) {
+      sendError(exchange, 400, getMessage(e));
+      return;
+    } catch (Error e) {
+      // Util.fatalError throws Errors
+      sendError(exchange, 400, getMessage(e));
+      return;
+    }
+
+    exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+    exchange.sendResponseHeaders(200, 0);
+    PrintStream out = new PrintStream(exchange.getResponseBody(), true,
+        "UTF-8");
+    Map<String, Object> first = new LinkedHashMap<String, Object>();
+    first.put("model", compiled.hash);
+    first.put("cached", cached[0]);
+    out.println(gson.toJson(first));
+    try {
+      JsonWriter writer = new JsonWriter();
+      writer.setOutput(out);
+      engine.setResultWriter(writer);
+      engine.answerQueries();
+      writer.flush();
+
+      Map<String, Object> last = new LinkedHashMap<String, Object>();
+      last.put("done", true);
+      last.put("elapsed", (System.currentTimeMillis() - startTime) / 1000.0);
+      out.println(gson.toJson(last));
+    } catch (Throwable e) {
+      e.printStackTrace();
+      out.println(gson.toJson(Collections.singletonMap("error", getMessage(e))));
+    } finally {
+      out.flush();
+    }
+  }
+
+  /**
+   * Describes the innermost cause of <code>e</code> that has a message. The
+   * Errors thrown by {@link blog.common.Util#fatalError(String)} are described
+   * by their message alone.
+   */
+  private static String getMessage(Throwable e) {
+    String message = e.toString();
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      String tMessage = t.getMessage();
+      if (tMessage != null && tMessage.length() > 0
+          && !tMessage.startsWith("Fatal error: ")) {
+        message = (t.getClass() == Error.class) ? tMessage : t.toString();
+      }
+    }
+    return message;
+  }
+
+  /**
+   * Returns the compiled model of the given source, compiling it if it is not
+   * in the cache. Sets <code>cached[0]</code> to whether it was.
+   */
+  CompiledModel getModel(String source, boolean[] cached) {
+    String hash = hash(source);
+    synchronized (cache) {
+      CompiledModel compiled = cache.get(hash);
+      cached[0] = (compiled != null);
+      if (compiled == null) {
+        // compile under the lock: translating models is not thread-safe
+        compiled = compile(hash, source);
+        cache.put(hash, compiled);
+      }
+      return compiled;
+    }
+  }
+
+  private CompiledModel compile(String hash, String source) {
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    ErrorMsg msg = new ErrorMsg("model", newPrintStream(errors));
+    Parse parse = new Parse(new StringReader(source), msg, "model");
+    Absyn result = parse.getResult();
+    Model model = new Model();
+    if (msg.OK()) {
+      Semant sem = new Semant(model, new Evidence(model), new Queries(model),
+          msg);
+      sem.addPackages(packages);
+      sem.transProg(result);
+    }
+    if (!msg.OK()) {
+      throw new IllegalArgumentException("Errors in model:\n"
+          + errors.toString());
+    }
+    if (!model.checkCompleteness() || model.compile() > 0) {
+      throw new IllegalArgumentException(
+          "Errors in model compilation; see the server log");
+    }
+
+    // keep the evidence and queries of the model, to translate them again for
+    // every request
+    List<Stmt> statements = new ArrayList<Stmt>();
+    for (StmtList stl = (StmtList) result; stl != null; stl = stl.next) {
+      if (!(stl.head instanceof Dec)) {
+        statements.add(stl.head);
+      }
+    }
+    StmtList list = null;
+    for (int i = statements.size() - 1; i >= 0; i--) {
+      list = new StmtList(statements.get(i), list);
+    }
+    return new CompiledModel(hash, model, list);
+  }
+
+  /**
+   * Translates the evidence and queries of the compiled model and the given
+   * source into <code>evidence</code> and <code>queries</code>, for
+   * <code>model</code>, a copy of the compiled model, and compiles them.
+   */
+  private void translate(CompiledModel compiled, Model model,
+      String evidenceSource, Evidence evidence, Queries queries) {
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    ErrorMsg msg = new ErrorMsg("evidence", newPrintStream(errors));
+    Absyn requestStatements = null;
+    if (evidenceSource != null) {
+      Parse parse = new Parse(new StringReader(evidenceSource), msg,
+          "evidence");
+      requestStatements = parse.getResult();
+    }
+    int numErrors = 0;
+    // translation and compilation read the functions shared with other
+    // requests on this model
+    synchronized (compiled) {
+      if (msg.OK()) {
+        Semant sem = new Semant(model, evidence, queries, msg);
+        sem.addPackages(packages);
+        sem.transEvidenceAndQueries(compiled.statements);
+        sem.transEvidenceAndQueries(requestStatements);
+      }
+      if (msg.OK()) {
+        numErrors += evidence.compile();
+        for (Query query : queries) {
+          numErrors += query.compile();
+        }
+      }
+    }
+    if (!msg.OK()) {
+      throw new IllegalArgumentException("Errors in evidence or queries:\n"
+          + errors.toString());
+    }
+    if (numErrors > 0) {
+      throw new IllegalArgumentException("Encountered " + numErrors
+          + " errors in compilation of evidence and queries");
+    }
+  }
+
+  private void handleStatus(HttpExchange exchange) throws IOException {
+    Map<String, Object> status = new LinkedHashMap<String, Object>();
+    synchronized (cache) {
+      status.put("models", cache.size());
+    }
+    status.put("requests", numRequests.get());
+    status.put("running", numRunning.get());
+    send(exchange, 200, gson.toJson(status));
+  }
+
+  private void sendError(HttpExchange exchange, int code, String message)
+      throws IOException {
+    send(exchange, code, gson.toJson(Collections.singletonMap("error",
+        message)));
+  }
+
+  private static void send(HttpExchange exchange, int code, String json)
+      throws IOException {
+    byte[] bytes = (json + "\n").getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(code, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  private static String readBody(InputStream in) throws IOException {
+    Reader reader = new InputStreamReader(in, "UTF-8");
+    StringBuilder body = new StringBuilder();
+    char[] buffer = new char[4096];
+    int n;
+    while ((n = reader.read(buffer)) != -1) {
+      body.append(buffer, 0, n);
+    }
+    return body.toString();
+  }
+
+  private static PrintStream newPrintStream(OutputStream out) {
+    try {
+      return new PrintStream(out, true, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the hexadecimal SHA-256 hash of the given string.
+   */
+  static String hash(String source) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] bytes = digest.digest(source.getBytes("UTF-8"));
+      StringBuilder hex = new StringBuilder();
+      for (int i = 0; i < bytes.length; i++) {
+        hex.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+        hex.append(Character.forDigit(bytes[i] & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private final Properties properties;
+  private final List<String> packages;
+  private final int numThreads;
+  private final int cacheSize;
+  private final RandomStream rootStream;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Gson gson = new Gson();
+
+  private final AtomicLong numRequests = new AtomicLong();
+  private final AtomicInteger numRunning = new AtomicInteger();
+
+  // compiled models by hash, least recently used first
+  private final Map<String, CompiledModel> cache = new LinkedHashMap<String, CompiledModel>(
+      16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String, CompiledModel> eldest) {
+      return size() > cacheSize;
+    }
+  };
+}
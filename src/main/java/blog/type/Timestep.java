@@ -94,19 +94,24 @@ public class Timestep extends Number implements Comparable<Timestep> {
   /**
    * After this object is constructed in deserialization, either add it to the
    * <code>generatedTimesteps</code> map or return its existing equivalent from
-   * that map.
+   * that map. This locks the class, like {@link #at(int)}, since both modify
+   * the map.
    */
   private Object readResolve() {
-    Integer t = new Integer(index);
-    Timestep existing = (Timestep) generatedTimesteps.get(t);
-    if (existing == null) {
-      generatedTimesteps.put(t, this);
-      return this;
+    synchronized (Timestep.class) {
+      Integer t = Integer.valueOf(index);
+      Timestep existing = generatedTimesteps.get(t);
+      if (existing == null) {
+        generatedTimesteps.put(t, this);
+        if (index > max)
+          max = index;
+        return this;
+      }
+      return existing;
     }
-    return existing;
   }
 
-  public static Timestep at(int t) {
+  public static synchronized Timestep at(int t) {
     Timestep ts = generatedTimesteps.get(t);
     if (ts == null) {
       ts = new Timestep(t);
@@ -66,7 +66,6 @@ import blog.common.IndexedSet;
 import blog.common.MapWithPreimages;
 import blog.common.MultiMap;
 import blog.common.Util;
-import blog.distrib.CondProbDistrib;
 import blog.model.DependencyModel;
 import blog.model.Model;
 import blog.model.NonGuaranteedObject;
@@ -77,6 +76,7 @@ import blog.objgen.AbstractObjectSet;
 import blog.objgen.ObjectIterator;
 import blog.objgen.ObjectSet;
 import blog.sample.ParentRecEvalContext;
+import blog.type.Timestep;
 
 /**
  * An implementation of the PartialWorld interface that just requires concrete
@@ -151,10 +151,17 @@ public abstract class AbstractPartialWorld implements PartialWorld {
       varToUninstParent.remove(var);
       nameToBasicVar.remove(var.toString());
       varToLogProb.remove(var);
+      removeFromTimestepIndex(var);
     } else {
       // checkIdentifiers(var, value); // allow any identifiers
       basicVarToValue.put(var, value);
       nameToBasicVar.put(var.toString(), var);
+      if (oldValue == null) {
+        Timestep timestep = var.maxTimestep();
+        if (timestep != null) {
+          timestepToBasicVars.add(timestep, var);
+        }
+      }
     }
 
     dirtyVars.add(var);
@@ -171,6 +178,25 @@ public abstract class AbstractPartialWorld implements PartialWorld {
     varToUninstParent.remove(var);
     nameToBasicVar.remove(var.toString());
     varToLogProb.remove(var);
+    removeFromTimestepIndex(var);
+    if (cbn != null) {
+      cbn.removeNode(var);
+    }
+  }
+
+  private void removeFromTimestepIndex(BasicVar var) {
+    Timestep timestep = var.maxTimestep();
+    if (timestep != null) {
+      timestepToBasicVars.remove(timestep, var);
+    }
+  }
+
+  public Set getInstantiatedVarsAt(Timestep timestep) {
+    return Collections.unmodifiableSet((Set) timestepToBasicVars.get(timestep));
+  }
+
+  public Set<Timestep> getInstantiatedTimesteps() {
+    return Collections.unmodifiableSet(timestepToBasicVars.keySet());
   }
 
   public BasicVar getBasicVarByName(String name) {
@@ -455,6 +481,10 @@ public abstract class AbstractPartialWorld implements PartialWorld {
     return nameToBasicVar;
   }
 
+  public MultiMap timestepToBasicVarsMap() {
+    return timestepToBasicVars;
+  }
+
   public MultiMap objToUsesAsValueMap() {
     return objToUsesAsValue;
   }
@@ -806,9 +836,8 @@ public abstract class AbstractPartialWorld implements PartialWorld {
           try {
             // System.out.println("AbstractPartialWorld: var: " + var +
             // ", basicVarToValue(var): " + basicVarToValue.get(var));
-            CondProbDistrib cpd = distrib.getCPD();
-            cpd.setParams(distrib.getArgValues());
-            double logProb = cpd.getLogProb(basicVarToValue.get(var));
+            double logProb = distrib.getCPD().getLogProb(
+                basicVarToValue.get(var));
             /*
              * if (Util.verbose() && (logProb == Double.NEGATIVE_INFINITY)) {
              * System.out.println ("Got zero probability for " + var + " = " +
@@ -1044,6 +1073,8 @@ public abstract class AbstractPartialWorld implements PartialWorld {
   public void cloneFields(AbstractPartialWorld newWorld) {
     newWorld.basicVarToValue = (Map) ((HashMap) basicVarToValue).clone();
     newWorld.nameToBasicVar = (Map) ((HashMap) nameToBasicVar).clone();
+    newWorld.timestepToBasicVars = (MultiMap) ((HashMultiMap) timestepToBasicVars)
+        .clone();
     newWorld.objToUsesAsValue = (MultiMap) ((HashMultiMap) objToUsesAsValue)
         .clone();
     newWorld.objToUsesAsArg = (MultiMap) ((HashMultiMap) objToUsesAsArg)
@@ -1078,6 +1109,13 @@ public abstract class AbstractPartialWorld implements PartialWorld {
    */
   protected Map<String, BasicVar> nameToBasicVar;
 
+  /**
+   * Map from each Timestep to the instantiated BasicVars whose largest
+   * timestep argument is that Timestep. Lets temporal models drop the
+   * variables of past timesteps without scanning the whole world.
+   */
+  protected MultiMap timestepToBasicVars;
+
   /**
    * Map from objects to the instantiated BasicVars that have them as values.
    */
@@ -76,6 +76,7 @@ public class DefaultPartialWorld extends AbstractPartialWorld implements
     super(idTypes, null, recordUsage);
     basicVarToValue = new HashMap();
     nameToBasicVar = new HashMap<String, BasicVar>();
+    timestepToBasicVars = new HashMultiMap();
     objToUsesAsValue = new HashMultiMap();
     objToUsesAsArg = new HashMultiMap();
     assertedIdToPOPApp = new HashMap();
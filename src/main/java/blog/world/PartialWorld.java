@@ -53,6 +53,7 @@ import blog.common.MultiMap;
 import blog.model.POP;
 import blog.model.RandomFunction;
 import blog.objgen.ObjectSet;
+import blog.type.Timestep;
 
 /**
  * A partial description of a possible world in a BLOG model. A PartialWorld
@@ -126,6 +127,7 @@ public interface PartialWorld {
     EmptyPartialWorld() {
       super(Collections.EMPTY_SET, CBN.EMPTY_CBN, false);
       basicVarToValue = Collections.EMPTY_MAP;
+      timestepToBasicVars = MultiMap.EMPTY_MULTI_MAP;
       objToUsesAsValue = MultiMap.EMPTY_MULTI_MAP;
       objToUsesAsArg = MultiMap.EMPTY_MULTI_MAP;
       assertedIdToPOPApp = Collections.EMPTY_MAP;
@@ -148,6 +150,20 @@ public interface PartialWorld {
    */
   Set getInstantiatedVars();
 
+  /**
+   * Returns an unmodifiable Set of the basic variables that are instantiated
+   * in this world and whose largest timestep argument is the given timestep.
+   * 
+   * @return unmodifiable Set of BasicVar objects
+   */
+  Set getInstantiatedVarsAt(Timestep timestep);
+
+  /**
+   * Returns an unmodifiable Set of the timesteps that are the largest timestep
+   * argument of some basic variable instantiated in this world.
+   */
+  Set<Timestep> getInstantiatedTimesteps();
+
   /**
    * Indicates whether var is instantiated in this world or not.
    */
@@ -472,6 +488,12 @@ public interface PartialWorld {
    */
   public Map<String, BasicVar> nameToBasicVarMap();
 
+  /**
+   * MultiMap from each Timestep to the instantiated BasicVars whose largest
+   * timestep argument is that Timestep.
+   */
+  MultiMap timestepToBasicVarsMap();
+
   /**
    * MultiMap from objects to the instantiated BasicVars that have them as
    * values.
@@ -54,6 +54,7 @@ import blog.common.MapDiff;
 import blog.common.MapWithPreimagesDiff;
 import blog.common.MultiMapDiff;
 import blog.common.Util;
+import blog.sample.SetViews;
 
 /**
  * Represents a PartialWorld as a set of differences relative to an underlying
@@ -71,6 +72,8 @@ public class PartialWorldDiff extends AbstractPartialWorld {
     super(underlying.getIdTypes(), new PatchCBN(underlying.getCBN()), true);
     basicVarToValue = new HashMapDiff(underlying.basicVarToValueMap());
     nameToBasicVar = new HashMapDiff(underlying.nameToBasicVarMap());
+    timestepToBasicVars = new HashMultiMapDiff(
+        underlying.timestepToBasicVarsMap());
     objToUsesAsValue = new HashMultiMapDiff(underlying.objToUsesAsValueMap());
     objToUsesAsArg = new HashMultiMapDiff(underlying.objToUsesAsArgMap());
     assertedIdToPOPApp = new HashMapDiff(underlying.assertedIdToPOPAppMap());
@@ -368,8 +371,24 @@ public class PartialWorldDiff extends AbstractPartialWorld {
     diffListeners.remove(listener);
   }
 
+  /**
+   * Returns the set views attached to this world, or null if there are none.
+   */
+  public SetViews getSetViews() {
+    return setViews;
+  }
+
+  /**
+   * Attaches the given set views to this world, so that cardinality
+   * specifications and quantified formulas evaluated in it use them.
+   */
+  public void setSetViews(SetViews setViews) {
+    this.setViews = setViews;
+  }
+
   private void clearChanges() {
     ((MapDiff) basicVarToValue).clearChanges();
+    ((MultiMapDiff) timestepToBasicVars).clearChanges();
     ((MultiMapDiff) objToUsesAsValue).clearChanges();
     ((MultiMapDiff) objToUsesAsArg).clearChanges();
     ((MapDiff) assertedIdToPOPApp).clearChanges();
@@ -390,4 +409,5 @@ public class PartialWorldDiff extends AbstractPartialWorld {
   // private PatchCBN cbn;
 
   private List diffListeners = new ArrayList(); // of WorldDiffListener
+  private SetViews setViews;
 }
@@ -0,0 +1,110 @@
+package blog.world;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import blog.bn.BasicVar;
+import blog.bn.CBN;
+import blog.bn.DefaultCBN;
+import blog.common.IndexedMultiMap;
+import blog.common.MapWithPreimages;
+import blog.common.MultiMap;
+import blog.common.PersistentHashMap;
+import blog.common.PersistentHashMultiMap;
+import blog.common.PersistentIndexedHashMultiMap;
+import blog.common.PersistentMapWithPreimages;
+
+/**
+ * Implementation of AbstractPartialWorld that can be cloned in constant time.
+ * Its maps are persistent data structures ({@link PersistentHashMap} and the
+ * classes built on it), which a clone shares with the original world until
+ * either of them modifies them; an update then only copies the parts of the
+ * maps it touches. This makes it a good choice for particles that are copied
+ * on every resampling step.
+ *
+ * <p>
+ * The CBN, if any, is not shared: it is copied in full by {@link #clone()}.
+ */
+public class PersistentPartialWorld extends AbstractPartialWorld implements
+    Cloneable {
+
+  /**
+   * Creates a new PersistentPartialWorld with no instantiated variables.
+   *
+   * @param idTypes
+   *          Set of Type objects for types that will be represented with object
+   *          identifiers
+   * @param recordUsage
+   *          whether to record the object usage as argument or value of
+   *          function application var
+   * @param useCBN
+   *          whether to initialize a CBN for this world
+   */
+  public PersistentPartialWorld(Set idTypes, boolean recordUsage, boolean useCBN) {
+    super(idTypes, useCBN ? new DefaultCBN() : null, recordUsage);
+    basicVarToValue = new PersistentHashMap();
+    nameToBasicVar = new PersistentHashMap<String, BasicVar>();
+    timestepToBasicVars = new PersistentHashMultiMap();
+    objToUsesAsValue = new PersistentHashMultiMap();
+    objToUsesAsArg = new PersistentHashMultiMap();
+    assertedIdToPOPApp = new PersistentHashMap();
+    popAppToAssertedIds = new PersistentIndexedHashMultiMap();
+    commIdToPOPApp = new PersistentHashMap();
+    popAppToCommIds = new PersistentIndexedHashMultiMap();
+    varToUninstParent = new PersistentMapWithPreimages();
+    varToLogProb = new PersistentHashMap();
+    derivedVarToValue = new PersistentHashMap();
+  }
+
+  public PersistentPartialWorld(Set idTypes) {
+    this(idTypes, false, false);
+  }
+
+  /**
+   * Creates a world with no maps, to be filled by
+   * {@link #cloneFields(AbstractPartialWorld)}.
+   */
+  private PersistentPartialWorld(Set idTypes, boolean recordUsage) {
+    super(idTypes, null, recordUsage);
+  }
+
+  public Object clone() {
+    PersistentPartialWorld newWorld = new PersistentPartialWorld(idTypes,
+        recordObjectUsage);
+    cloneFields(newWorld);
+    return newWorld;
+  }
+
+  /**
+   * Gives <code>newWorld</code> copies of the fields of this world, sharing
+   * the structure of the maps.
+   */
+  public void cloneFields(AbstractPartialWorld newWorld) {
+    newWorld.basicVarToValue = ((PersistentHashMap) basicVarToValue).clone();
+    newWorld.nameToBasicVar = ((PersistentHashMap<String, BasicVar>) nameToBasicVar)
+        .clone();
+    newWorld.timestepToBasicVars = (MultiMap) ((PersistentHashMultiMap) timestepToBasicVars)
+        .clone();
+    newWorld.objToUsesAsValue = (MultiMap) ((PersistentHashMultiMap) objToUsesAsValue)
+        .clone();
+    newWorld.objToUsesAsArg = (MultiMap) ((PersistentHashMultiMap) objToUsesAsArg)
+        .clone();
+    newWorld.assertedIdToPOPApp = ((PersistentHashMap) assertedIdToPOPApp)
+        .clone();
+    newWorld.popAppToAssertedIds = (IndexedMultiMap) ((PersistentIndexedHashMultiMap) popAppToAssertedIds)
+        .clone();
+    newWorld.commIdToPOPApp = ((PersistentHashMap) commIdToPOPApp).clone();
+    newWorld.popAppToCommIds = (IndexedMultiMap) ((PersistentIndexedHashMultiMap) popAppToCommIds)
+        .clone();
+    newWorld.cbn = (cbn == null) ? null : (CBN) ((DefaultCBN) cbn).clone();
+    newWorld.varToUninstParent = (MapWithPreimages) ((PersistentMapWithPreimages) varToUninstParent)
+        .clone();
+    newWorld.varToLogProb = ((PersistentHashMap) varToLogProb).clone();
+    newWorld.derivedVarToValue = ((PersistentHashMap) derivedVarToValue)
+        .clone();
+
+    newWorld.dirtyVars = new LinkedHashSet(dirtyVars);
+    newWorld.listeners = new ArrayList(listeners);
+  }
+}
@@ -6,6 +6,7 @@ import scala.collection.mutable.ListBuffer
 
 import blog.common.Util
 import blog.Main
+import blog.engine.Resampler
 import blog.model.Evidence
 import blog.model.Queries
 import blog.model.Model
@@ -23,13 +24,17 @@ import blog.world.DefaultPartialWorld
  * If you want to run the ParticleFilter online, you have to write your own
  * FilterFeeder to provide evidence and queries at each timestep.
  *
+ * Resampling uses the same schemes as blog.engine.ParticleFilter (see
+ * blog.engine.Resampler), and takes time linear in the number of particles.
+ *
  * @author cberzan
  * @since Jun 23, 2014
  */
 class ParticleFilter(
   val model: Model,
   val numParticles: Int,
-  feeder: FilterFeeder) {
+  feeder: FilterFeeder,
+  val resampler: Resampler = Resampler.make("stratified")) {
 
   var currentTimestep: Int = -1
   var currentEvidence: Evidence = null
@@ -49,17 +54,13 @@ class ParticleFilter(
   }
 
   protected def resample: Unit = {
-    val logWeights = particles.map(particle => particle.logWeight)
-    val logSumWeights = logWeights.reduceLeft(Util.logSum)
-    if (logSumWeights == Double.NegativeInfinity) {
-      throw new IllegalArgumentException("All particles have zero weight");
-    }
-    val normalizedWeights = logWeights.map(logw => Math.exp(logw - logSumWeights)).toArray
-    val alreadySampled = Array.fill[Boolean](numParticles)(false)
+    val logWeights = particles.map(particle => particle.logWeight).toArray
+    val selections = resampler.resample(
+      Resampler.cumulativeWeights(logWeights), numParticles)
+    val alreadySampled = Array.fill[Boolean](logWeights.length)(false)
     val oldParticles = particles.toArray
     val newParticles = new ListBuffer[Particle]
-    for (i <- 1 to numParticles) {
-      val selection = Util.sampleWithProbs(normalizedWeights)
+    for (selection <- selections) {
       if (!alreadySampled(selection)) {
         newParticles.append(oldParticles(selection))
         alreadySampled(selection) = true
@@ -136,7 +137,8 @@ class ParticleFilter(
 }
 
 object ParticleFilter {
-  def make(path: String, numParticles: Int): ParticleFilter = {
+  def make(path: String, numParticles: Int,
+    resampling: String = "stratified"): ParticleFilter = {
     Util.initRandom(false)
 
     val model = new Model()
@@ -145,6 +147,7 @@ object ParticleFilter {
     Main.simpleSetupFromFiles(model, evidence, queries, path :: Nil)
 
     val feeder = new OfflineFilterFeeder(evidence, queries)
-    new ParticleFilter(model, numParticles, feeder)
+    new ParticleFilter(model, numParticles, feeder,
+      Resampler.make(resampling))
   }
 }
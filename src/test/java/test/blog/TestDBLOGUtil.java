@@ -7,11 +7,14 @@ import java.util.Map;
 
 import org.junit.Test;
 
+import blog.BLOGUtil;
 import blog.DBLOGUtil;
 import blog.model.Evidence;
 import blog.model.Model;
 import blog.model.Queries;
 import blog.type.Timestep;
+import blog.world.DefaultPartialWorld;
+import blog.world.PartialWorld;
 
 /**
  * Unit tests for DBLOGUtil.
@@ -56,4 +59,25 @@ public class TestDBLOGUtil {
     assertEquals(Arrays.asList(queries.get(2)),
         splitQueries.get(Timestep.at(13)));
   }
+
+  @Test
+  public void testRemoveVarsAtDiffTimestep() {
+    Model model = Model.fromString("random Boolean Weather(Timestep t) ~ true;"
+        + "random Boolean Dummy ~ Bernoulli(0.5);");
+    Evidence evidence = new Evidence(model);
+    evidence.addFromString("obs Weather(@1) = true;"
+        + "obs Weather(@2) = true;" + "obs Weather(@3) = true;"
+        + "obs Dummy = true;");
+    evidence.compile();
+    PartialWorld world = new DefaultPartialWorld();
+    BLOGUtil.setBasicVars(evidence, world);
+    assertEquals(3, world.getInstantiatedTimesteps().size());
+
+    DBLOGUtil.removeVarsAtDiffTimestep(Timestep.at(3), world);
+    assertEquals(2, world.getInstantiatedVars().size());
+    assertEquals(1, world.getInstantiatedTimesteps().size());
+    assertEquals(0, world.getInstantiatedVarsAt(Timestep.at(2)).size());
+    assertEquals("[Weather(@3)]", world.getInstantiatedVarsAt(Timestep.at(3))
+        .toString());
+  }
 }
@@ -0,0 +1,62 @@
+package test.blog.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import blog.common.DenseHistogram;
+import blog.common.Histogram;
+
+/**
+ * Unit tests for DenseHistogram.
+ */
+public class TestDenseHistogram {
+  private static final double ERROR = 1e-9;
+
+  @Test
+  public void testMatchesHistogram() {
+    DenseHistogram dense = new DenseHistogram(100);
+    Histogram expected = new Histogram();
+    double[] logWeights = { -3, 0, -700, 5, 2.5, -1 };
+    int[] keys = { 1, 3, -4, 1, 20, -4 };
+    for (int i = 0; i < keys.length; ++i) {
+      assertTrue(dense.increaseWeight(keys[i], keys[i], logWeights[i]));
+      expected.increaseWeight(keys[i], logWeights[i]);
+    }
+    assertEquals(expected.getTotalLogWeight(), dense.getTotalLogWeight(),
+        ERROR);
+    for (int key = -10; key <= 30; ++key) {
+      assertEquals(expected.getLogWeight(key), dense.getLogWeight(key), ERROR);
+    }
+
+    Histogram copy = new Histogram();
+    dense.addTo(copy);
+    assertEquals(expected.elementSet(), copy.elementSet());
+    assertEquals(expected.getProb(20), copy.getProb(20), ERROR);
+  }
+
+  @Test
+  public void testMaxRange() {
+    DenseHistogram dense = new DenseHistogram(16);
+    assertTrue(dense.increaseWeight(100, "a", 0));
+    assertTrue(dense.increaseWeight(85, "b", 0));
+    assertFalse(dense.increaseWeight(84, "c", 0));
+    assertFalse(dense.increaseWeight(116, "d", 0));
+    assertEquals(Math.log(2), dense.getTotalLogWeight(), ERROR);
+
+    DenseHistogram other = new DenseHistogram(1000);
+    other.increaseWeight(100, "a", 0);
+    other.increaseWeight(200, "e", 1);
+    Histogram overflow = new Histogram();
+    dense.addAll(other, overflow);
+    assertEquals(Math.log(2), dense.getLogWeight(100), ERROR);
+    assertEquals(1, overflow.getLogWeight("e"), ERROR);
+    assertEquals(1, overflow.size());
+
+    dense.clear();
+    assertEquals(Double.NEGATIVE_INFINITY, dense.getLogWeight(100), 0);
+    assertTrue(dense.increaseWeight(0, "z", 0));
+  }
+}
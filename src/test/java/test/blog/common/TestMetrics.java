@@ -0,0 +1,53 @@
+package test.blog.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Test;
+
+import blog.common.Metrics;
+
+/**
+ * Unit tests for Metrics.
+ */
+public class TestMetrics {
+
+  @After
+  public void tearDown() {
+    Metrics.setEnabled(false);
+    Metrics.reset();
+  }
+
+  @Test
+  public void testDisabled() {
+    Metrics.Counter counter = Metrics.counter("test.disabled");
+    assertSame(counter, Metrics.counter("test.disabled"));
+    counter.increment();
+    Metrics.recorder("test.disabled").record(5);
+    assertEquals(0, counter.get());
+    assertEquals(0, Metrics.recorder("test.disabled").getCount());
+    assertEquals(0, Metrics.startTime());
+  }
+
+  @Test
+  public void testRecorder() {
+    Metrics.setEnabled(true);
+    Metrics.Recorder recorder = Metrics.recorder("test.recorder");
+    for (int i = 1; i <= 100; ++i) {
+      recorder.record(i);
+    }
+    assertEquals(100, recorder.getCount());
+    assertEquals(5050, recorder.getSum());
+    assertEquals(1, recorder.getMin());
+    assertEquals(100, recorder.getMax());
+    // 50 falls in [32, 64), 99 and 100 in [64, 128)
+    assertEquals(63, recorder.quantile(0.5));
+    assertEquals(100, recorder.quantile(0.99));
+    assertEquals(1, recorder.quantile(0));
+
+    Metrics.reset();
+    assertEquals(0, recorder.getCount());
+    assertEquals(0, recorder.getMin());
+  }
+}
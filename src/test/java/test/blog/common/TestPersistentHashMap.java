@@ -0,0 +1,117 @@
+package test.blog.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import blog.common.PersistentHashMap;
+import blog.common.PersistentHashMultiMap;
+
+/**
+ * Unit Tests for PersistentHashMap and PersistentHashMultiMap
+ */
+public class TestPersistentHashMap {
+
+  /** Key whose hash code is shared by many keys, to exercise collisions. */
+  private static class Key {
+    Key(int id) {
+      this.id = id;
+    }
+
+    public int hashCode() {
+      return id % 7;
+    }
+
+    public boolean equals(Object o) {
+      return (o instanceof Key) && ((Key) o).id == id;
+    }
+
+    private final int id;
+  }
+
+  @Test
+  public void testAgainstHashMap() {
+    Random random = new Random(1);
+    List<Map<Object, Integer>> expected = new ArrayList<Map<Object, Integer>>();
+    List<PersistentHashMap<Object, Integer>> actual = new ArrayList<PersistentHashMap<Object, Integer>>();
+    expected.add(new HashMap<Object, Integer>());
+    actual.add(new PersistentHashMap<Object, Integer>());
+    for (int step = 0; step < 20000; step++) {
+      int m = random.nextInt(actual.size());
+      Object key = random.nextBoolean() ? (Object) random.nextInt(2000)
+          : new Key(random.nextInt(50));
+      int op = random.nextInt(10);
+      if (op < 6) {
+        assertEquals(expected.get(m).put(key, step), actual.get(m).put(key, step));
+      } else if (op < 9) {
+        assertEquals(expected.get(m).remove(key), actual.get(m).remove(key));
+      } else if (actual.size() < 20) {
+        expected.add(new HashMap<Object, Integer>(expected.get(m)));
+        actual.add(actual.get(m).clone());
+      }
+    }
+    for (int m = 0; m < actual.size(); m++) {
+      assertEquals(expected.get(m).size(), actual.get(m).size());
+      assertEquals(expected.get(m), actual.get(m));
+      assertEquals(expected.get(m).entrySet(), actual.get(m).entrySet());
+    }
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    PersistentHashMap<Integer, Integer> map = new PersistentHashMap<Integer, Integer>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    PersistentHashMap<Integer, Integer> copy = map.clone();
+    for (Iterator<Integer> iter = map.keySet().iterator(); iter.hasNext();) {
+      if (iter.next() % 2 == 0) {
+        iter.remove();
+      }
+    }
+    assertEquals(500, map.size());
+    assertEquals(1000, copy.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 2 == 1, map.containsKey(i));
+      assertEquals(Integer.valueOf(i), copy.get(i));
+    }
+  }
+
+  @Test
+  public void testMultiMapClone() {
+    PersistentHashMultiMap map = new PersistentHashMultiMap();
+    map.add("a", 1);
+    map.add("a", 2);
+    PersistentHashMultiMap copy = (PersistentHashMultiMap) map.clone();
+    assertTrue(copy.add("a", 3));
+    assertTrue(map.remove("a", 1));
+    ((Set) copy.get("b")).add(4);
+
+    Set<Integer> expected = new HashSet<Integer>();
+    expected.add(2);
+    assertEquals(expected, map.get("a"));
+    assertFalse(map.containsKey("b"));
+    expected.add(1);
+    expected.add(3);
+    assertEquals(expected, copy.get("a"));
+    assertEquals(1, ((Set) copy.get("b")).size());
+
+    for (Iterator iter = ((Set) copy.get("a")).iterator(); iter.hasNext();) {
+      iter.next();
+      iter.remove();
+    }
+    assertFalse(copy.containsKey("a"));
+    assertEquals(1, ((Set) map.get("a")).size());
+  }
+}
@@ -0,0 +1,83 @@
+package test.blog.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import blog.common.RandomContext;
+import blog.common.RandomStream;
+import blog.common.Util;
+
+/**
+ * Unit Tests for RandomStream and RandomContext
+ */
+public class TestRandomStream {
+  private static final double ERROR = 0.01;
+
+  @Test
+  public void testReproducible() {
+    RandomStream a = new RandomStream(42);
+    RandomStream b = new RandomStream(42);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(a.nextLong(), b.nextLong());
+    }
+    RandomStream splitA = a.split();
+    RandomStream splitB = b.split();
+    for (int i = 0; i < 100; i++) {
+      assertEquals(splitA.nextLong(), splitB.nextLong());
+      assertEquals(a.nextLong(), b.nextLong());
+    }
+  }
+
+  @Test
+  public void testSplitDiffers() {
+    RandomStream a = new RandomStream(42);
+    RandomStream split = a.split();
+    boolean differ = false;
+    for (int i = 0; i < 10; i++) {
+      if (a.nextLong() != split.nextLong()) {
+        differ = true;
+      }
+    }
+    assertTrue(differ);
+  }
+
+  @Test
+  public void testRanges() {
+    RandomStream rng = new RandomStream(7);
+    int n = 100000;
+    double sum = 0;
+    double sumSquares = 0;
+    int[] counts = new int[5];
+    for (int i = 0; i < n; i++) {
+      double u = rng.nextDouble();
+      assertTrue(u >= 0 && u < 1);
+      double g = rng.nextGaussian();
+      sum += g;
+      sumSquares += g * g;
+      counts[rng.nextInt(5)]++;
+    }
+    assertEquals(0, sum / n, ERROR);
+    assertEquals(1, sumSquares / n, ERROR * 2);
+    for (int i = 0; i < counts.length; i++) {
+      assertEquals(0.2, counts[i] / (double) n, ERROR);
+    }
+  }
+
+  @Test
+  public void testContext() {
+    Util.initRandom(false);
+    RandomStream defaultStream = RandomContext.current();
+    RandomStream stream = new RandomStream(1);
+    RandomStream previous = RandomContext.enter(stream);
+    assertSame(stream, RandomContext.current());
+    double expected = new RandomStream(1).nextDouble();
+    assertEquals(expected, Util.random(), 0);
+    RandomContext.exit(previous);
+    assertSame(defaultStream, RandomContext.current());
+    assertFalse(stream == RandomContext.split());
+  }
+}
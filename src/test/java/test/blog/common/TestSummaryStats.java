@@ -0,0 +1,138 @@
+package test.blog.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import blog.common.BinnedHistogram;
+import blog.common.QuantileSketch;
+import blog.common.SummaryStats;
+import blog.common.WeightedMoments;
+import blog.common.numerical.MatrixFactory;
+import blog.model.Model;
+
+/**
+ * Unit tests for SummaryStats and the statistics it is built from.
+ */
+public class TestSummaryStats {
+  private static final double ERROR = 1e-9;
+
+  @Test
+  public void testWeightedMoments() {
+    WeightedMoments moments = new WeightedMoments();
+    moments.add(1, 1);
+    moments.add(3, 3);
+    assertEquals(2.5, moments.getMean(), ERROR);
+    assertEquals(0.75, moments.getVariance(), ERROR);
+    assertEquals(1, moments.getMin(), ERROR);
+    assertEquals(3, moments.getMax(), ERROR);
+    assertEquals(16.0 / 10, moments.getEffectiveSampleSize(), ERROR);
+
+    WeightedMoments a = new WeightedMoments();
+    a.add(1, 1);
+    WeightedMoments b = new WeightedMoments();
+    b.add(3, 1);
+    a.addAll(b, 3);
+    assertEquals(moments.getMean(), a.getMean(), ERROR);
+    assertEquals(moments.getVariance(), a.getVariance(), ERROR);
+  }
+
+  @Test
+  public void testQuantiles() {
+    Random random = new Random(42);
+    QuantileSketch sketch = new QuantileSketch();
+    QuantileSketch half = new QuantileSketch();
+    for (int i = 0; i < 100000; ++i) {
+      double x = random.nextDouble();
+      sketch.add(x, 1);
+      if (i % 2 == 0) {
+        half.add(x, 1);
+      }
+    }
+    assertTrue(sketch.getNumCentroids() <= 2 * QuantileSketch.DEFAULT_COMPRESSION);
+    assertEquals(0.5, sketch.quantile(0.5), 0.01);
+    assertEquals(0.01, sketch.quantile(0.01), 0.002);
+    assertEquals(0.99, sketch.quantile(0.99), 0.002);
+    assertEquals(0, sketch.quantile(0), 0.001);
+    assertEquals(1, sketch.quantile(1), 0.001);
+
+    // weights matter: the values above 0.5 now carry 3/4 of the weight
+    QuantileSketch weighted = new QuantileSketch();
+    for (int i = 0; i < 10000; ++i) {
+      double x = random.nextDouble();
+      weighted.add(x, (x > 0.5) ? 3 : 1);
+    }
+    assertEquals(0.5, weighted.quantile(0.25), 0.01);
+
+    QuantileSketch merged = new QuantileSketch();
+    merged.addAll(half, 2);
+    assertEquals(sketch.getTotalWeight(), merged.getTotalWeight(), 1e-6);
+    assertEquals(0.5, merged.quantile(0.5), 0.01);
+  }
+
+  @Test
+  public void testBinnedHistogram() {
+    BinnedHistogram histogram = new BinnedHistogram(8);
+    histogram.add(0.5, 1);
+    histogram.add(10.5, 1);
+    histogram.add(-3.5, 2);
+    double total = 0;
+    for (int i = 0; i < histogram.getNumBins(); ++i) {
+      total += histogram.getProb(i);
+    }
+    assertEquals(1, total, ERROR);
+    int first = histogram.firstNonEmptyBin();
+    int last = histogram.lastNonEmptyBin();
+    assertTrue(histogram.getLowerBound(first) <= -3.5);
+    assertTrue(histogram.getUpperBound(first) > -3.5);
+    assertEquals(0.5, histogram.getProb(first), ERROR);
+    assertTrue(histogram.getLowerBound(last) <= 10.5);
+    assertTrue(histogram.getUpperBound(last) > 10.5);
+
+    BinnedHistogram fine = new BinnedHistogram(8);
+    fine.add(0.25, 1);
+    BinnedHistogram merged = new BinnedHistogram(8);
+    merged.addAll(fine, 1);
+    merged.addAll(histogram, 2);
+    assertEquals(9, merged.getTotalWeight(), ERROR);
+    assertEquals(4.0 / 9, merged.getProb(merged.firstNonEmptyBin()), ERROR);
+    assertEquals(2.0 / 9, merged.getProb(merged.lastNonEmptyBin()), ERROR);
+  }
+
+  @Test
+  public void testLogWeights() {
+    SummaryStats stats = new SummaryStats();
+    stats.add(1.0, -1000);
+    stats.add(2.0, 0);
+    stats.add(Model.NULL, 0);
+    stats.add(3.0, 0);
+    assertEquals(1, stats.getNumComponents());
+    assertEquals(2.5, stats.getMoments(0).getMean(), ERROR);
+    assertEquals(1.0 / 3, stats.getUndefinedProb(), ERROR);
+    assertEquals(Math.log(3), stats.getTotalLogWeight(), ERROR);
+
+    SummaryStats other = new SummaryStats();
+    other.add(4.0, 1000);
+    stats.addAll(other);
+    assertEquals(4, stats.getMoments(0).getMean(), ERROR);
+    assertEquals(1000, stats.getTotalLogWeight(), ERROR);
+  }
+
+  @Test
+  public void testMatrixValues() {
+    SummaryStats stats = new SummaryStats();
+    stats.add(MatrixFactory.createColumnVector(1, 2), 0);
+    stats.add(MatrixFactory.createColumnVector(3, 6), 0);
+    stats.add(MatrixFactory.createColumnVector(1, 2, 3), 0);
+    assertTrue(stats.isMatrix());
+    assertEquals(2, stats.getNumRows());
+    assertEquals(1, stats.getNumCols());
+    assertEquals(2, stats.getNumComponents());
+    assertEquals(2, stats.getMoments(0).getMean(), ERROR);
+    assertEquals(4, stats.getMoments(1).getMean(), ERROR);
+    assertEquals(1.0 / 3, stats.getUndefinedProb(), ERROR);
+  }
+}
@@ -12,6 +12,7 @@ import java.util.HashSet;
 
 import org.junit.Test;
 
+import blog.common.Util;
 import blog.distrib.Categorical;
 
 /**
@@ -136,4 +137,40 @@ public class TestCategorical implements TestDistributions {
     assertTrue(values.contains("Albert"));
   }
 
+  @Test
+  public void testSampleVal() {
+    Util.initRandom(false);
+    Categorical cat = new Categorical();
+    HashMap<String, Object> map = new HashMap<String, Object>();
+    map.put("Albert", 0.5);
+    map.put("Bob", 0.2);
+    map.put("Craig", 0.3);
+    map.put("Andy", 0.0);
+    cat.setParams(new Object[] { map });
+    int numSamples = 100000;
+    HashMap<Object, Integer> counts = new HashMap<Object, Integer>();
+    for (int i = 0; i < numSamples; i++) {
+      Object value = cat.sampleVal();
+      Integer count = counts.get(value);
+      counts.put(value, (count == null) ? 1 : count + 1);
+    }
+    assertEquals(null, counts.get("Andy"));
+    assertEquals(0.5, counts.get("Albert") / (double) numSamples, 0.01);
+    assertEquals(0.2, counts.get("Bob") / (double) numSamples, 0.01);
+    assertEquals(0.3, counts.get("Craig") / (double) numSamples, 0.01);
+  }
+
+  @Test
+  public void testSetParamsAfterChange() {
+    Categorical cat = new Categorical();
+    HashMap<String, Object> map = new HashMap<String, Object>();
+    map.put("Albert", 0.5);
+    map.put("Bob", 0.5);
+    cat.setParams(new Object[] { map });
+    assertEquals(0.5, cat.getProb("Bob"), ERROR);
+    map.put("Bob", 0.2);
+    map.put("Craig", 0.3);
+    cat.setParams(new Object[] { map });
+    testCategorical1(cat);
+  }
 }
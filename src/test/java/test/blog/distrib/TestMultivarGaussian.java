@@ -137,11 +137,39 @@ public class TestMultivarGaussian implements TestDistributions {
     gauss.sampleVal();
   }
 
+  // covariance matrix is not positive definite
+  @Test(expected = IllegalArgumentException.class)
+  public void testIncorrectArguments4() {
+    MultivarGaussian gauss = new MultivarGaussian();
+    MatrixLib sigma = MatrixFactory.eye(2);
+    sigma.setElement(0, 1, 2);
+    sigma.setElement(1, 0, 2);
+    gauss.setParams(mean, sigma);
+  }
+
   @Test
   public void testDoubleSet() {
     // TODO Auto-generated method stub
   }
 
+  /**
+   * Changing the covariance matrix in place is noticed by the cache of
+   * factorizations.
+   */
+  @Test
+  public void testSetChangedCovariance() {
+    MultivarGaussian gauss = new MultivarGaussian();
+    MatrixLib sigma = MatrixFactory.eye(2);
+    gauss.setParams(mean, sigma);
+    for (int i = 0; i < 2; i++) {
+      for (int j = 0; j < 2; j++) {
+        sigma.setElement(i, j, variance.elementAt(i, j));
+      }
+    }
+    gauss.setParams(mean, sigma);
+    testGaussian(gauss);
+  }
+
   @Test
   public void testSample() {
     Util.initRandom(false);
@@ -0,0 +1,52 @@
+package test.blog.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import blog.Main;
+import blog.engine.EvidenceFeed;
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.model.ModelEvidenceQueries;
+import blog.model.Queries;
+
+/**
+ * Tests reading evidence and queries from a feed.
+ */
+public class TestEvidenceFeed {
+
+  private static final String MODEL = "random Real x(Timestep t) ~ Gaussian(0, 1);\n";
+
+  @Test
+  public void testReadsBlocksUntilEnd() throws IOException {
+    Model model = new Model();
+    assertTrue(Main.stringSetup(model, new Evidence(model), new Queries(model),
+        MODEL));
+    String input = "obs x(@0) = 1.0;\nquery x(@0);\n\n"
+        + "random Real y ~ Gaussian(0, 1);\nobs x(@1) = 5.0;\n\n"
+        + "obs x(@1) = 2.0;\n" + "end\n" + "obs x(@2) = 3.0;\n";
+    EvidenceFeed feed = new EvidenceFeed(new ByteArrayInputStream(
+        input.getBytes("UTF-8")), model, "test");
+
+    ModelEvidenceQueries block = feed.readBlock();
+    assertEquals(1, block.evidence.getValueEvidence().size());
+    assertEquals(1, block.queries.size());
+    assertEquals("x(@0)", block.queries.get(0).toString());
+
+    // the block with a declaration is skipped, and the model is unchanged
+    block = feed.readBlock();
+    assertEquals("[x(@1) = 2.0]", block.evidence.getValueEvidence()
+        .toString());
+    assertEquals(0, block.queries.size());
+    assertTrue(model.getFuncsWithName("y").isEmpty());
+
+    assertNull(feed.readBlock());
+    assertNull(feed.readBlock());
+  }
+}
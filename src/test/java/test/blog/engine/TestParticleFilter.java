@@ -0,0 +1,64 @@
+package test.blog.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import blog.Main;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
+import blog.engine.ParticleFilter;
+import blog.io.DummyWriter;
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.model.Queries;
+
+/**
+ * Tests the particle filter.
+ */
+public class TestParticleFilter {
+
+  private static final String MODEL = "random Real theta ~ Gaussian(0, 0.1);\n"
+      + "random Real state(Timestep t) ~ if t == @0 then Gaussian(0, 1)\n"
+      + "  else Gaussian(theta * state(prev(t)), 1);\n"
+      + "random Real NoisyObs(Timestep t) ~ Gaussian(state(t), 1);\n"
+      + "obs NoisyObs(@0) = -0.13; obs NoisyObs(@1) = 1.81;\n"
+      + "obs NoisyObs(@2) = -1.38; obs NoisyObs(@3) = 0.94;\n"
+      + "obs NoisyObs(@4) = -0.20;\n" + "query theta;\n";
+
+  @Test
+  public void testThreadedRunsAreReproducible() {
+    double first = logLikelihood(4);
+    assertFalse(Double.isNaN(first) || Double.isInfinite(first));
+    assertEquals(first, logLikelihood(4), 0);
+  }
+
+  /**
+   * Runs the particle filter on the model with the given number of threads and
+   * a fixed seed, and returns the log likelihood of the data.
+   */
+  private static double logLikelihood(int numThreads) {
+    RandomStream previous = RandomContext.enter(new RandomStream(42));
+    try {
+      Model model = new Model();
+      Evidence evidence = new Evidence(model);
+      Queries queries = new Queries(model);
+      assertTrue(Main.stringSetup(model, evidence, queries, MODEL));
+      Properties properties = new Properties();
+      properties.setProperty("numParticles", "200");
+      properties.setProperty("numThreads", String.valueOf(numThreads));
+      ParticleFilter filter = new ParticleFilter(model, properties);
+      filter.setEvidence(evidence);
+      filter.setQueries(queries);
+      filter.setResultWriter(new DummyWriter());
+      filter.answerQueries();
+      return filter.getDataLogLikelihood();
+    } finally {
+      RandomContext.exit(previous);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package test.blog.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import blog.common.RandomContext;
+import blog.engine.Resampler;
+
+/**
+ * Unit tests for the resampling schemes of Resampler.
+ */
+public class TestResampler {
+  private static final double ERROR = 1e-9;
+  private static final String[] SCHEMES = { "multinomial", "stratified",
+      "systematic", "residual" };
+
+  @Before
+  public void setUp() {
+    RandomContext.init(42);
+  }
+
+  @Test
+  public void testCumulativeWeights() {
+    double[] cumulative = Resampler.cumulativeWeights(new double[] {
+        Math.log(2), Double.NEGATIVE_INFINITY, Math.log(4) });
+    assertEquals(0.5, cumulative[0], ERROR);
+    assertEquals(0.5, cumulative[1], ERROR);
+    assertEquals(1.5, cumulative[2], ERROR);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAllZeroWeights() {
+    Resampler.cumulativeWeights(new double[] { Double.NEGATIVE_INFINITY,
+        Double.NEGATIVE_INFINITY });
+  }
+
+  @Test
+  public void testEffectiveSampleSize() {
+    assertEquals(4, Resampler.effectiveSampleSize(new double[] { 3, 3, 3, 3 }),
+        ERROR);
+    assertEquals(1, Resampler.effectiveSampleSize(new double[] { 0,
+        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY }), ERROR);
+    // weights 1 and 3: 16 / 10
+    assertEquals(1.6,
+        Resampler.effectiveSampleSize(new double[] { 0, Math.log(3) }), ERROR);
+  }
+
+  @Test
+  public void testSchemes() {
+    // weights 0.1, 0, 0.6, 0.3
+    double[] cumulative = { 0.1, 0.1, 0.7, 1.0 };
+    int n = 10000;
+    for (String scheme : SCHEMES) {
+      int[] selected = Resampler.make(scheme).resample(cumulative, n);
+      assertEquals(n, selected.length);
+      int[] counts = new int[cumulative.length];
+      for (int i = 0; i < n; i++) {
+        if (i > 0) {
+          assertTrue(scheme, selected[i - 1] <= selected[i]);
+        }
+        counts[selected[i]]++;
+      }
+      assertEquals(scheme, 0, counts[1]);
+      assertEquals(scheme, 0.1, counts[0] / (double) n, 0.02);
+      assertEquals(scheme, 0.6, counts[2] / (double) n, 0.02);
+      assertEquals(scheme, 0.3, counts[3] / (double) n, 0.02);
+    }
+  }
+
+  @Test
+  public void testResidualKeepsExpectedCopies() {
+    // expected copies 2.5, 1.5 and 1
+    double[] cumulative = { 2.5, 4, 5 };
+    int[] selected = Resampler.make("residual").resample(cumulative, 5);
+    int[] counts = new int[3];
+    for (int i : selected) {
+      counts[i]++;
+    }
+    assertTrue(counts[0] >= 2);
+    assertTrue(counts[1] >= 1);
+    assertEquals(1, counts[2]);
+  }
+}
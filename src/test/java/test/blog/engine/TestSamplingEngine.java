@@ -0,0 +1,145 @@
+package test.blog.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import blog.Main;
+import blog.bn.BayesNetVar;
+import blog.common.Histogram;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
+import blog.engine.InferenceEngine;
+import blog.engine.SamplingEngine;
+import blog.io.DummyWriter;
+import blog.model.AbstractQuery;
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.model.Queries;
+import blog.world.PartialWorld;
+
+/**
+ * Unit Tests for SamplingEngine
+ */
+public class TestSamplingEngine {
+  private static final double ERROR = 1e-9;
+
+  private static final String MODEL = "random Boolean A ~ BooleanDistrib(0.3);\n"
+      + "random Boolean B ~ if A then BooleanDistrib(0.9)"
+      + " else BooleanDistrib(0.1);\n";
+
+  @Test
+  public void testRHatOfIdenticalChains() {
+    double[] means = { 0.5, 0.5, 0.5 };
+    double[] variances = { 0.25, 0.25, 0.25 };
+    assertEquals(Math.sqrt(99 / 100.0),
+        SamplingEngine.computeRHat(means, variances, 100), ERROR);
+  }
+
+  @Test
+  public void testRHatOfDisagreeingChains() {
+    double[] means = { 0, 1 };
+    double[] variances = { 1, 1 };
+    // W = 1, B/n = 0.5, var+ = 9/10 + 0.5
+    assertEquals(Math.sqrt(1.4),
+        SamplingEngine.computeRHat(means, variances, 10), ERROR);
+  }
+
+  @Test
+  public void testRHatDegenerate() {
+    assertTrue(Double.isNaN(SamplingEngine.computeRHat(new double[] { 1 },
+        new double[] { 1 }, 10)));
+    assertEquals(1, SamplingEngine.computeRHat(new double[] { 2, 2 },
+        new double[] { 0, 0 }, 10), ERROR);
+  }
+
+  @Test
+  public void testChainsMergeQueryResults() {
+    // without evidence, every sample has weight 1, so the merged histogram
+    // holds the samples of both chains
+    Queries queries = answer(MODEL + "query A;\nquery B;\n", 2, 20001, 3);
+    for (int i = 0; i < 2; i++) {
+      Histogram histogram = queries.get(i).getHistogram();
+      assertEquals(Math.log(20001), histogram.getTotalLogWeight(), ERROR);
+    }
+    assertEquals(0.3, queries.get(0).getHistogram().getProb(Boolean.TRUE),
+        0.02);
+    assertEquals(0.34, queries.get(1).getHistogram().getProb(Boolean.TRUE),
+        0.02);
+
+    queries = answer(MODEL + "obs B = true;\nquery A;\n", 2, 20000, 3);
+    double prob = queries.get(0).getHistogram().getProb(Boolean.TRUE);
+    assertEquals(0.27 / 0.34, prob, 0.02);
+    queries = answer(MODEL + "obs B = true;\nquery A;\n", 2, 20000, 3);
+    assertEquals(prob, queries.get(0).getHistogram().getProb(Boolean.TRUE), 0);
+  }
+
+  @Test(expected = Error.class)
+  public void testChainsRejectOtherQueries() {
+    Model model = new Model();
+    Evidence evidence = new Evidence(model);
+    Queries queries = new Queries(model);
+    assertTrue(Main.stringSetup(model, evidence, queries, MODEL));
+    queries.add(new AbstractQuery() {
+      public Collection<? extends BayesNetVar> getVariables() {
+        throw new UnsupportedOperationException();
+      }
+
+      public boolean checkTypesAndScope(Model model) {
+        return true;
+      }
+
+      public int compile() {
+        return 0;
+      }
+
+      public void updateStats(PartialWorld world, double weight) {
+      }
+
+      public void resetStats() {
+      }
+
+      public Histogram getHistogram() {
+        return new Histogram();
+      }
+    });
+    answer(model, evidence, queries, 2, 100, 3);
+  }
+
+  /**
+   * Answers the queries of the given model with likelihood weighting, running
+   * the given number of chains from the given seed, and returns them.
+   */
+  private static Queries answer(String source, int numChains, int numSamples,
+      long seed) {
+    Model model = new Model();
+    Evidence evidence = new Evidence(model);
+    Queries queries = new Queries(model);
+    assertTrue(Main.stringSetup(model, evidence, queries, source));
+    answer(model, evidence, queries, numChains, numSamples, seed);
+    return queries;
+  }
+
+  private static void answer(Model model, Evidence evidence, Queries queries,
+      int numChains, int numSamples, long seed) {
+    RandomStream previous = RandomContext.enter(new RandomStream(seed));
+    try {
+      Properties properties = new Properties();
+      properties.setProperty("numSamples", String.valueOf(numSamples));
+      properties.setProperty("numChains", String.valueOf(numChains));
+      properties.setProperty("samplerClass", "blog.sample.LWSampler");
+      InferenceEngine engine = InferenceEngine.constructEngine(model,
+          properties);
+      engine.setResultWriter(new DummyWriter());
+      engine.setEvidence(evidence);
+      engine.setQueries(queries);
+      engine.answerQueries();
+    } finally {
+      RandomContext.exit(previous);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package test.blog.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import blog.Main;
+import blog.common.RandomContext;
+import blog.common.RandomStream;
+import blog.engine.InferenceEngine;
+import blog.io.CompiledModelFile;
+import blog.io.DummyWriter;
+import blog.model.ArgSpecQuery;
+import blog.model.BuiltInTypes;
+import blog.model.Evidence;
+import blog.model.FixedFunction;
+import blog.model.Function;
+import blog.model.Model;
+import blog.model.ModelEvidenceQueries;
+import blog.model.Queries;
+import blog.model.Type;
+
+/**
+ * Tests saving and loading snapshots of compiled models.
+ */
+public class TestCompiledModelFile {
+
+  private static final String MODEL = "type Coin; distinct Coin C1, C2;\n"
+      + "fixed Real shrink(Real p) = 0.9 * p + 0.05;\n"
+      + "random Real bias(Coin c) ~ case c in {C1 -> Beta(2, 2),"
+      + " C2 -> Beta(3, 2)};\n"
+      + "random Boolean heads(Coin c) ~ BooleanDistrib(shrink(bias(c)));\n"
+      + "obs heads(C1) = true;\n" + "query bias(C1) > 0.5;\n"
+      + "query heads(C2);\n";
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Model model = new Model();
+    Evidence evidence = new Evidence(model);
+    Queries queries = new Queries(model);
+    assertTrue(Main.stringSetup(model, evidence, queries, MODEL));
+
+    File file = File.createTempFile("blog", ".blogc");
+    file.deleteOnExit();
+    assertFalse(CompiledModelFile.isCompiledModel(file.getPath()));
+    CompiledModelFile.save(new ModelEvidenceQueries(model, evidence, queries),
+        file.getPath());
+    assertTrue(CompiledModelFile.isCompiledModel(file.getPath()));
+
+    ModelEvidenceQueries loaded = CompiledModelFile.load(file.getPath());
+    Type coin = loaded.model.getType("Coin");
+    assertNotSame(model.getType("Coin"), coin);
+    assertEquals(2, coin.getGuaranteedObjects().size());
+    Function bias = (Function) loaded.model.getFuncsWithName("bias")
+        .iterator().next();
+    assertSame(coin, bias.getArgTypes()[0]);
+    assertSame(BuiltInTypes.REAL, bias.getRetType());
+    assertEquals(1, loaded.evidence.getValueEvidence().size());
+    assertEquals(2, loaded.queries.size());
+  }
+
+  @Test
+  public void testLoadedSnapshotGivesSameResults() throws IOException {
+    Model model = new Model();
+    Evidence evidence = new Evidence(model);
+    Queries queries = new Queries(model);
+    assertTrue(Main.stringSetup(model, evidence, queries, MODEL));
+    ((FixedFunction) model.getFuncsWithName("shrink").iterator().next())
+        .setMemoCapacity(4);
+
+    File file = File.createTempFile("blog", ".blogc");
+    file.deleteOnExit();
+    CompiledModelFile.save(new ModelEvidenceQueries(model, evidence, queries),
+        file.getPath());
+    ModelEvidenceQueries loaded = CompiledModelFile.load(file.getPath());
+
+    double[] expected = answer(new ModelEvidenceQueries(model, evidence,
+        queries));
+    double[] actual = answer(loaded);
+    assertEquals(expected[0], actual[0], 0);
+    assertEquals(expected[1], actual[1], 0);
+  }
+
+  /**
+   * Runs likelihood weighting on the given model with a fixed seed, and
+   * returns the probabilities of true for its queries.
+   */
+  private static double[] answer(ModelEvidenceQueries meq) {
+    RandomStream previous = RandomContext.enter(new RandomStream(7));
+    try {
+      Properties properties = new Properties();
+      properties.setProperty("numSamples", "2000");
+      properties.setProperty("samplerClass", "blog.sample.LWSampler");
+      InferenceEngine engine = InferenceEngine.constructEngine(meq.model,
+          properties);
+      engine.setEvidence(meq.evidence);
+      engine.setQueries(meq.queries);
+      engine.setResultWriter(new DummyWriter());
+      engine.answerQueries();
+      double[] probs = new double[meq.queries.size()];
+      for (int i = 0; i < probs.length; i++) {
+        probs[i] = ((ArgSpecQuery) meq.queries.get(i)).getHistogram().getProb(
+            Boolean.TRUE);
+      }
+      return probs;
+    } finally {
+      RandomContext.exit(previous);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotSnapshot() throws IOException {
+    CompiledModelFile.load("example/burglary.blog");
+  }
+}
@@ -1,12 +1,21 @@
 package test.blog.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
 
 import org.junit.Test;
 
 import blog.BLOGUtil;
 import blog.model.ArgSpec;
+import blog.model.FixedFunction;
 import blog.model.Model;
+import blog.sample.DefaultEvalContext;
+import blog.sample.EvalContext;
+import blog.world.PartialWorld;
 import blog.type.Timestep;
 
 /**
@@ -22,4 +31,92 @@ public class TestArgSpec {
     ArgSpec a = BLOGUtil.parseArgSpec("Weather(@13)", model);
     assertEquals(Timestep.at(13), a.maxTimestep());
   }
+
+  @Test
+  public void testArithmetic() {
+    Model model = Model.fromString("random Real x ~ Gaussian(0, 1);");
+    EvalContext context = new DefaultEvalContext(PartialWorld.EMPTY_INST);
+    assertEquals(13, evaluate("2 * (3 + 4) - 1", model, context));
+    assertEquals(1, evaluate("7 / 4 + 5 % 3 - 2", model, context));
+    assertEquals(4.0, evaluate("1.5 * 2 + exp(0.0) / abs(-1.0)", model,
+        context));
+    assertEquals(8.5, evaluate("2 ^ 3 + 1 / 2.0", model, context));
+    assertSame(Boolean.TRUE, evaluate("2.0 * 3 > 1.5 + 4", model, context));
+    assertSame(Boolean.FALSE, evaluate("log(1.0) >= 0.5", model, context));
+    assertSame(Boolean.TRUE, evaluate("7 % 4 <= 3", model, context));
+    // x is not instantiated in the empty world
+    assertNull(evaluate("1.0 + 2.0 * x", model, context));
+  }
+
+  @Test
+  public void testMemoizedFixedFunction() {
+    Model model = Model.fromString("fixed Real sq(Real x) = x * x;");
+    FixedFunction sq = (FixedFunction) model.getFuncsWithName("sq").iterator()
+        .next();
+    sq.setMemoCapacity(2);
+    EvalContext context = new DefaultEvalContext(PartialWorld.EMPTY_INST);
+    assertEquals(9.0, evaluate("sq(3.0)", model, context));
+    assertEquals(9.0, evaluate("sq(3.0)", model, context));
+    assertEquals(1, sq.getMemoHits());
+    assertEquals(1, sq.getMemoMisses());
+    // two more arguments evict the least recently used one, 3.0
+    assertEquals(1.0, evaluate("sq(1.0)", model, context));
+    assertEquals(4.0, evaluate("sq(2.0)", model, context));
+    assertEquals(9.0, evaluate("sq(3.0)", model, context));
+    assertEquals(1, sq.getMemoHits());
+    assertEquals(4, sq.getMemoMisses());
+    assertEquals(4.0, evaluate("sq(2.0)", model, context));
+    assertEquals(2, sq.getMemoHits());
+  }
+
+  @Test
+  public void testConstantFolding() {
+    Model model = Model.fromString("fixed Real sq(Real x) = x * x;\n"
+        + "random Real x ~ Gaussian(0, 1);");
+    FixedFunction sq = (FixedFunction) model.getFuncsWithName("sq").iterator()
+        .next();
+    sq.setMemoCapacity(10);
+    EvalContext context = new DefaultEvalContext(PartialWorld.EMPTY_INST);
+    ArgSpec a = BLOGUtil.parseArgSpec("sq(2.0 * 1.5) + x", model);
+    a.compile(new LinkedHashSet());
+    assertEquals(0, sq.getMemoMisses());
+    // the fixed subterm is evaluated once, even if x is unknown
+    assertNull(a.evaluate(context));
+    assertNull(a.evaluate(context));
+    assertEquals(0, sq.getMemoHits());
+    assertEquals(1, sq.getMemoMisses());
+    assertEquals(18.0, evaluate("sq(2.0 * 1.5) * 2.0", model, context));
+  }
+
+  @Test
+  public void testFoldingLeavesUntakenBranches() {
+    // f(-1) does not terminate, but it is never evaluated
+    Model model = Model.fromString("fixed Integer f(Integer n) = "
+        + "if n == 0 then 0 else f(n - 1);\n"
+        + "random Boolean b ~ BooleanDistrib(0.5);\n"
+        + "random Integer x ~ if b & false then f(-1) else 0;");
+    EvalContext context = new DefaultEvalContext(PartialWorld.EMPTY_INST);
+    assertEquals(0, evaluate("if 1 > 2 then f(-1) else f(3)", model, context));
+  }
+
+  @Test
+  public void testCaseDispatch() {
+    Model model = Model.fromString("random Real x ~ Gaussian(0, 1);");
+    EvalContext context = new DefaultEvalContext(PartialWorld.EMPTY_INST);
+    assertEquals(2.0, evaluate("case 1 + 1 in {1 -> 1.0, 2 -> 2.0, 3 -> x}",
+        model, context));
+    assertSame(Model.NULL, evaluate("case 4 in {1 -> 1.0, 2 -> 2.0}", model,
+        context));
+    // only the selected branch is evaluated
+    assertEquals(1.0, evaluate("if 1 < 2 then 1.0 else x", model, context));
+    assertNull(evaluate("if 1 > 2 then 1.0 else x", model, context));
+    assertEquals(Collections.singletonMap(3, 2.0),
+        evaluate("{1 + 2 -> 1.0 * 2}", model, context));
+  }
+
+  private static Object evaluate(String expr, Model model, EvalContext context) {
+    ArgSpec a = BLOGUtil.parseArgSpec(expr, model);
+    a.compile(new LinkedHashSet());
+    return a.evaluate(context);
+  }
 }
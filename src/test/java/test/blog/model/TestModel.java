@@ -0,0 +1,47 @@
+package test.blog.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import blog.model.BuiltInTypes;
+import blog.model.Function;
+import blog.model.Model;
+import blog.model.Type;
+
+/**
+ * Tests that types are resolved per model, so that several models declaring
+ * the same types can be loaded in one JVM.
+ */
+public class TestModel {
+
+  private static final String MODEL = "type Urn; distinct Urn U1, U2;\n"
+      + "random Urn pick ~ UniformChoice({u for Urn u});\n";
+
+  @Test
+  public void testSameTypeInTwoModels() {
+    Model first = Model.fromString(MODEL);
+    Model second = Model.fromString(MODEL);
+    Type firstUrn = first.getType("Urn");
+    Type secondUrn = second.getType("Urn");
+    assertNotSame(firstUrn, secondUrn);
+    assertSame(firstUrn, getPick(first).getRetType());
+    assertSame(secondUrn, getPick(second).getRetType());
+    assertEquals(1, second.getTypes().size());
+    assertNotSame(first.getArrayType(firstUrn), second.getArrayType(secondUrn));
+  }
+
+  private static Function getPick(Model model) {
+    return (Function) model.getFuncsWithName("pick").iterator().next();
+  }
+
+  @Test
+  public void testBuiltInTypes() {
+    Model model = Model.fromString(MODEL);
+    assertSame(BuiltInTypes.REAL, model.getType("Real"));
+    assertSame(model.getArrayType(BuiltInTypes.REAL),
+        new Model().getArrayType(BuiltInTypes.REAL));
+  }
+}
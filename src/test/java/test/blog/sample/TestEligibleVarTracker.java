@@ -0,0 +1,77 @@
+package test.blog.sample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+
+import blog.BLOGUtil;
+import blog.bn.BasicVar;
+import blog.common.Util;
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.sample.EligibleVarTracker;
+import blog.world.DefaultPartialWorld;
+import blog.world.PartialWorld;
+import blog.world.PartialWorldDiff;
+
+/**
+ * Unit tests for EligibleVarTracker.
+ */
+public class TestEligibleVarTracker {
+  @Test
+  public void testFollowsSaveAndRevert() {
+    Util.initRandom(false);
+    Model model = Model.fromString("random Boolean A ~ Bernoulli(0.5);"
+        + "random Boolean B ~ Bernoulli(0.5);"
+        + "random Boolean C ~ Bernoulli(0.5);");
+    Evidence all = new Evidence(model);
+    all.addFromString("obs A = true; obs B = true; obs C = true;");
+    all.compile();
+    Evidence observed = new Evidence(model);
+    observed.addFromString("obs A = true;");
+    observed.compile();
+
+    PartialWorld underlying = new DefaultPartialWorld(Collections.EMPTY_SET,
+        false, true);
+    BLOGUtil.setBasicVars(all, underlying);
+    PartialWorldDiff world = new PartialWorldDiff(underlying);
+    Set excluded = new HashSet(observed.getEvidenceVars());
+    EligibleVarTracker tracker = new EligibleVarTracker(world, excluded);
+    assertEquals(2, tracker.size());
+
+    BasicVar b = null;
+    for (Iterator iter = world.getInstantiatedVars().iterator(); iter
+        .hasNext();) {
+      BasicVar var = (BasicVar) iter.next();
+      if (var.toString().equals("B")) {
+        b = var;
+      }
+    }
+    world.setValue(b, null);
+    assertEquals(1, tracker.size());
+    assertEquals("C", tracker.sample().toString());
+
+    world.revert();
+    assertEquals(2, tracker.size());
+
+    world.setValue(b, null);
+    world.save();
+    assertEquals(1, tracker.size());
+    world.revert();
+    assertEquals(1, tracker.size());
+
+    Set sampled = new HashSet();
+    world.setValue(b, Boolean.FALSE);
+    for (int i = 0; i < 100; ++i) {
+      sampled.add(tracker.sample().toString());
+    }
+    assertEquals(2, sampled.size());
+    assertTrue(!sampled.contains("A"));
+  }
+}
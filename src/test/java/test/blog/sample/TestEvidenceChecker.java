@@ -0,0 +1,71 @@
+package test.blog.sample;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import blog.BLOGUtil;
+import blog.bn.BasicVar;
+import blog.bn.BayesNetVar;
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.sample.EvidenceChecker;
+import blog.world.DefaultPartialWorld;
+import blog.world.PartialWorld;
+import blog.world.PartialWorldDiff;
+
+/**
+ * Unit tests for EvidenceChecker.
+ */
+public class TestEvidenceChecker {
+  @Test
+  public void testChecksChangedStatements() {
+    Model model = Model.fromString("random Boolean A ~ Bernoulli(0.5);"
+        + "random Boolean B ~ Bernoulli(0.5);");
+    Evidence init = new Evidence(model);
+    init.addFromString("obs A = true; obs B = true;");
+    init.compile();
+    Evidence evidence = new Evidence(model);
+    evidence.addFromString("obs B = true; obs (A | B) = true;");
+    evidence.compile();
+
+    PartialWorld underlying = new DefaultPartialWorld(Collections.EMPTY_SET,
+        false, true);
+    BLOGUtil.setBasicVars(init, underlying);
+    PartialWorldDiff world = new PartialWorldDiff(underlying);
+    EvidenceChecker checker = new EvidenceChecker(evidence, world);
+    BasicVar a = getVar(init, "A");
+    BasicVar b = getVar(init, "B");
+
+    assertTrue(checker.isTrue());
+    world.setValue(b, Boolean.FALSE);
+    assertFalse(checker.isTrue());
+    world.revert();
+
+    world.setValue(a, Boolean.FALSE);
+    assertTrue(checker.isTrue());
+    world.save();
+    assertTrue(checker.isTrue());
+
+    world.setValue(b, Boolean.FALSE);
+    assertFalse(checker.isTrue());
+    world.setValue(b, Boolean.TRUE);
+    world.save();
+    world.setValue(b, Boolean.FALSE);
+    assertFalse(checker.isTrue());
+    world.revert();
+    assertTrue(checker.isTrue());
+  }
+
+  private static BasicVar getVar(Evidence evidence, String name) {
+    for (BayesNetVar var : evidence.getEvidenceVars()) {
+      if (var.toString().equals(name)) {
+        return (BasicVar) var;
+      }
+    }
+    return null;
+  }
+}
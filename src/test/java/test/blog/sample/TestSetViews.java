@@ -0,0 +1,199 @@
+package test.blog.sample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import blog.BLOGUtil;
+import blog.bn.BasicVar;
+import blog.bn.BayesNetVar;
+import blog.bn.NumberVar;
+import blog.bn.RandFuncAppVar;
+import blog.common.Metrics;
+import blog.model.ArgSpec;
+import blog.model.ArgSpecQuery;
+import blog.model.Evidence;
+import blog.model.Model;
+import blog.model.NonGuaranteedObject;
+import blog.model.POP;
+import blog.model.Queries;
+import blog.model.RandomFunction;
+import blog.sample.DefaultEvalContext;
+import blog.sample.SetViews;
+import blog.world.DefaultPartialWorld;
+import blog.world.PartialWorld;
+import blog.world.PartialWorldDiff;
+
+/**
+ * Unit tests for SetViews.
+ */
+public class TestSetViews {
+  @Before
+  public void setUp() {
+    Metrics.reset();
+    Metrics.setEnabled(true);
+    Model model = Model.fromString("type Ball; distinct Ball B[3];"
+        + "random Boolean Blue(Ball b) ~ Bernoulli(0.5);");
+    init = new Evidence(model);
+    init.addFromString("obs Blue(B[0]) = true; obs Blue(B[1]) = false;"
+        + "obs Blue(B[2]) = false;");
+    init.compile();
+    Queries queries = new Queries(model);
+    queries.addFromString("query #{b for Ball b : Blue(b) == true};"
+        + "query exists Ball b Blue(b) == false;"
+        + "query forall Ball b Blue(b) == true;"
+        + "query size({b for Ball b : Blue(b) == true});");
+    assertEquals(0, queries.compile());
+    count = ((ArgSpecQuery) queries.get(0)).getArgSpec();
+    exists = ((ArgSpecQuery) queries.get(1)).getArgSpec();
+    forall = ((ArgSpecQuery) queries.get(2)).getArgSpec();
+    size = ((ArgSpecQuery) queries.get(3)).getArgSpec();
+
+    PartialWorld underlying = new DefaultPartialWorld(Collections.EMPTY_SET,
+        false, true);
+    BLOGUtil.setBasicVars(init, underlying);
+    world = new PartialWorldDiff(underlying);
+    new SetViews(world);
+  }
+
+  @After
+  public void tearDown() {
+    Metrics.setEnabled(false);
+    Metrics.reset();
+  }
+
+  @Test
+  public void testCountsFollowChanges() {
+    assertCounts(1, true, false);
+    assertMetrics(4, 0, 0);
+    // each change re-evaluates one ball in each of the four views
+    world.setValue(getVar("Blue(B[1])"), Boolean.TRUE);
+    assertCounts(2, true, false);
+    assertMetrics(4, 4, 0);
+    world.revert();
+    assertCounts(1, true, false);
+    assertMetrics(4, 4, 0);
+
+    world.setValue(getVar("Blue(B[1])"), Boolean.TRUE);
+    world.setValue(getVar("Blue(B[2])"), Boolean.TRUE);
+    assertCounts(3, false, true);
+    world.save();
+    assertCounts(3, false, true);
+    assertMetrics(4, 12, 0);
+
+    world.setValue(getVar("Blue(B[0])"), Boolean.FALSE);
+    assertCounts(2, true, false);
+    world.revert();
+    assertCounts(3, false, true);
+    assertMetrics(4, 16, 0);
+  }
+
+  @Test
+  public void testCatchesUpAfterUnevaluatedSaves() {
+    assertCounts(1, true, false);
+    world.setValue(getVar("Blue(B[1])"), Boolean.TRUE);
+    world.save();
+    world.setValue(getVar("Blue(B[2])"), Boolean.TRUE);
+    world.save();
+    world.setValue(getVar("Blue(B[0])"), Boolean.FALSE);
+    assertCounts(2, true, false);
+    assertMetrics(4, 12, 0);
+  }
+
+  @Test
+  public void testRebuildsWhenNumberOfObjectsChanges() {
+    Model model = Model.fromString("type Ball; #Ball ~ Poisson(3);"
+        + "random Boolean Blue(Ball b) ~ Bernoulli(0.5);");
+    Queries queries = new Queries(model);
+    queries.addFromString("query #{b for Ball b : Blue(b) == true};"
+        + "query size({b for Ball b});");
+    assertEquals(0, queries.compile());
+    ArgSpec numBlue = ((ArgSpecQuery) queries.get(0)).getArgSpec();
+    ArgSpec numBalls = ((ArgSpecQuery) queries.get(1)).getArgSpec();
+
+    POP pop = model.getType("Ball").getPOPs().iterator().next();
+    NumberVar numberVar = new NumberVar(pop, new Object[0]);
+    RandomFunction blue = (RandomFunction) model.getRandomFunc("Blue", 1);
+    PartialWorld underlying = new DefaultPartialWorld(Collections.EMPTY_SET,
+        false, true);
+    underlying.setValue(numberVar, Integer.valueOf(2));
+    underlying.setValue(getBlueVar(blue, numberVar, 1), Boolean.TRUE);
+    underlying.setValue(getBlueVar(blue, numberVar, 2), Boolean.FALSE);
+    PartialWorldDiff world = new PartialWorldDiff(underlying);
+    new SetViews(world);
+    DefaultEvalContext context = new DefaultEvalContext(world, false);
+    assertEquals(Integer.valueOf(1), numBlue.evaluate(context));
+    assertEquals(Integer.valueOf(2), numBalls.evaluate(context));
+    assertMetrics(2, 0, 0);
+
+    // the new ball's color is not instantiated, so only the view that does
+    // not depend on it can answer
+    world.setValue(numberVar, Integer.valueOf(3));
+    assertNull(numBlue.evaluate(context));
+    assertEquals(Integer.valueOf(3), numBalls.evaluate(context));
+    assertMetrics(3, 0, 1);
+
+    world.setValue(getBlueVar(blue, numberVar, 3), Boolean.TRUE);
+    assertEquals(Integer.valueOf(2), numBlue.evaluate(context));
+    assertEquals(Integer.valueOf(3), numBalls.evaluate(context));
+    assertMetrics(5, 0, 1);
+    world.save();
+
+    world.setValue(numberVar, Integer.valueOf(1));
+    assertEquals(Integer.valueOf(1), numBlue.evaluate(context));
+    assertEquals(Integer.valueOf(1), numBalls.evaluate(context));
+    assertMetrics(7, 0, 1);
+    world.revert();
+    assertEquals(Integer.valueOf(2), numBlue.evaluate(context));
+    assertEquals(Integer.valueOf(3), numBalls.evaluate(context));
+    assertMetrics(7, 0, 1);
+  }
+
+  private void assertCounts(int numBlue, boolean someNotBlue, boolean allBlue) {
+    DefaultEvalContext context = new DefaultEvalContext(world, true);
+    assertEquals(Integer.valueOf(numBlue), count.evaluate(context));
+    assertEquals(Boolean.valueOf(someNotBlue), exists.evaluate(context));
+    assertEquals(Boolean.valueOf(allBlue), forall.evaluate(context));
+    assertEquals(Integer.valueOf(numBlue), size.evaluate(context));
+    assertTrue(SetViews.get(context) != null);
+  }
+
+  /**
+   * Asserts the numbers of views rebuilt, of objects re-evaluated by updates,
+   * and of counts the views could not give.
+   */
+  private static void assertMetrics(long rebuilds, long updated,
+      long fallbacks) {
+    assertEquals(rebuilds, Metrics.recorder("setviews.rebuild.ns").getCount());
+    assertEquals(updated, Metrics.counter("setviews.updated").get());
+    assertEquals(fallbacks, Metrics.counter("setviews.fallbacks").get());
+  }
+
+  private static BasicVar getBlueVar(RandomFunction blue, NumberVar numberVar,
+      int num) {
+    return new RandFuncAppVar(blue, new Object[] { NonGuaranteedObject.get(
+        numberVar, num) });
+  }
+
+  private BasicVar getVar(String name) {
+    for (BayesNetVar var : init.getEvidenceVars()) {
+      if (var.toString().equals(name)) {
+        return (BasicVar) var;
+      }
+    }
+    return null;
+  }
+
+  private Evidence init;
+  private ArgSpec count;
+  private ArgSpec exists;
+  private ArgSpec forall;
+  private ArgSpec size;
+  private PartialWorldDiff world;
+}
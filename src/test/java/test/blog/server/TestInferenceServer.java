@@ -0,0 +1,185 @@
+package test.blog.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import blog.server.InferenceServer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Tests the inference server over HTTP.
+ */
+public class TestInferenceServer {
+
+  private static final String MODEL = "random Boolean A ~ BooleanDistrib(0.3);\n"
+      + "random Boolean B ~ if A then BooleanDistrib(0.9)"
+      + " else BooleanDistrib(0.1);\n" + "obs B = true;\n";
+
+  private InferenceServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("numSamples", "1000");
+    properties.setProperty("serverThreads", "2");
+    server = new InferenceServer(0, properties,
+        Collections.<String> emptyList());
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testAnswersAndCachesModel() throws IOException {
+    List<JsonElement> first = post(request(MODEL, "query A;"), 200);
+    assertFalse(first.get(0).getAsJsonObject().get("cached").getAsBoolean());
+    JsonArray result = first.get(1).getAsJsonArray().get(0).getAsJsonArray();
+    assertEquals("A", result.get(0).getAsString());
+    assertEquals(2, result.get(1).getAsJsonArray().size());
+    assertTrue(last(first).get("done").getAsBoolean());
+
+    List<JsonElement> second = post(request(MODEL, "query B;"), 200);
+    JsonObject header = second.get(0).getAsJsonObject();
+    assertTrue(header.get("cached").getAsBoolean());
+    assertEquals(first.get(0).getAsJsonObject().get("model"),
+        header.get("model"));
+    result = second.get(1).getAsJsonArray().get(0).getAsJsonArray();
+    assertEquals("B", result.get(0).getAsString());
+    assertTrue(last(second).get("done").getAsBoolean());
+  }
+
+  @Test
+  public void testRejectsInvalidModelsAndKeepsServing() throws IOException {
+    List<JsonElement> response = post(request(
+        "random Real x ~ if {1, 2} then Gaussian(0, 1) else Gaussian(1, 1);",
+        "query x;"), 400);
+    assertTrue(last(response).get("error").getAsString()
+        .contains("non-Boolean"));
+
+    response = post(request(MODEL, "random Boolean C ~ BooleanDistrib(0.5);"),
+        400);
+    assertTrue(last(response).has("error"));
+
+    response = post(request(MODEL, "query A;"), 200);
+    assertTrue(last(response).get("done").getAsBoolean());
+  }
+
+  @Test
+  public void testConcurrentRequestsUseTheirOwnStatsMode() throws Exception {
+    final String model = "random Real x ~ Gaussian(0, 1);\n";
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<List<JsonElement>>> responses;
+      responses = new ArrayList<Future<List<JsonElement>>>();
+      for (final String mode : new String[] { "summary", "histogram" }) {
+        responses.add(executor.submit(new Callable<List<JsonElement>>() {
+          public List<JsonElement> call() throws Exception {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put("queryStats", mode);
+            properties.put("numSamples", "20000");
+            String body = request(model, "query x;", properties);
+            barrier.await();
+            return post(body, 200);
+          }
+        }));
+      }
+      JsonElement summary = result(responses.get(0).get());
+      assertTrue(summary.isJsonObject());
+      assertEquals(20000, summary.getAsJsonObject().get("ess").getAsDouble(),
+          1e-6);
+      JsonElement histogram = result(responses.get(1).get());
+      assertTrue(histogram.isJsonArray());
+      assertTrue(histogram.getAsJsonArray().size() > 1);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static String request(String model, String evidence) {
+    return request(model, evidence, null);
+  }
+
+  private static String request(String model, String evidence,
+      Map<String, Object> properties) {
+    Map<String, Object> request = new HashMap<String, Object>();
+    request.put("model", model);
+    request.put("evidence", evidence);
+    request.put("seed", 1);
+    if (properties != null) {
+      request.put("properties", properties);
+    }
+    return new Gson().toJson(request);
+  }
+
+  /**
+   * Returns the results of the first query in the given response.
+   */
+  private static JsonElement result(List<JsonElement> lines) {
+    assertTrue(last(lines).get("done").getAsBoolean());
+    return lines.get(1).getAsJsonArray().get(0).getAsJsonArray().get(1);
+  }
+
+  /**
+   * Posts the given request to the server, checks the response status, and
+   * returns the JSON values of the lines of the response.
+   */
+  private List<JsonElement> post(String body, int status) throws IOException {
+    URL url = new URL("http://127.0.0.1:" + server.getPort() + "/infer");
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    OutputStream out = conn.getOutputStream();
+    out.write(body.getBytes("UTF-8"));
+    out.close();
+    assertEquals(status, conn.getResponseCode());
+    InputStream in = (status == 200) ? conn.getInputStream() : conn
+        .getErrorStream();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+        "UTF-8"));
+    List<JsonElement> lines = new ArrayList<JsonElement>();
+    JsonParser parser = new JsonParser();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lines.add(parser.parse(line));
+    }
+    reader.close();
+    return lines;
+  }
+
+  private static JsonObject last(List<JsonElement> lines) {
+    return lines.get(lines.size() - 1).getAsJsonObject();
+  }
+}